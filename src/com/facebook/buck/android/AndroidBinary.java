@@ -930,6 +930,9 @@ public class AndroidBinary
       // yield a dex artifact too large for dexopt or the dx method limit to handle.
       Path zipSplitReportDir = getBinPath("__%s_split_zip_report__");
       steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), zipSplitReportDir));
+      // Linear alloc estimates are keyed by class contents, so they are kept between builds.
+      Path dalvikStatsCacheDir = getBinPath("__%s_dalvik_stats__");
+      steps.add(new MkdirStep(getProjectFilesystem(), dalvikStatsCacheDir));
       SplitZipStep splitZipCommand = new SplitZipStep(
           getProjectFilesystem(),
           classpathEntriesToDex,
@@ -947,7 +950,8 @@ public class AndroidBinary
               .transform(getResolver().deprecatedPathFunction()),
           dexSplitMode.getSecondaryDexTailClassesFile()
               .transform(getResolver().deprecatedPathFunction()),
-          zipSplitReportDir);
+          zipSplitReportDir,
+          Optional.of(dalvikStatsCacheDir.resolve("stats.bin")));
       steps.add(splitZipCommand);
 
       // Add the secondary dex directory that has yet to be created, but will be by the
@@ -283,7 +283,8 @@ public class AndroidBinaryDescription
         args.primaryDexScenarioFile,
         args.primaryDexScenarioOverflowAllowed.or(false),
         args.secondaryDexHeadClassesFile,
-        args.secondaryDexTailClassesFile);
+        args.secondaryDexTailClassesFile,
+        args.incrementalSecondaryDexPacking.or(false));
   }
 
   private PackageType getPackageType(Arg args) {
@@ -349,6 +350,7 @@ public class AndroidBinaryDescription
     public Optional<SourcePath> secondaryDexHeadClassesFile;
     public Optional<SourcePath> secondaryDexTailClassesFile;
     public Optional<Long> linearAllocHardLimit;
+    public Optional<Boolean> incrementalSecondaryDexPacking;
     public Optional<List<String>> resourceFilter;
     public Optional<ImmutableSet<String>> locales;
     public Optional<Boolean> buildStringSourceMap;
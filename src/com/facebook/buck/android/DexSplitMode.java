@@ -44,7 +44,8 @@ class DexSplitMode implements RuleKeyAppendable {
       /* primaryDexScenarioFile */ Optional.<SourcePath>absent(),
       /* isPrimaryDexScenarioOverflowAllowed */ false,
       /* secondaryDexHeadClassesFile */ Optional.<SourcePath>absent(),
-      /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent());
+      /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent(),
+      /* isIncrementalSecondaryDexPacking */ false);
 
   private final boolean shouldSplitDex;
   private final DexStore dexStore;
@@ -113,6 +114,13 @@ class DexSplitMode implements RuleKeyAppendable {
    */
   private final Optional<SourcePath> secondaryDexTailClassesFile;
 
+  /**
+   * Boolean identifying whether pre-dexed libraries should be kept in the secondary dex they were
+   * packed into by the previous build, rather than re-packing all of them from scratch.  This keeps
+   * the number of secondary dex files that change after an edit small, at the cost of the packing
+   * depending on the build history.
+   */
+  private final boolean isIncrementalSecondaryDexPacking;
 
 
   /**
@@ -133,6 +141,8 @@ class DexSplitMode implements RuleKeyAppendable {
    *     in the first secondary dexes.
    * @param secondaryDexTailClassesFile Path to a file containing a list of classes that are put
    *     in the last secondary dexes.
+   * @param isIncrementalSecondaryDexPacking If true, pre-dexed libraries keep the secondary dex they
+   *     were assigned to by the previous build whenever they still fit in it.
    * @param useLinearAllocSplitDex If true, {@link com.facebook.buck.dalvik.DalvikAwareZipSplitter}
    *     will be used. Also, {@code linearAllocHardLimit} must have a positive value in this case.
    */
@@ -147,7 +157,8 @@ class DexSplitMode implements RuleKeyAppendable {
       Optional<SourcePath> primaryDexScenarioFile,
       boolean isPrimaryDexScenarioOverflowAllowed,
       Optional<SourcePath> secondaryDexHeadClassesFile,
-      Optional<SourcePath> secondaryDexTailClassesFile) {
+      Optional<SourcePath> secondaryDexTailClassesFile,
+      boolean isIncrementalSecondaryDexPacking) {
     this.shouldSplitDex = shouldSplitDex;
     this.dexSplitStrategy = dexSplitStrategy;
     this.dexStore = dexStore;
@@ -159,6 +170,7 @@ class DexSplitMode implements RuleKeyAppendable {
     this.isPrimaryDexScenarioOverflowAllowed = isPrimaryDexScenarioOverflowAllowed;
     this.secondaryDexHeadClassesFile = secondaryDexHeadClassesFile;
     this.secondaryDexTailClassesFile = secondaryDexTailClassesFile;
+    this.isIncrementalSecondaryDexPacking = isIncrementalSecondaryDexPacking;
 
   }
 
@@ -204,11 +216,15 @@ class DexSplitMode implements RuleKeyAppendable {
   public Optional<SourcePath> getSecondaryDexTailClassesFile() {
     return secondaryDexTailClassesFile;
   }
+  public boolean isIncrementalSecondaryDexPacking() {
+    return isIncrementalSecondaryDexPacking;
+  }
 
   @Override
   public RuleKeyBuilder appendToRuleKey(RuleKeyBuilder builder) {
     builder.setReflectively("dexStore", dexStore.name());
     builder.setReflectively("dexSplitStrategy", dexSplitStrategy.name());
+    builder.setReflectively("isIncrementalSecondaryDexPacking", isIncrementalSecondaryDexPacking);
     builder.setReflectively("isPrimaryDexScenarioOverflowAllowed",
         isPrimaryDexScenarioOverflowAllowed);
     builder.setReflectively("linearAllocHardLimit", linearAllocHardLimit);
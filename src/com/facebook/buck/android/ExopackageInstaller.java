@@ -46,6 +46,7 @@ import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteSource;
 
 import java.io.File;
 import java.io.IOException;
@@ -545,28 +546,20 @@ public class ExopackageInstaller {
                TraceEventLogger.start(eventBus, "multi_install_" + filesType)) {
         device.createForward(agentPort, agentPort);
         try {
-          for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
-            Path destination = destinationDirRelativeToDataRoot.resolve(
-                String.format(filenameFormat, entry.getKey()));
-            Path source = entry.getValue();
-
-            try (TraceEventLogger ignored2 =
-                     TraceEventLogger.start(eventBus, "install_" + filesType)) {
-              installFile(device, agentPort, destination, source);
-            }
-          }
-          try (TraceEventLogger ignored3 =
-                   TraceEventLogger.start(eventBus, "install_" + filesType + "_metadata")) {
-            try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
-              com.google.common.io.Files.write(
-                  metadataFileContents.getBytes(Charsets.UTF_8),
-                  temp.get().toFile());
-              installFile(
-                  device,
-                  agentPort,
-                  destinationDirRelativeToDataRoot.resolve("metadata.txt"),
-                  temp.get());
-            }
+          if (useNativeAgent) {
+            installFilesOneByOne(
+                filesType,
+                filesToInstallByHash,
+                metadataFileContents,
+                filenameFormat,
+                destinationDirRelativeToDataRoot);
+          } else {
+            installFilesInOneConnection(
+                filesType,
+                filesToInstallByHash,
+                metadataFileContents,
+                filenameFormat,
+                destinationDirRelativeToDataRoot);
           }
         } finally {
           try {
@@ -584,11 +577,133 @@ public class ExopackageInstaller {
       }
     }
 
+    private void installFilesOneByOne(
+        String filesType,
+        ImmutableMap<String, Path> filesToInstallByHash,
+        String metadataFileContents,
+        String filenameFormat,
+        Path destinationDirRelativeToDataRoot) throws Exception {
+      for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
+        Path destination = destinationDirRelativeToDataRoot.resolve(
+            String.format(filenameFormat, entry.getKey()));
+        Path source = entry.getValue();
+
+        try (TraceEventLogger ignored =
+                 TraceEventLogger.start(eventBus, "install_" + filesType)) {
+          installFile(device, agentPort, destination, source);
+        }
+      }
+      try (TraceEventLogger ignored =
+               TraceEventLogger.start(eventBus, "install_" + filesType + "_metadata")) {
+        try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
+          com.google.common.io.Files.write(
+              metadataFileContents.getBytes(Charsets.UTF_8),
+              temp.get().toFile());
+          installFile(
+              device,
+              agentPort,
+              destinationDirRelativeToDataRoot.resolve("metadata.txt"),
+              temp.get());
+        }
+      }
+    }
+
+    /**
+     * Sends all the files and the metadata to a single invocation of the agent's
+     * multi-receive-file command, so that we pay for starting the agent and setting up the
+     * connection once rather than once per file.
+     */
+    private void installFilesInOneConnection(
+        String filesType,
+        ImmutableMap<String, Path> filesToInstallByHash,
+        String metadataFileContents,
+        String filenameFormat,
+        Path destinationDirRelativeToDataRoot) throws Exception {
+      try (TraceEventLogger ignored =
+               TraceEventLogger.start(eventBus, "install_" + filesType + "_in_one_connection")) {
+        try (NamedTemporaryFile temp = new NamedTemporaryFile("metadata", "tmp")) {
+          com.google.common.io.Files.write(
+              metadataFileContents.getBytes(Charsets.UTF_8),
+              temp.get().toFile());
+
+          ImmutableMap.Builder<String, Path> sourcesByTargetFileName = ImmutableMap.builder();
+          for (Map.Entry<String, Path> entry : filesToInstallByHash.entrySet()) {
+            Path destination = destinationDirRelativeToDataRoot.resolve(
+                String.format(filenameFormat, entry.getKey()));
+            sourcesByTargetFileName.put(dataRoot.resolve(destination).toString(), entry.getValue());
+          }
+          sourcesByTargetFileName.put(
+              dataRoot.resolve(destinationDirRelativeToDataRoot.resolve("metadata.txt")).toString(),
+              temp.get());
+
+          multiReceiveFiles(device, agentPort, sourcesByTargetFileName.build());
+        }
+      }
+    }
+
+    private void multiReceiveFiles(
+        IDevice device,
+        int port,
+        ImmutableMap<String, Path> sourcesByTargetFileName) throws Exception {
+      String command =
+          "umask 022 && " +
+              getAgentCommand() +
+              "multi-receive-file " + port +
+              " ; echo -n :$?";
+      runReceivingAgentCommand(
+          device,
+          port,
+          command,
+          getMultiReceivePayload(sourcesByTargetFileName));
+
+      // See the comment at the end of installFile.
+      String commandPrefix = "chmod 644 ";
+      // Add a fudge factor for separators and error checking.
+      final int overhead = commandPrefix.length() + 100;
+      for (List<String> chmodArgs :
+          chunkArgs(sourcesByTargetFileName.keySet(), MAX_ADB_COMMAND_SIZE - overhead)) {
+        AdbHelper.executeCommandWithErrorChecking(
+            device,
+            commandPrefix + Joiner.on(' ').join(chmodArgs));
+      }
+    }
+
     private void installFile(
         IDevice device,
-        final int port,
+        int port,
         Path pathRelativeToDataRoot,
-        final Path source) throws Exception {
+        Path source) throws Exception {
+      String targetFileName = dataRoot.resolve(pathRelativeToDataRoot).toString();
+      String command =
+          "umask 022 && " +
+              getAgentCommand() +
+              "receive-file " + port + " " + Files.size(source) + " " +
+              targetFileName +
+              " ; echo -n :$?";
+      runReceivingAgentCommand(
+          device,
+          port,
+          command,
+          com.google.common.io.Files.asByteSource(source.toFile()));
+
+      // The standard Java libraries on Android always create new files un-readable by other users.
+      // We use the shell user or root to create these files, so we need to explicitly set the mode
+      // to allow the app to read them.  Ideally, the agent would do this automatically, but
+      // there's no easy way to do this in Java.  We can drop this if we drop support for the
+      // Java agent.
+      AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
+    }
+
+    /**
+     * Runs an agent command that prints a secret key and then waits for a connection on
+     * {@code port}.  Once the key is printed, we connect and send the key followed by
+     * {@code payload}.
+     */
+    private void runReceivingAgentCommand(
+        IDevice device,
+        final int port,
+        String command,
+        final ByteSource payload) throws Exception {
       CollectingOutputReceiver receiver = new CollectingOutputReceiver() {
 
         private boolean sentPayload = false;
@@ -608,8 +723,8 @@ public class ExopackageInstaller {
                       0,
                       AgentUtil.TEXT_SECRET_KEY_SIZE).getBytes());
               LOG.verbose("Wrote key");
-              com.google.common.io.Files.asByteSource(source.toFile()).copyTo(outToDevice);
-              LOG.verbose("Wrote file");
+              payload.copyTo(outToDevice);
+              LOG.verbose("Wrote payload");
             } catch (IOException e) {
               throw new RuntimeException(e);
             }
@@ -617,13 +732,6 @@ public class ExopackageInstaller {
         }
       };
 
-      String targetFileName = dataRoot.resolve(pathRelativeToDataRoot).toString();
-      String command =
-          "umask 022 && " +
-              getAgentCommand() +
-              "receive-file " + port + " " + Files.size(source) + " " +
-              targetFileName +
-              " ; echo -n :$?";
       LOG.debug("Executing %s", command);
 
       // If we fail to execute the command, stash the exception.  My experience during development
@@ -647,13 +755,6 @@ public class ExopackageInstaller {
       if (shellException != null) {
         throw shellException;
       }
-
-      // The standard Java libraries on Android always create new files un-readable by other users.
-      // We use the shell user or root to create these files, so we need to explicitly set the mode
-      // to allow the app to read them.  Ideally, the agent would do this automatically, but
-      // there's no easy way to do this in Java.  We can drop this if we drop support for the
-      // Java agent.
-      AdbHelper.executeCommandWithErrorChecking(device, "chmod 644 " + targetFileName);
     }
 
     private String getProperty(String property) throws Exception {
@@ -863,6 +964,26 @@ public class ExopackageInstaller {
     }
   }
 
+  /**
+   * @return the bytes to send to the agent's multi-receive-file command to write each source file
+   *     to the absolute path on the device that maps to it.
+   */
+  @VisibleForTesting
+  static ByteSource getMultiReceivePayload(ImmutableMap<String, Path> sourcesByTargetFileName)
+      throws IOException {
+    ImmutableList.Builder<ByteSource> payload = ImmutableList.builder();
+    for (Map.Entry<String, Path> entry : sourcesByTargetFileName.entrySet()) {
+      Path source = entry.getValue();
+      String header = String.format(
+          AgentUtil.MULTI_RECEIVE_HEADER_FORMAT,
+          Files.size(source),
+          entry.getKey());
+      payload.add(ByteSource.wrap(header.getBytes(Charsets.UTF_8)));
+      payload.add(com.google.common.io.Files.asByteSource(source.toFile()));
+    }
+    return ByteSource.concat(payload.build());
+  }
+
   /**
    * Breaks a list of strings into groups whose total size is within some limit.
    * Kind of like the xargs command that groups arguments to avoid maximum argument length limits.
@@ -18,6 +18,7 @@ package com.facebook.buck.android;
 
 import com.facebook.buck.android.PreDexMerge.BuildOutput;
 import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
@@ -40,9 +41,11 @@ import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicates;
+import com.google.common.base.Splitter;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -50,6 +53,7 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
@@ -76,6 +80,8 @@ import javax.annotation.Nullable;
  */
 public class PreDexMerge extends AbstractBuildRule implements InitializableFromDisk<BuildOutput> {
 
+  private static final Logger LOG = Logger.get(PreDexMerge.class);
+
   /** Options to use with {@link DxStep} when merging pre-dexed files. */
   private static final EnumSet<DxStep.Option> DX_MERGE_OPTIONS = EnumSet.of(
       DxStep.Option.USE_CUSTOM_DX_IF_AVAILABLE,
@@ -140,6 +146,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     private final Path metadataSubdir;
     private final Path jarfilesSubdir;
     private final Path metadataFile;
+    private final Path packingFile;
 
     private SplitDexPaths() {
       Path workDir = BuildTargets.getScratchPath(getBuildTarget(), "_%s_output");
@@ -153,6 +160,7 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
       metadataSubdir = metadataDir.resolve(AndroidBinary.SECONDARY_DEX_SUBDIR);
       jarfilesSubdir = jarfilesDir.resolve(AndroidBinary.SECONDARY_DEX_SUBDIR);
       metadataFile = metadataSubdir.resolve("metadata.txt");
+      packingFile = workDir.resolve("secondary_dex_packing.txt");
     }
   }
 
@@ -195,6 +203,19 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     buildableContext.recordArtifact(paths.metadataSubdir);
     buildableContext.recordArtifact(paths.successDir);
 
+    // The previous packing is not part of the rule key, so only pack incrementally when the result
+    // cannot be stored in the artifact cache, where it would be served for builds with any history.
+    // The packing is still recorded, so that later local builds can start from it.
+    Optional<ImmutableMap<Path, Integer>> previousSecondaryDexAssignment =
+        Optional.absent();
+    if (dexSplitMode.isIncrementalSecondaryDexPacking()) {
+      if (!context.getArtifactCache().isStoreSupported()) {
+        previousSecondaryDexAssignment =
+            Optional.of(readSecondaryDexAssignment(paths.packingFile));
+      }
+      buildableContext.recordArtifact(paths.packingFile);
+    }
+
     PreDexedFilesSorter preDexedFilesSorter = new PreDexedFilesSorter(
         aaptPackageResources.getRDotJavaDexWithClasses(),
         dexFilesToMerge,
@@ -202,13 +223,33 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
         paths.scratchDir,
         dexSplitMode.getLinearAllocHardLimit(),
         dexSplitMode.getDexStore(),
-        paths.jarfilesSubdir);
+        paths.jarfilesSubdir,
+        previousSecondaryDexAssignment);
     final PreDexedFilesSorter.Result sortResult =
         preDexedFilesSorter.sortIntoPrimaryAndSecondaryDexes(
             context,
             getProjectFilesystem(),
             steps);
 
+    if (dexSplitMode.isIncrementalSecondaryDexPacking()) {
+      steps.add(new AbstractExecutionStep("write_secondary_dex_packing") {
+        @Override
+        public int execute(ExecutionContext executionContext) {
+          List<String> lines = Lists.newArrayList();
+          for (Map.Entry<Path, Integer> entry : sortResult.secondaryDexAssignment.entrySet()) {
+            lines.add(String.format("%d %s", entry.getValue(), entry.getKey()));
+          }
+          try {
+            getProjectFilesystem().writeLinesToPath(lines, paths.packingFile);
+          } catch (IOException e) {
+            executionContext.logError(e, "Failed when writing the secondary dex packing.");
+            return 1;
+          }
+          return 0;
+        }
+      });
+    }
+
     steps.add(
         new SmartDexingStep(
             getProjectFilesystem(),
@@ -259,6 +300,29 @@ public class PreDexMerge extends AbstractBuildRule implements InitializableFromD
     });
   }
 
+  /**
+   * Reads the secondary dex each pre-dexed file was packed into by the last build of this rule.
+   * Each line of the file is the index of a secondary dex followed by the path to a pre-dexed file.
+   * A missing or unreadable file yields an empty assignment, which packs everything from scratch.
+   */
+  private ImmutableMap<Path, Integer> readSecondaryDexAssignment(Path packingFile) {
+    if (!getProjectFilesystem().exists(packingFile)) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<Path, Integer> assignment = ImmutableMap.builder();
+    try {
+      for (String line : getProjectFilesystem().readLines(packingFile)) {
+        List<String> parts = Splitter.on(' ').limit(2).splitToList(line);
+        Preconditions.checkArgument(parts.size() == 2, "Malformed line: %s", line);
+        assignment.put(Paths.get(parts.get(1)), Integer.parseInt(parts.get(0)));
+      }
+      return assignment.build();
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn(e, "Ignoring unreadable secondary dex packing %s.", packingFile);
+      return ImmutableMap.of();
+    }
+  }
+
   private void addStepsForSingleDex(
       ImmutableList.Builder<Step> steps,
       final BuildableContext buildableContext) {
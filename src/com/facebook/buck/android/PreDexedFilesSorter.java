@@ -63,6 +63,14 @@ public class PreDexedFilesSorter {
   private final DexStore dexStore;
   private final Path secondaryDexJarFilesDir;
 
+  /**
+   * Secondary dex index that each pre-dexed file was packed into by a previous build, keyed by
+   * {@link DexWithClasses#getPathToDexFile()}. When present, packing is incremental: entries are
+   * kept in their previous secondary dex whenever they still fit, so that a change to one library
+   * only changes the secondary dex files that contain it.
+   */
+  private final Optional<ImmutableMap<Path, Integer>> previousSecondaryDexAssignment;
+
   /**
    * Directory under the project filesystem where this step may write temporary data. This directory
    * must exist and be empty before this step writes to it.
@@ -76,7 +84,8 @@ public class PreDexedFilesSorter {
       Path scratchDirectory,
       long linearAllocHardLimit,
       DexStore dexStore,
-      Path secondaryDexJarFilesDir) {
+      Path secondaryDexJarFilesDir,
+      Optional<ImmutableMap<Path, Integer>> previousSecondaryDexAssignment) {
     this.rDotJavaDex = rDotJavaDex;
     this.dexFilesToMerge = dexFilesToMerge;
     this.primaryDexFilter = ClassNameFilter.fromConfiguration(primaryDexPatterns);
@@ -85,6 +94,7 @@ public class PreDexedFilesSorter {
     this.linearAllocHardLimit = linearAllocHardLimit;
     this.dexStore = dexStore;
     this.secondaryDexJarFilesDir = secondaryDexJarFilesDir;
+    this.previousSecondaryDexAssignment = previousSecondaryDexAssignment;
   }
 
   public Result sortIntoPrimaryAndSecondaryDexes(
@@ -92,7 +102,7 @@ public class PreDexedFilesSorter {
       ProjectFilesystem filesystem,
       ImmutableList.Builder<Step> steps) {
     List<DexWithClasses> primaryDexContents = Lists.newArrayList();
-    List<List<DexWithClasses>> secondaryDexesContents = Lists.newArrayList();
+    List<DexWithClasses> secondaryDexInputs = Lists.newArrayList();
 
     int primaryDexSize = 0;
     // R.class files should always be in the primary dex.
@@ -106,9 +116,7 @@ public class PreDexedFilesSorter {
     ImmutableList<DexWithClasses> sortedDexFilesToMerge = FluentIterable.from(dexFilesToMerge)
         .toSortedList(DexWithClasses.DEX_WITH_CLASSES_COMPARATOR);
 
-    // Bucket each DexWithClasses into the appropriate dex file.
-    List<DexWithClasses> currentSecondaryDexContents = null;
-    int currentSecondaryDexSize = 0;
+    // Split each DexWithClasses into the primary dex or the list of secondary dex inputs.
     for (DexWithClasses dexWithClasses : sortedDexFilesToMerge) {
       if (mustBeInPrimaryDex(dexWithClasses)) {
         // Case 1: Entry must be in the primary dex.
@@ -137,26 +145,25 @@ public class PreDexedFilesSorter {
               linearAllocHardLimit);
           throw new HumanReadableException("Secondary dex exceeds linear alloc limit.");
         }
+        secondaryDexInputs.add(dexWithClasses);
+      }
+    }
 
-        // If there is no current secondary dex, or dexWithClasses would put the current secondary
-        // dex over the cost threshold, then create a new secondary dex and initialize it with a
-        // canary.
-        if (currentSecondaryDexContents == null ||
-            dexWithClasses.getSizeEstimate() + currentSecondaryDexSize > linearAllocHardLimit) {
-          DexWithClasses canary = createCanary(
-              filesystem,
-              secondaryDexesContents.size() + 1,
-              steps);
-
-          currentSecondaryDexContents = Lists.newArrayList(canary);
-          currentSecondaryDexSize = canary.getSizeEstimate();
-          secondaryDexesContents.add(currentSecondaryDexContents);
-        }
-
-        // Now add the contributions from the dexWithClasses entry.
-        currentSecondaryDexContents.add(dexWithClasses);
-        currentSecondaryDexSize += dexWithClasses.getSizeEstimate();
+    // Bucket the secondary dex inputs, then start each secondary dex with a canary.
+    List<List<DexWithClasses>> secondaryDexesContents = Lists.newArrayList();
+    ImmutableMap.Builder<Path, Integer> secondaryDexAssignment = ImmutableMap.builder();
+    List<List<DexWithClasses>> buckets = previousSecondaryDexAssignment.isPresent()
+        ? packSecondaryDexesIncrementally(secondaryDexInputs, previousSecondaryDexAssignment.get())
+        : packSecondaryDexes(secondaryDexInputs);
+    for (List<DexWithClasses> bucket : buckets) {
+      int index = secondaryDexesContents.size();
+      List<DexWithClasses> secondaryDexContents =
+          Lists.newArrayList(createCanary(filesystem, index + 1, steps));
+      for (DexWithClasses dexWithClasses : bucket) {
+        secondaryDexContents.add(dexWithClasses);
+        secondaryDexAssignment.put(dexWithClasses.getPathToDexFile(), index);
       }
+      secondaryDexesContents.add(secondaryDexContents);
     }
 
     ImmutableSet<Path> primaryDexInputs = FluentIterable.from(primaryDexContents)
@@ -179,7 +186,83 @@ public class PreDexedFilesSorter {
         primaryDexInputs,
         secondaryOutputToInputs.build(),
         metadataTxtEntries,
-        getDexInputsHashes(primaryDexContents, secondaryDexesContents));
+        getDexInputsHashes(primaryDexContents, secondaryDexesContents),
+        secondaryDexAssignment.build());
+  }
+
+  /**
+   * Greedily fills secondary dex files in order, starting a new one whenever the next entry would
+   * put the current one over {@link #linearAllocHardLimit}.
+   */
+  private List<List<DexWithClasses>> packSecondaryDexes(List<DexWithClasses> secondaryDexInputs) {
+    List<List<DexWithClasses>> buckets = Lists.newArrayList();
+    List<DexWithClasses> currentBucket = null;
+    long currentBucketSize = 0;
+    for (DexWithClasses dexWithClasses : secondaryDexInputs) {
+      if (currentBucket == null ||
+          dexWithClasses.getSizeEstimate() + currentBucketSize > linearAllocHardLimit) {
+        currentBucket = Lists.newArrayList();
+        currentBucketSize = 0;
+        buckets.add(currentBucket);
+      }
+      currentBucket.add(dexWithClasses);
+      currentBucketSize += dexWithClasses.getSizeEstimate();
+    }
+    return buckets;
+  }
+
+  /**
+   * Keeps every entry in the secondary dex it was assigned to by the previous build if it still
+   * fits there. Entries that are new, or that no longer fit, are put in the first secondary dex
+   * with enough room, or in a new one at the end. A secondary dex that ends up empty keeps its
+   * slot, holding just its canary, so that the secondary dex files after it are not renumbered;
+   * only empty secondary dex files at the end are dropped.
+   */
+  private List<List<DexWithClasses>> packSecondaryDexesIncrementally(
+      List<DexWithClasses> secondaryDexInputs,
+      ImmutableMap<Path, Integer> previousAssignment) {
+    int previousBucketCount = 0;
+    for (int index : previousAssignment.values()) {
+      previousBucketCount = Math.max(previousBucketCount, index + 1);
+    }
+    List<List<DexWithClasses>> buckets = Lists.newArrayList();
+    List<Long> bucketSizes = Lists.newArrayList();
+    for (int index = 0; index < previousBucketCount; index++) {
+      buckets.add(Lists.<DexWithClasses>newArrayList());
+      bucketSizes.add(0L);
+    }
+
+    List<DexWithClasses> unassigned = Lists.newArrayList();
+    for (DexWithClasses dexWithClasses : secondaryDexInputs) {
+      Integer index = previousAssignment.get(dexWithClasses.getPathToDexFile());
+      if (index == null ||
+          index < 0 ||
+          bucketSizes.get(index) + dexWithClasses.getSizeEstimate() > linearAllocHardLimit) {
+        unassigned.add(dexWithClasses);
+        continue;
+      }
+      buckets.get(index).add(dexWithClasses);
+      bucketSizes.set(index, bucketSizes.get(index) + dexWithClasses.getSizeEstimate());
+    }
+
+    for (DexWithClasses dexWithClasses : unassigned) {
+      int index = 0;
+      while (index < buckets.size() &&
+          bucketSizes.get(index) + dexWithClasses.getSizeEstimate() > linearAllocHardLimit) {
+        index++;
+      }
+      if (index == buckets.size()) {
+        buckets.add(Lists.<DexWithClasses>newArrayList());
+        bucketSizes.add(0L);
+      }
+      buckets.get(index).add(dexWithClasses);
+      bucketSizes.set(index, bucketSizes.get(index) + dexWithClasses.getSizeEstimate());
+    }
+
+    while (!buckets.isEmpty() && buckets.get(buckets.size() - 1).isEmpty()) {
+      buckets.remove(buckets.size() - 1);
+    }
+    return buckets;
   }
 
   private static ImmutableMap<Path, Sha1HashCode> getDexInputsHashes(
@@ -271,15 +354,19 @@ public class PreDexedFilesSorter {
     public final Multimap<Path, Path> secondaryOutputToInputs;
     public final Map<Path, DexWithClasses> metadataTxtDexEntries;
     public final DexInputHashesProvider dexInputHashesProvider;
+    /** Index of the secondary dex that each secondary pre-dexed file was packed into. */
+    public final ImmutableMap<Path, Integer> secondaryDexAssignment;
 
     public Result(
         Set<Path> primaryDexInputs,
         Multimap<Path, Path> secondaryOutputToInputs,
         Map<Path, DexWithClasses> metadataTxtDexEntries,
-        final ImmutableMap<Path, Sha1HashCode> dexInputHashes) {
+        final ImmutableMap<Path, Sha1HashCode> dexInputHashes,
+        ImmutableMap<Path, Integer> secondaryDexAssignment) {
       this.primaryDexInputs = primaryDexInputs;
       this.secondaryOutputToInputs = secondaryOutputToInputs;
       this.metadataTxtDexEntries = metadataTxtDexEntries;
+      this.secondaryDexAssignment = secondaryDexAssignment;
       this.dexInputHashesProvider = new DexInputHashesProvider() {
         @Override
         public ImmutableMap<Path, Sha1HashCode> getDexInputHashes() {
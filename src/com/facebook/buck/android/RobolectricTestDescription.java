@@ -165,6 +165,7 @@ public class RobolectricTestDescription implements Description<RobolectricTestDe
                 dummyRDotJava,
                 args.testRuleTimeoutMs.or(defaultTestRuleTimeoutMs),
                 args.getRunTestSeparately(),
+                JavaTestDescription.validateShards(args.getShards(), params.getBuildTarget()),
                 args.stdOutLogLevel,
                 args.stdErrLogLevel,
                 testTempDirOverride));
@@ -120,6 +120,7 @@ public class SplitZipStep implements Step {
   private final Optional<Path> proguardMappingFile;
   private final DexSplitMode dexSplitMode;
   private final Path pathToReportDir;
+  private final Optional<Path> pathToDalvikStatsCache;
 
   private final Optional<Path> primaryDexScenarioFile;
   private final Optional<Path> primaryDexClassesFile;
@@ -142,6 +143,8 @@ public class SplitZipStep implements Step {
    * @param proguardFullConfigFile Path to the full generated ProGuard configuration, generated
    *     by the -printconfiguration flag.  This is part of the *output* of ProGuard.
    * @param proguardMappingFile Path to the mapping file generated by ProGuard's obfuscation.
+   * @param pathToDalvikStatsCache Path to a file that keeps linear alloc estimates for classes
+   *     between builds.  Only used when splitting by linear alloc.
    */
   public SplitZipStep(
       ProjectFilesystem filesystem,
@@ -157,7 +160,8 @@ public class SplitZipStep implements Step {
       Optional<Path> primaryDexClassesFile,
       Optional<Path> secondaryDexHeadClassesFile,
       Optional<Path> secondaryDexTailClassesFile,
-      Path pathToReportDir) {
+      Path pathToReportDir,
+      Optional<Path> pathToDalvikStatsCache) {
     this.filesystem = filesystem;
     this.inputPathsToSplit = ImmutableSet.copyOf(inputPathsToSplit);
     this.secondaryJarMetaPath = secondaryJarMetaPath;
@@ -172,6 +176,7 @@ public class SplitZipStep implements Step {
     this.secondaryDexHeadClassesFile = secondaryDexHeadClassesFile;
     this.secondaryDexTailClassesFile = secondaryDexTailClassesFile;
     this.pathToReportDir = pathToReportDir;
+    this.pathToDalvikStatsCache = pathToDalvikStatsCache;
 
     Preconditions.checkArgument(
         proguardFullConfigFile.isPresent() == proguardMappingFile.isPresent(),
@@ -201,7 +206,8 @@ public class SplitZipStep implements Step {
       if (dexSplitMode.useLinearAllocSplitDex()) {
         zipSplitterFactory = new DalvikAwareZipSplitterFactory(
             dexSplitMode.getLinearAllocHardLimit(),
-            wantedInPrimaryZip);
+            wantedInPrimaryZip,
+            pathToDalvikStatsCache.transform(filesystem.getAbsolutifier()));
       } else {
         zipSplitterFactory = new DefaultZipSplitterFactory(ZIP_SIZE_SOFT_LIMIT,
             ZIP_SIZE_HARD_LIMIT);
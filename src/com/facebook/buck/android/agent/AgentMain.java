@@ -68,6 +68,8 @@ public class AgentMain {
         doMkdirP(userArgs);
       } else if (command.equals("receive-file")) {
         doReceiveFile(userArgs);
+      } else if (command.equals("multi-receive-file")) {
+        doMultiReceiveFile(userArgs);
       } else {
         throw new IllegalArgumentException("Unknown command: " + command);
       }
@@ -198,8 +200,100 @@ public class AgentMain {
     }
   }
 
+  /**
+   * Receive several files over a single network connection and write them to disk.
+   *
+   * <p>The only argument is the port to listen on.  The session key is exchanged exactly as for
+   * receive-file.  After the key, the host sends each file as a header line of the form
+   * "SIZE PATH\n" (see {@link AgentUtil#MULTI_RECEIVE_HEADER_FORMAT}) followed by exactly SIZE bytes
+   * of file contents.  The host closes the connection after the last file.
+   *
+   * <p>This saves starting a new agent process and a new connection for every file, which
+   * dominates the install time when many small files change.
+   */
+  private static void doMultiReceiveFile(List<String> userArgs) throws IOException {
+    if (userArgs.size() != 1) {
+      throw new IllegalArgumentException("usage: multi-receive-file PORT");
+    }
+
+    int port = Integer.parseInt(userArgs.get(0));
+
+    ServerSocket serverSocket = null;
+    try {
+      serverSocket = new ServerSocket(port);
+
+      byte[] secretKey = createAndSendSessionKey();
+
+      serverSocket.setSoTimeout(CONNECT_TIMEOUT_MS);
+      Socket connectionSocket = serverSocket.accept();
+      connectionSocket.setSoTimeout(RECEIVE_TIMEOUT_MS);
+      InputStream input = new BufferedInputStream(connectionSocket.getInputStream());
+
+      receiveAndValidateSessionKey(secretKey, input);
+
+      receiveFiles(new File("/"), input);
+    } finally {
+      if (serverSocket != null) {
+        serverSocket.close();
+      }
+    }
+  }
+
+  /**
+   * Reads files in the multi-receive-file format from {@code clientInput} until it is exhausted.
+   * Paths in the headers are resolved against {@code root}, which is "/" on a device.
+   *
+   * <p>This is public only so that the host-side tests can run it against a fake device.
+   */
+  public static void receiveFiles(File root, InputStream clientInput)
+      throws IOException {
+    while (true) {
+      String header = readHeaderLine(clientInput);
+      if (header == null) {
+        break;
+      }
+      int space = header.indexOf(' ');
+      if (space == -1) {
+        throw new IllegalStateException("Malformed file header: " + header);
+      }
+      int size = Integer.parseInt(header.substring(0, space));
+      File path = new File(root, header.substring(space + 1));
+      receiveToFile(path, size, clientInput, size);
+    }
+  }
+
+  /**
+   * @return the next "\n"-terminated line of {@code input}, without the terminator, or null if
+   *     the stream ended before any byte of the line.
+   */
+  private static String readHeaderLine(InputStream input) throws IOException {
+    StringBuilder line = new StringBuilder();
+    while (true) {
+      int b = input.read();
+      if (b == -1) {
+        if (line.length() == 0) {
+          return null;
+        }
+        throw new IllegalStateException("Stream ended inside a file header.");
+      }
+      if (b == '\n') {
+        return line.toString();
+      }
+      line.append((char) b);
+    }
+  }
+
   private static void doRawReceiveFile(File path, int size, InputStream clientInput)
       throws IOException {
+    receiveToFile(path, size, clientInput, Long.MAX_VALUE);
+  }
+
+  /**
+   * Reads at most {@code limit} bytes of {@code clientInput} into {@code path}, and fails unless
+   * exactly {@code size} bytes were received.
+   */
+  private static void receiveToFile(File path, int size, InputStream clientInput, long limit)
+      throws IOException {
     // Create a temp file to receive the payload, so we don't need to worry about
     // partially-received files.  The host takes care of deleting temp files.
     File tempfile = File.createTempFile(
@@ -215,12 +309,12 @@ public class AgentMain {
     try {
       final int bufferSize = 128 * 1024;
       byte[] buf = new byte[bufferSize];
-      while (true) {
+      while (totalSize < limit) {
         long currentTimeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
         if (currentTimeMs - receiveStartMs > RECEIVE_TIMEOUT_MS) {
           throw new RuntimeException("Receive failed to complete before timeout.");
         }
-        int got = clientInput.read(buf);
+        int got = clientInput.read(buf, 0, (int) Math.min(buf.length, limit - totalSize));
         if (got == -1) {
           break;
         }
@@ -33,7 +33,7 @@ public final class AgentUtil {
 
   // These must match the values in the agent manifest.
   public static final String AGENT_PACKAGE_NAME = "com.facebook.buck.android.agent";
-  public static final String AGENT_VERSION_CODE = "3";
+  public static final String AGENT_VERSION_CODE = "4";
 
   /**
    * Size in bytes of the binary data use to generate the secret key for receive-file.
@@ -47,6 +47,12 @@ public final class AgentUtil {
 
   public static final String TEMP_PREFIX = "exopackage_temp-";
 
+  /**
+   * Format of the header line that precedes each file sent to multi-receive-file.
+   * The arguments are the size of the file in bytes and its absolute path on the device.
+   */
+  public static final String MULTI_RECEIVE_HEADER_FORMAT = "%d %s\n";
+
   public static String getJarSignature(String packagePath) throws IOException {
     Pattern signatureFilePattern = Pattern.compile("META-INF/[A-Z]+\\.SF");
 
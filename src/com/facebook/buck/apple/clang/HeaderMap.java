@@ -326,6 +326,15 @@ public class HeaderMap {
     return new Builder();
   }
 
+  /**
+   * @return a builder whose table is sized up front to hold {@code expectedEntries} entries
+   *     without growing, which avoids re-adding every entry each time the table fills up and keeps
+   *     small maps small.
+   */
+  public static Builder builder(int expectedEntries) {
+    return new Builder(expectedEntries);
+  }
+
   public static class Builder {
 
     static final int DEFAULT_NUM_BUCKETS = 256;
@@ -337,6 +346,15 @@ public class HeaderMap {
       this.headerMap = new HeaderMap(DEFAULT_NUM_BUCKETS, DEFAULT_STRING_BYTES_LENGTH);
     }
 
+    public Builder(int expectedEntries) {
+      Preconditions.checkArgument(expectedEntries >= 0);
+      int numBuckets = 1;
+      while (expectedEntries / (double) numBuckets > MAX_LOAD_FACTOR) {
+        numBuckets *= 2;
+      }
+      this.headerMap = new HeaderMap(numBuckets, DEFAULT_STRING_BYTES_LENGTH);
+    }
+
     public synchronized boolean add(String key, String prefix, String suffix) {
       AddResult result = headerMap.add(key, prefix, suffix);
 
@@ -21,7 +21,6 @@ import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.model.BuildFileTree;
 import com.facebook.buck.model.BuildTargetException;
-import com.facebook.buck.model.FilesystemBackedBuildFileTree;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.util.Ansi;
@@ -29,13 +28,12 @@ import com.facebook.buck.util.MoreExceptions;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
@@ -49,6 +47,7 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -146,9 +145,7 @@ public class AuditOwnerCommand extends AbstractCommand {
   @Override
   public int runWithoutHelp(CommandRunnerParams params) throws IOException, InterruptedException {
     ParserConfig parserConfig = new ParserConfig(params.getBuckConfig());
-    BuildFileTree buildFileTree = new FilesystemBackedBuildFileTree(
-        params.getCell().getFilesystem(),
-        parserConfig.getBuildFileName());
+    BuildFileTree buildFileTree = params.getParser().getBuildFileTree();
     try {
       OwnersReport report = buildOwnersReport(
           params,
@@ -174,9 +171,12 @@ public class AuditOwnerCommand extends AbstractCommand {
       throws IOException, InterruptedException, BuildFileParseException, BuildTargetException {
     final Path rootPath = params.getCell().getFilesystem().getRootPath();
     Preconditions.checkState(rootPath.isAbsolute());
-    Map<Path, List<TargetNode<?>>> targetNodes = Maps.newHashMap();
     OwnersReport report = OwnersReport.emptyReport();
 
+    // Group the files by the build file which may own them, so that each build file is parsed,
+    // and its targets' inputs indexed, once however many of the files it covers.
+    Map<Path, Path> buildFileBasePaths = new LinkedHashMap<>();
+    SetMultimap<Path, String> filesByBuildFile = LinkedHashMultimap.create();
     for (Path filePath : getArgumentsAsPaths(rootPath, arguments)) {
       Optional<Path> basePath = buildFileTree.getBasePathOfAncestorTarget(filePath);
       if (!basePath.isPresent()) {
@@ -191,36 +191,39 @@ public class AuditOwnerCommand extends AbstractCommand {
 
       Path buckFile = basePath.get().resolve(parserConfig.getBuildFileName());
       Preconditions.checkState(params.getCell().getFilesystem().exists(buckFile));
+      buildFileBasePaths.put(buckFile, basePath.get());
+      filesByBuildFile.put(buckFile, filePath.toString());
+    }
+
+    for (Map.Entry<Path, Path> entry : buildFileBasePaths.entrySet()) {
+      Path buckFile = entry.getKey();
 
       // Parse buck files and load target nodes.
-      if (!targetNodes.containsKey(buckFile)) {
-        try {
-          targetNodes.put(
-              buckFile,
-              params.getParser().getAllRawTargetNodes(
-                  buckFile,
-                  parserConfig,
-                  params.getBuckEventBus(),
-                  params.getConsole(),
-                  params.getEnvironment()));
-        } catch (BuildFileParseException | BuildTargetException e) {
-          Path targetBasePath = MorePaths.relativize(rootPath, rootPath.resolve(basePath.get()));
-          String targetBaseName = "//" + MorePaths.pathWithUnixSeparators(targetBasePath);
-
-          params
-              .getConsole()
-              .getStdErr()
-              .format("Could not parse build targets for %s", targetBaseName);
-          throw e;
-        }
+      ImmutableList<TargetNode<?>> targetNodes;
+      try {
+        targetNodes = params.getParser().getAllRawTargetNodes(
+            buckFile,
+            parserConfig,
+            params.getBuckEventBus(),
+            params.getConsole(),
+            params.getEnvironment());
+      } catch (BuildFileParseException | BuildTargetException e) {
+        Path targetBasePath = MorePaths.relativize(rootPath, rootPath.resolve(entry.getValue()));
+        String targetBaseName = "//" + MorePaths.pathWithUnixSeparators(targetBasePath);
+
+        params
+            .getConsole()
+            .getStdErr()
+            .format("Could not parse build targets for %s", targetBaseName);
+        throw e;
       }
 
-      for (TargetNode<?> targetNode : targetNodes.get(buckFile)) {
+      if (!targetNodes.isEmpty()) {
         report = report.updatedWith(
             generateOwnersReport(
                 params,
-                targetNode,
-                ImmutableList.of(filePath.toString()),
+                targetNodes,
+                filesByBuildFile.get(buckFile),
                 guessForDeletedEnabled));
       }
     }
@@ -238,6 +241,23 @@ public class AuditOwnerCommand extends AbstractCommand {
       TargetNode<?> targetNode,
       Iterable<String> filePaths,
       boolean guessForDeletedEnabled) {
+    return generateOwnersReport(
+        params,
+        ImmutableList.<TargetNode<?>>of(targetNode),
+        filePaths,
+        guessForDeletedEnabled);
+  }
+
+  /**
+   * A target owns a file if the file, or a directory containing it, is one of the target's inputs.
+   * Rather than checking every file against every input of every target, the inputs are indexed,
+   * and each file and its parent directories are looked up in the index.
+   */
+  private static OwnersReport generateOwnersReport(
+      CommandRunnerParams params,
+      Iterable<TargetNode<?>> targetNodes,
+      Iterable<String> filePaths,
+      boolean guessForDeletedEnabled) {
 
     // Process arguments assuming they are all relative file paths.
     Set<Path> inputs = Sets.newHashSet();
@@ -255,29 +275,31 @@ public class AuditOwnerCommand extends AbstractCommand {
       }
     }
 
+    SetMultimap<Path, TargetNode<?>> nodesByInput = HashMultimap.create();
+    for (TargetNode<?> targetNode : targetNodes) {
+      for (Path ruleInput : targetNode.getInputs()) {
+        nodesByInput.put(ruleInput, targetNode);
+      }
+    }
+
     // Try to find owners for each valid and existing file.
     Set<Path> inputsWithNoOwners = Sets.newHashSet(inputs);
     SetMultimap<TargetNode<?>, Path> owners = TreeMultimap.create();
-    for (final Path commandInput : inputs) {
-      Predicate<Path> startsWith = new Predicate<Path>() {
-        @Override
-        public boolean apply(Path input) {
-          return !commandInput.equals(input) && commandInput.startsWith(input);
+    for (Path commandInput : inputs) {
+      for (Path path = commandInput; path != null; path = path.getParent()) {
+        for (TargetNode<?> targetNode : nodesByInput.get(path)) {
+          inputsWithNoOwners.remove(commandInput);
+          owners.put(targetNode, commandInput);
         }
-      };
-
-      Set<Path> ruleInputs = targetNode.getInputs();
-      if (ruleInputs.contains(commandInput) ||
-          FluentIterable.from(ruleInputs).anyMatch(startsWith)) {
-        inputsWithNoOwners.remove(commandInput);
-        owners.put(targetNode, commandInput);
       }
     }
 
     // Try to guess owners for nonexistent files.
     if (guessForDeletedEnabled) {
-      for (String nonExistentInput : nonExistentInputs) {
-        owners.put(targetNode, new File(nonExistentInput).toPath());
+      for (TargetNode<?> targetNode : targetNodes) {
+        for (String nonExistentInput : nonExistentInputs) {
+          owners.put(targetNode, new File(nonExistentInput).toPath());
+        }
       }
     }
 
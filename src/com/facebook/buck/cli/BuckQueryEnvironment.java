@@ -26,13 +26,13 @@ import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.model.BuildFileTree;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
-import com.facebook.buck.model.FilesystemBackedBuildFileTree;
 import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodes;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
@@ -41,7 +41,9 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -62,7 +64,26 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
   @VisibleForTesting
   protected TargetPatternEvaluator targetPatternEvaluator;
 
+  /**
+   * The one {@link QueryTarget} for each build target, so that the sets which queries combine hold
+   * the same instances, which compare equal by identity, rather than copies.
+   */
   private Map<BuildTarget, QueryTarget> buildTargetToQueryTarget = new HashMap<>();
+  private final Function<BuildTarget, QueryTarget> toQueryTarget =
+      new Function<BuildTarget, QueryTarget>() {
+        @Override
+        public QueryTarget apply(BuildTarget buildTarget) {
+          return getOrCreateQueryBuildTarget(buildTarget);
+        }
+      };
+
+  /**
+   * The transitive closures computed in the current {@link #graph}, which queries such as
+   * {@code rdeps(//..., %s)} otherwise recompute for every input.  Cleared whenever the graph
+   * grows.
+   */
+  private Map<ImmutableSet<QueryTarget>, ImmutableSet<QueryTarget>> transitiveClosures =
+      new HashMap<>();
 
   private boolean enableProfiling;
 
@@ -72,10 +93,9 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
     this.params = params;
     this.enableProfiling = enableProfiling;
     this.parserConfig = new ParserConfig(params.getBuckConfig());
-    this.buildFileTree = new FilesystemBackedBuildFileTree(
-        params.getCell().getFilesystem(),
-        parserConfig.getBuildFileName());
-    this.targetPatternEvaluator = new TargetPatternEvaluator(params, enableProfiling);
+    this.buildFileTree = params.getParser().getBuildFileTree();
+    this.targetPatternEvaluator =
+        new TargetPatternEvaluator(params, enableProfiling, toQueryTarget);
   }
 
   public CommandRunnerParams getParams() {
@@ -127,9 +147,15 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
 
   TargetNode<?> getNode(QueryTarget target) throws QueryException, InterruptedException {
     Preconditions.checkState(target instanceof QueryBuildTarget);
+    BuildTarget buildTarget = ((QueryBuildTarget) target).getBuildTarget();
+    // Nodes in the graph have already been parsed, and looking them up here is much cheaper.
+    TargetNode<?> node = graph.get(buildTarget);
+    if (node != null) {
+      return node;
+    }
     try {
       return params.getParser().getTargetNode(
-          ((QueryBuildTarget) target).getBuildTarget(),
+          buildTarget,
           params.getBuckEventBus(),
           params.getConsole(),
           enableProfiling);
@@ -147,6 +173,12 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
     return queryBuildTarget;
   }
 
+  private void addQueryTargets(Iterable<TargetNode<?>> nodes, Set<QueryTarget> result) {
+    for (TargetNode<?> node : nodes) {
+      result.add(getOrCreateQueryBuildTarget(node.getBuildTarget()));
+    }
+  }
+
   public ImmutableSet<QueryTarget> getTargetsFromBuildTargetsContainer(
       Iterable<? extends  HasBuildTarget> buildTargetsContainer) {
     ImmutableSortedSet.Builder<QueryTarget> builder = ImmutableSortedSet.naturalOrder();
@@ -179,8 +211,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
       throws QueryException, InterruptedException {
     Set<QueryTarget> result = new LinkedHashSet<>();
     for (QueryTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      result.addAll(getTargetsFromBuildTargetsContainer(graph.getOutgoingNodesFor(node)));
+      addQueryTargets(graph.getOutgoingNodesFor(getNode(target)), result);
     }
     return result;
   }
@@ -190,8 +221,8 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
       throws QueryException, InterruptedException {
     Set<QueryTarget> result = new LinkedHashSet<>();
     for (QueryTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      result.addAll(getTargetsFromBuildTargetsContainer(graph.getIncomingNodesFor(node)));
+      // The graph keeps the incoming edges of every node, so this is a lookup rather than a scan.
+      addQueryTargets(graph.getIncomingNodesFor(getNode(target)), result);
     }
     return result;
   }
@@ -199,18 +230,37 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
   @Override
   public ImmutableSet<QueryTarget> getTransitiveClosure(Set<QueryTarget> targets)
       throws QueryException, InterruptedException {
-    Set<TargetNode<?>> nodes = new LinkedHashSet<>();
+    ImmutableSet<QueryTarget> key = ImmutableSet.copyOf(targets);
+    ImmutableSet<QueryTarget> closure = transitiveClosures.get(key);
+    if (closure != null) {
+      return closure;
+    }
+
+    Set<TargetNode<?>> visited = new HashSet<>();
+    Deque<TargetNode<?>> toVisit = new ArrayDeque<>();
     for (QueryTarget target : targets) {
-      nodes.add(getNode(target));
+      TargetNode<?> node = getNode(target);
+      if (visited.add(node)) {
+        toVisit.add(node);
+      }
     }
-    // Reusing the existing getSubgraph() for simplicity. It builds the graph when we only need the
-    // nodes. The impact of creating the edges in terms of time and space should be minimal.
-    return getTargetsFromBuildTargetsContainer(graph.getSubgraph(nodes).getNodes());
+    while (!toVisit.isEmpty()) {
+      for (TargetNode<?> dep : graph.getOutgoingNodesFor(toVisit.remove())) {
+        if (visited.add(dep)) {
+          toVisit.add(dep);
+        }
+      }
+    }
+
+    closure = getTargetsFromBuildTargetsContainer(visited);
+    transitiveClosures.put(key, closure);
+    return closure;
   }
 
   private void buildGraphForBuildTargets(Set<BuildTarget> targets)
       throws QueryException, InterruptedException {
     try {
+      transitiveClosures.clear();
       graph = params.getParser().buildTargetGraphForBuildTargets(
           targets,
           parserConfig,
@@ -240,9 +290,7 @@ public class BuckQueryEnvironment implements QueryEnvironment<QueryTarget> {
     if (!newBuildTargets.isEmpty()) {
       buildGraphForBuildTargets(Sets.union(newBuildTargets, graphTargets));
       for (BuildTarget buildTarget : getTargetsFromNodes(graph.getNodes())) {
-        if (!buildTargetToQueryTarget.containsKey(buildTarget)) {
-          buildTargetToQueryTarget.put(buildTarget, QueryBuildTarget.of(buildTarget));
-        }
+        getOrCreateQueryBuildTarget(buildTarget);
       }
     }
   }
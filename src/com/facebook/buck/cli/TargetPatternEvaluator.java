@@ -16,7 +16,6 @@
 
 package com.facebook.buck.cli;
 
-import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryFileTarget;
 import com.facebook.buck.query.QueryTarget;
 import com.facebook.buck.json.BuildFileParseException;
@@ -24,6 +23,7 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.parser.BuildTargetPatternTargetNodeParser;
 import com.facebook.buck.parser.ParserConfig;
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
@@ -40,11 +40,20 @@ public class TargetPatternEvaluator {
   private final ParserConfig parserConfig;
   private final Path projectRoot;
   private final CommandLineTargetNodeSpecParser targetNodeSpecParser;
+  private final Function<BuildTarget, QueryTarget> toQueryTarget;
 
   private Map<String, ImmutableSet<QueryTarget>> resolvedTargets = new HashMap<>();
 
-  public TargetPatternEvaluator(CommandRunnerParams params, boolean enableProfiling) {
+  /**
+   * @param toQueryTarget creates the {@link QueryTarget}s for the targets patterns resolve to, so
+   *     that the caller can share one instance per target across patterns.
+   */
+  public TargetPatternEvaluator(
+      CommandRunnerParams params,
+      boolean enableProfiling,
+      Function<BuildTarget, QueryTarget> toQueryTarget) {
     this.enableProfiling = enableProfiling;
+    this.toQueryTarget = toQueryTarget;
     this.params = params;
     this.parserConfig = new ParserConfig(params.getBuckConfig());
     this.projectRoot = params.getCell().getFilesystem().getRootPath();
@@ -111,7 +120,7 @@ public class TargetPatternEvaluator {
     // Sorting to have predictable results across different java libraries implementations.
     ImmutableSet.Builder<QueryTarget> builder = ImmutableSortedSet.naturalOrder();
     for (BuildTarget target : buildTargets) {
-      builder.add(QueryBuildTarget.of(target));
+      builder.add(toQueryTarget.apply(target));
     }
     return builder.build();
   }
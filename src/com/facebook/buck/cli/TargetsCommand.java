@@ -46,8 +46,11 @@ import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodes;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreExceptions;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.infer.annotation.SuppressFieldNotInitialized;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -70,18 +73,22 @@ import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
 
@@ -89,6 +96,13 @@ public class TargetsCommand extends AbstractCommand {
 
   private static final Logger LOG = Logger.get(TargetsCommand.class);
 
+  /**
+   * The attributes which {@code --json} adds to each target for {@code --show-rulekey} and
+   * {@code --show-output}.
+   */
+  private static final String RULE_KEY_ATTRIBUTE = "buck.ruleKey";
+  private static final String OUTPUT_PATH_ATTRIBUTE = "buck.outputPath";
+
   // TODO(mbolin): Use org.kohsuke.args4j.spi.PathOptionHandler. Currently, we resolve paths
   // manually, which is likely the path to madness.
   @Option(name = "--referenced-file",
@@ -462,15 +476,33 @@ public class TargetsCommand extends AbstractCommand {
       SortedMap<String, TargetNode<?>> buildIndex,
       ParserConfig parserConfig)
       throws BuildFileParseException, IOException, InterruptedException {
-    // Print the JSON representation of the build node for the specified target(s).
-    params.getConsole().getStdOut().println("[");
-
-    ObjectMapper mapper = params.getObjectMapper();
-    Iterator<TargetNode<?>> valueIterator = buildIndex.values().iterator();
+    printJsonForTargets(
+        params,
+        buildIndex,
+        ImmutableMap.<BuildTarget, ListenableFuture<ImmutableSortedMap<String, String>>>of(),
+        parserConfig);
+  }
 
-    while (valueIterator.hasNext()) {
-      TargetNode<?> targetNode = valueIterator.next();
+  /**
+   * Prints the JSON representation of each target as soon as its build file has been read, rather
+   * than holding every target's attributes until the end.
+   *
+   * @param extraAttributes attributes computed by {@link #computeShowRulesAttributes} to add to
+   *     each target.
+   */
+  private void printJsonForTargets(
+      CommandRunnerParams params,
+      SortedMap<String, TargetNode<?>> buildIndex,
+      Map<BuildTarget, ListenableFuture<ImmutableSortedMap<String, String>>> extraAttributes,
+      ParserConfig parserConfig)
+      throws BuildFileParseException, IOException, InterruptedException {
+    // Print the JSON representation of the build node for the specified target(s).
+    PrintStream stdOut = params.getConsole().getStdOut();
+    stdOut.println("[");
 
+    JsonFactory jsonFactory = params.getObjectMapper().getJsonFactory();
+    boolean isFirst = true;
+    for (TargetNode<?> targetNode : buildIndex.values()) {
       SortedMap<String, Object> sortedTargetRule = null;
       try {
         sortedTargetRule = params.getParser().getRawTargetNode(
@@ -492,22 +524,31 @@ public class TargetsCommand extends AbstractCommand {
         continue;
       }
 
-      // Print the build rule information as JSON.
-      StringWriter stringWriter = new StringWriter();
-      try {
-        mapper.writerWithDefaultPrettyPrinter().writeValue(stringWriter, sortedTargetRule);
-      } catch (IOException e) {
-        // Shouldn't be possible while writing to a StringWriter...
-        throw Throwables.propagate(e);
+      ListenableFuture<ImmutableSortedMap<String, String>> extra =
+          extraAttributes.get(targetNode.getBuildTarget());
+      if (extra != null) {
+        sortedTargetRule = new TreeMap<>(sortedTargetRule);
+        sortedTargetRule.putAll(getUnchecked(extra));
       }
-      String output = stringWriter.getBuffer().toString();
-      if (valueIterator.hasNext()) {
-        output += ",";
+
+      if (!isFirst) {
+        stdOut.println(",");
       }
-      params.getConsole().getStdOut().println(output);
+      isFirst = false;
+
+      // Write the build rule information as JSON straight to stdout.  The generator must not close
+      // stdout, so each target gets a generator of its own.
+      JsonGenerator generator = jsonFactory.createJsonGenerator(stdOut, JsonEncoding.UTF8);
+      generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      generator.useDefaultPrettyPrinter();
+      generator.writeObject(sortedTargetRule);
+      generator.close();
     }
 
-    params.getConsole().getStdOut().println("]");
+    if (!isFirst) {
+      stdOut.println();
+    }
+    stdOut.println("]");
   }
 
   @VisibleForTesting
@@ -586,34 +627,57 @@ public class TargetsCommand extends AbstractCommand {
 
     if (isShowTargetHash()) {
       return doShowTargetHash(params, matchingBuildTargets);
-    } else {
-      Optional<ActionGraph> actionGraph;
-      if (isShowRuleKey() || isShowOutput()) {
-        TargetGraphTransformer targetGraphTransformer = new TargetGraphToActionGraph(
-            params.getBuckEventBus(),
-            new BuildTargetNodeToBuildRuleTransformer(),
-            params.getFileHashCache());
-        actionGraph = Optional.of(
-            Preconditions.checkNotNull(targetGraphTransformer.apply(targetGraph)).getFirst());
-      } else {
-        actionGraph = Optional.absent();
+    }
+
+    TargetGraphTransformer targetGraphTransformer = new TargetGraphToActionGraph(
+        params.getBuckEventBus(),
+        new BuildTargetNodeToBuildRuleTransformer(),
+        params.getFileHashCache());
+    ActionGraph actionGraph =
+        Preconditions.checkNotNull(targetGraphTransformer.apply(targetGraph)).getFirst();
+
+    ImmutableSortedSet<BuildTarget> sortedTargets = ImmutableSortedSet.copyOf(matchingBuildTargets);
+    try (CommandThreadManager pool = new CommandThreadManager(
+        "Targets",
+        new ConcurrencyLimit(
+            params.getBuckConfig().getNumThreads(),
+            params.getBuckConfig().getLoadLimit()))) {
+      // Rule keys are computed in parallel, but printed in order as soon as each is ready.
+      ImmutableMap<BuildTarget, ListenableFuture<ImmutableSortedMap<String, String>>> attributes =
+          computeShowRulesAttributes(actionGraph, sortedTargets, pool.getExecutor());
+
+      if (getPrintJson()) {
+        ImmutableSortedMap.Builder<String, TargetNode<?>> nodes =
+            ImmutableSortedMap.naturalOrder();
+        for (BuildTarget target : sortedTargets) {
+          nodes.put(
+              target.getFullyQualifiedName(),
+              Preconditions.checkNotNull(targetGraph.get(target)));
+        }
+        try {
+          printJsonForTargets(
+              params,
+              nodes.build(),
+              attributes,
+              new ParserConfig(params.getBuckConfig()));
+        } catch (BuildFileParseException e) {
+          params.getBuckEventBus().post(ConsoleEvent.severe(
+              MoreExceptions.getHumanReadableOrLocalizedMessage(e)));
+          return 1;
+        }
+        return 0;
       }
 
-      for (BuildTarget target : ImmutableSortedSet.copyOf(matchingBuildTargets)) {
+      for (BuildTarget target : sortedTargets) {
+        ImmutableSortedMap<String, String> targetAttributes =
+            getUnchecked(Preconditions.checkNotNull(attributes.get(target)));
         ImmutableList.Builder<String> builder = ImmutableList.builder();
         builder.add(target.getFullyQualifiedName());
-        if (actionGraph.isPresent()) {
-          BuildRule rule = Preconditions.checkNotNull(
-              actionGraph.get().findBuildRuleByTarget(target));
-          if (isShowRuleKey()) {
-            builder.add(rule.getRuleKey().toString());
-          }
-          if (isShowOutput()) {
-            Path outputPath = rule.getPathToOutput();
-            if (outputPath != null) {
-              builder.add(outputPath.toString());
-            }
-          }
+        if (targetAttributes.containsKey(RULE_KEY_ATTRIBUTE)) {
+          builder.add(targetAttributes.get(RULE_KEY_ATTRIBUTE));
+        }
+        if (targetAttributes.containsKey(OUTPUT_PATH_ATTRIBUTE)) {
+          builder.add(targetAttributes.get(OUTPUT_PATH_ATTRIBUTE));
         }
         params.getConsole().getStdOut().println(Joiner.on(' ').join(builder.build()));
       }
@@ -622,6 +686,52 @@ public class TargetsCommand extends AbstractCommand {
     return 0;
   }
 
+  /**
+   * Starts computing the rule key and/or output path of each target, as requested by
+   * {@code --show-rulekey} and {@code --show-output}.
+   */
+  private ImmutableMap<BuildTarget, ListenableFuture<ImmutableSortedMap<String, String>>>
+      computeShowRulesAttributes(
+          final ActionGraph actionGraph,
+          Iterable<BuildTarget> targets,
+          ListeningExecutorService executor) {
+    ImmutableMap.Builder<BuildTarget, ListenableFuture<ImmutableSortedMap<String, String>>>
+        results = ImmutableMap.builder();
+    for (final BuildTarget target : targets) {
+      results.put(
+          target,
+          executor.submit(
+              new Callable<ImmutableSortedMap<String, String>>() {
+                @Override
+                public ImmutableSortedMap<String, String> call() {
+                  BuildRule rule = Preconditions.checkNotNull(
+                      actionGraph.findBuildRuleByTarget(target));
+                  ImmutableSortedMap.Builder<String, String> attributes =
+                      ImmutableSortedMap.naturalOrder();
+                  if (isShowRuleKey()) {
+                    attributes.put(RULE_KEY_ATTRIBUTE, rule.getRuleKey().toString());
+                  }
+                  if (isShowOutput()) {
+                    Path outputPath = rule.getPathToOutput();
+                    if (outputPath != null) {
+                      attributes.put(OUTPUT_PATH_ATTRIBUTE, outputPath.toString());
+                    }
+                  }
+                  return attributes.build();
+                }
+              }));
+    }
+    return results.build();
+  }
+
+  private static <T> T getUnchecked(ListenableFuture<T> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+  }
+
   private int doShowTargetHash(
       CommandRunnerParams params,
       ImmutableSet<BuildTarget> matchingBuildTargets)
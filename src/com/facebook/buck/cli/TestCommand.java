@@ -155,6 +155,13 @@ public class TestCommand extends BuildCommand {
           "WARNING: only works for Java tests!")
   private boolean isShufflingTests;
 
+  @Option(
+      name = "--fail-fast",
+      usage =
+          "Stop starting tests once a test has failed, and exit once the tests which are already " +
+          "running have finished.")
+  private boolean isFailFast;
+
   @Option(
       name = "--exclude-transitive-tests",
       usage =
@@ -256,6 +263,14 @@ public class TestCommand extends BuildCommand {
         .setResultsCacheEnabled(isResultsCacheEnabled(params.getBuckConfig()))
         .setDryRun(isDryRun)
         .setShufflingTests(isShufflingTests)
+        .setFailFast(isFailFast)
+        .setUsingTestRunnerWorkers(
+            params.getBuckConfig().getBooleanValue("test", "java_test_runner_workers", false))
+        .setTestRunnerWorkerMaxRuns(
+            params.getBuckConfig()
+                .getLong("test", "java_test_runner_worker_max_runs")
+                .or(50L)
+                .intValue())
         .setPathToXmlTestOutput(Optional.fromNullable(pathToXmlTestOutput))
         .setPathToJavaAgent(Optional.fromNullable(pathToJavaAgent))
         .setCoverageReportFormat(coverageReportFormat)
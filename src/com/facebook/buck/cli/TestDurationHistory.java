@@ -0,0 +1,131 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.BuckConstant;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The wall clock time each test rule took the last time its tests ran, kept in buck-out so that
+ * later runs can start the longest tests first.
+ */
+public class TestDurationHistory {
+
+  private static final Logger LOG = Logger.get(TestDurationHistory.class);
+
+  public static final Path PATH = BuckConstant.LOG_PATH.resolve("test_durations.json");
+
+  private final ProjectFilesystem filesystem;
+  private final ObjectMapper objectMapper;
+  private final Map<String, Long> durations;
+
+  private TestDurationHistory(
+      ProjectFilesystem filesystem,
+      ObjectMapper objectMapper,
+      Map<String, Long> durations) {
+    this.filesystem = filesystem;
+    this.objectMapper = objectMapper;
+    this.durations = new ConcurrentHashMap<>(durations);
+  }
+
+  /**
+   * Reads the history written by a previous run.  A missing or unreadable history is treated as
+   * empty.
+   */
+  public static TestDurationHistory load(ProjectFilesystem filesystem, ObjectMapper objectMapper) {
+    Map<String, Long> durations = Collections.emptyMap();
+    Optional<String> contents = filesystem.readFileIfItExists(PATH);
+    if (contents.isPresent()) {
+      try {
+        durations = objectMapper.readValue(
+            contents.get(),
+            new TypeReference<Map<String, Long>>() {});
+      } catch (IOException e) {
+        LOG.warn(e, "Ignoring unreadable test duration history %s.", PATH);
+      }
+    }
+    return new TestDurationHistory(filesystem, objectMapper, durations);
+  }
+
+  public Optional<Long> getDuration(BuildTarget target) {
+    return Optional.fromNullable(durations.get(target.getFullyQualifiedName()));
+  }
+
+  public void setDuration(BuildTarget target, long durationMillis) {
+    durations.put(target.getFullyQualifiedName(), durationMillis);
+  }
+
+  public void save() throws IOException {
+    filesystem.createParentDirs(PATH);
+    filesystem.writeContentsToPath(
+        objectMapper.writeValueAsString(ImmutableSortedMap.copyOf(durations)),
+        PATH);
+  }
+
+  /**
+   * @return {@code items} ordered by how long their tests took last time, longest first.  Items
+   *     without a history are assumed to take the average of those with one.  Otherwise equal
+   *     items keep their relative order.
+   */
+  public <T> ImmutableList<T> sortLongestFirst(
+      Iterable<T> items,
+      Function<? super T, BuildTarget> toTarget) {
+    final Map<T, Long> expected = new IdentityHashMap<>();
+    long total = 0;
+    int known = 0;
+    for (T item : items) {
+      Optional<Long> duration = getDuration(toTarget.apply(item));
+      if (duration.isPresent()) {
+        total += duration.get();
+        known++;
+      }
+    }
+    long average = known == 0 ? 0 : total / known;
+    for (T item : items) {
+      expected.put(item, getDuration(toTarget.apply(item)).or(average));
+    }
+
+    List<T> sorted = Lists.newArrayList(items);
+    Collections.sort(
+        sorted,
+        new Comparator<T>() {
+          @Override
+          public int compare(T a, T b) {
+            return Long.compare(expected.get(b), expected.get(a));
+          }
+        });
+    return ImmutableList.copyOf(sorted);
+  }
+}
@@ -56,10 +56,12 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Function;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
@@ -70,6 +72,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -93,7 +96,9 @@ import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -115,6 +120,14 @@ public class TestRunning {
 
   private static final Logger LOG = Logger.get(TestRunning.class);
 
+  private static final Function<TestRun, BuildTarget> TEST_RUN_TO_TARGET =
+      new Function<TestRun, BuildTarget>() {
+        @Override
+        public BuildTarget apply(TestRun testRun) {
+          return testRun.getTest().getBuildTarget();
+        }
+      };
+
   // Utility class; do not instantiate.
   private TestRunning() { }
 
@@ -195,6 +208,14 @@ public class TestRunning {
     final AtomicInteger lastReportedTestSequenceNumber = new AtomicInteger();
     final List<TestRun> separateTestRuns = Lists.newArrayList();
     List<TestRun> parallelTestRuns = Lists.newArrayList();
+
+    // Only complete runs of a rule's tests say how long they take.
+    final boolean isRecordingDurations =
+        !options.isDryRun() && options.getTestSelectorList().isEmpty();
+    final TestDurationHistory durationHistory =
+        TestDurationHistory.load(params.getCell().getFilesystem(), params.getObjectMapper());
+    final Set<BuildTarget> targetsBeingRun = Sets.newConcurrentHashSet();
+    final Map<BuildTarget, Long> startTimes = new ConcurrentHashMap<>();
     for (final TestRule test : tests) {
       // Determine whether the test needs to be executed.
       boolean isTestRunRequired;
@@ -261,6 +282,7 @@ public class TestRunning {
 
       List<Step> steps;
       if (isTestRunRequired) {
+        targetsBeingRun.add(test.getBuildTarget());
         params.getBuckEventBus().post(IndividualTestEvent.started(testTargets));
         ImmutableList.Builder<Step> stepsBuilder = ImmutableList.builder();
         Preconditions.checkState(buildEngine.isRuleBuilt(test.getBuildTarget()));
@@ -306,6 +328,7 @@ public class TestRunning {
           public void stepsWillRun(Optional<BuildTarget> buildTarget) {
             Preconditions.checkState(buildTarget.isPresent());
             LOG.debug("Test steps will run for %s", buildTarget);
+            startTimes.put(buildTarget.get(), System.currentTimeMillis());
             params.getBuckEventBus().post(TestRuleEvent.started(buildTarget.get()));
           }
 
@@ -313,62 +336,109 @@ public class TestRunning {
           public void stepsDidRun(Optional<BuildTarget> buildTarget) {
             Preconditions.checkState(buildTarget.isPresent());
             LOG.debug("Test steps did run for %s", buildTarget);
+            Long startTime = startTimes.remove(buildTarget.get());
+            if (isRecordingDurations &&
+                startTime != null &&
+                targetsBeingRun.contains(buildTarget.get())) {
+              durationHistory.setDuration(
+                  buildTarget.get(),
+                  System.currentTimeMillis() - startTime);
+            }
             params.getBuckEventBus().post(TestRuleEvent.finished(buildTarget.get()));
           }
         };
 
-    for (TestRun testRun : parallelTestRuns) {
-      ListenableFuture<TestResults> testResults =
-          stepRunner.runStepsAndYieldResult(
-              testRun.getSteps(),
-              testRun.getTestResultsCallable(),
-              Optional.of(testRun.getTest().getBuildTarget()),
-              service,
-              testStepRunningCallback);
-        results.add(
-            transformTestResults(
-                params,
-                testResults,
-                grouper,
-                testRun.getTest(),
-                testRun.getTestReportingCallback(),
-                testTargets,
-                printTestResults,
-                lastReportedTestSequenceNumber,
-                totalNumberOfTests));
-    }
+    // Start the tests which took longest last time first, so that they don't hold up the end of
+    // the run.  The executor runs tests in the order they're submitted.
+    parallelTestRuns = durationHistory.sortLongestFirst(parallelTestRuns, TEST_RUN_TO_TARGET);
+
+    // With --fail-fast, tests which haven't started by the time a test fails are skipped, and
+    // their futures are cancelled.
+    final AtomicBoolean hasFailed = new AtomicBoolean(false);
+    final ListeningExecutorService directExecutorService = MoreExecutors.newDirectExecutorService();
 
+    for (final TestRun testRun : parallelTestRuns) {
+      ListenableFuture<TestResults> testResults;
+      if (options.isFailFast()) {
+        testResults = Futures.transform(
+            Futures.<Void>immediateFuture(null),
+            new AsyncFunction<Void, TestResults>() {
+              @Override
+              public ListenableFuture<TestResults> apply(Void input) {
+                if (hasFailed.get()) {
+                  return Futures.immediateCancelledFuture();
+                }
+                return stepRunner.runStepsAndYieldResult(
+                    testRun.getSteps(),
+                    testRun.getTestResultsCallable(),
+                    Optional.of(testRun.getTest().getBuildTarget()),
+                    directExecutorService,
+                    testStepRunningCallback);
+              }
+            },
+            service);
+      } else {
+        testResults =
+            stepRunner.runStepsAndYieldResult(
+                testRun.getSteps(),
+                testRun.getTestResultsCallable(),
+                Optional.of(testRun.getTest().getBuildTarget()),
+                service,
+                testStepRunningCallback);
+      }
+      results.add(
+          recordFailure(
+              transformTestResults(
+                  params,
+                  testResults,
+                  grouper,
+                  testRun.getTest(),
+                  testRun.getTestReportingCallback(),
+                  testTargets,
+                  printTestResults,
+                  lastReportedTestSequenceNumber,
+                  totalNumberOfTests),
+              hasFailed));
+    }
 
-    ListenableFuture<List<TestResults>> parallelTestStepsFuture = Futures.allAsList(results);
+    // Skipped tests have cancelled futures, which successfulAsList() reports as null results.
+    ListenableFuture<List<TestResults>> parallelTestStepsFuture =
+        options.isFailFast() ? Futures.successfulAsList(results) : Futures.allAsList(results);
 
     final List<TestResults> completedResults = Lists.newArrayList();
 
-    final ListeningExecutorService directExecutorService = MoreExecutors.newDirectExecutorService();
     ListenableFuture<Void> uberFuture = stepRunner.addCallback(
         parallelTestStepsFuture,
         new FutureCallback<List<TestResults>>() {
           @Override
           public void onSuccess(List<TestResults> parallelTestResults) {
             LOG.debug("Parallel tests completed, running separate tests...");
-            completedResults.addAll(parallelTestResults);
+            Iterables.addAll(
+                completedResults,
+                Iterables.filter(parallelTestResults, Predicates.notNull()));
             List<ListenableFuture<TestResults>> separateResultsList = Lists.newArrayList();
             for (TestRun testRun : separateTestRuns) {
+              if (options.isFailFast() && hasFailed.get()) {
+                break;
+              }
               separateResultsList.add(
-                  transformTestResults(
-                      params,
-                      stepRunner.runStepsAndYieldResult(
-                          testRun.getSteps(),
-                          testRun.getTestResultsCallable(),
-                          Optional.of(testRun.getTest().getBuildTarget()),
-                          directExecutorService,
-                          testStepRunningCallback),
-                      grouper,
-                      testRun.getTest(),
-                      testRun.getTestReportingCallback(),
-                      testTargets,
-                      printTestResults,
-                      lastReportedTestSequenceNumber,
-                      totalNumberOfTests));
+                  recordFailure(
+                      transformTestResults(
+                          params,
+                          stepRunner.runStepsAndYieldResult(
+                              testRun.getSteps(),
+                              testRun.getTestResultsCallable(),
+                              Optional.of(testRun.getTest().getBuildTarget()),
+                              directExecutorService,
+                              testStepRunningCallback),
+                          grouper,
+                          testRun.getTest(),
+                          testRun.getTestReportingCallback(),
+                          testTargets,
+                          printTestResults,
+                          lastReportedTestSequenceNumber,
+                          totalNumberOfTests),
+                      hasFailed));
             }
             ListenableFuture<List<TestResults>> serialResults = Futures.allAsList(
                 separateResultsList);
@@ -413,6 +483,21 @@ public class TestRunning {
       throw e;
     }
 
+    if (isRecordingDurations) {
+      try {
+        durationHistory.save();
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to save the test duration history.");
+      }
+    }
+
+    if (options.isFailFast() && completedResults.size() < totalNumberOfTests) {
+      params.getBuckEventBus().post(
+          ConsoleEvent.warning(
+              "Skipped %d test rules after a test failed.",
+              totalNumberOfTests - completedResults.size()));
+    }
+
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
 
     // Write out the results as XML, if requested.
@@ -457,6 +542,30 @@ public class TestRunning {
     return failures ? TEST_FAILURES_EXIT_CODE : 0;
   }
 
+  /**
+   * Sets {@code hasFailed} once {@code testResults} turn out to include a failure.
+   */
+  private static ListenableFuture<TestResults> recordFailure(
+      ListenableFuture<TestResults> testResults,
+      final AtomicBoolean hasFailed) {
+    Futures.addCallback(
+        testResults,
+        new FutureCallback<TestResults>() {
+          @Override
+          public void onSuccess(TestResults result) {
+            if (!result.isSuccess()) {
+              hasFailed.set(true);
+            }
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            // Cancelled, because the test was skipped.
+          }
+        });
+    return testResults;
+  }
+
   private static ListenableFuture<TestResults> transformTestResults(
       final CommandRunnerParams params,
       ListenableFuture<TestResults> originalTestResults,
@@ -522,6 +631,11 @@ public class TestRunning {
 
       @Override
       public void onFailure(Throwable throwable) {
+        if (throwable instanceof CancellationException) {
+          LOG.debug("Test run for %s was cancelled", testRule);
+          transformedTestResults.cancel(/* mayInterruptIfRunning */ false);
+          return;
+        }
         LOG.warn(throwable, "Test command step failed, marking %s as failed", testRule);
         // If the test command steps themselves fail, report this as special test result.
         TestResults testResults =
@@ -18,10 +18,16 @@ package com.facebook.buck.cxx;
 
 import com.facebook.buck.android.AndroidPackageable;
 import com.facebook.buck.jvm.java.JavaNativeLinkable;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.python.PythonPackagable;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.NoopBuildRule;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.TargetGraph;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
 
 public abstract class AbstractCxxLibrary
     extends NoopBuildRule
@@ -33,9 +39,37 @@ public abstract class AbstractCxxLibrary
         JavaNativeLinkable,
         AndroidPackageable {
 
+  private final Map<Pair<Flavor, Linker.LinkableDepType>, NativeLinkableInput>
+      nativeLinkableInputCache = Maps.newHashMap();
+
   public AbstractCxxLibrary(
       BuildRuleParams params,
       SourcePathResolver pathResolver) {
     super(params, pathResolver);
   }
+
+  @Override
+  public final NativeLinkableInput getNativeLinkableInput(
+      TargetGraph targetGraph,
+      CxxPlatform cxxPlatform,
+      Linker.LinkableDepType type) {
+    // Every link which transitively depends on this library asks for the same input, so only
+    // compute it once per platform and link style.
+    Pair<Flavor, Linker.LinkableDepType> key = new Pair<>(cxxPlatform.getFlavor(), type);
+    NativeLinkableInput result = nativeLinkableInputCache.get(key);
+    if (result == null) {
+      result = computeNativeLinkableInput(targetGraph, cxxPlatform, type);
+      nativeLinkableInputCache.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the {@link NativeLinkableInput} for linking against this library, which
+   *     {@link #getNativeLinkableInput} memoizes per platform and link style.
+   */
+  protected abstract NativeLinkableInput computeNativeLinkableInput(
+      TargetGraph targetGraph,
+      CxxPlatform cxxPlatform,
+      Linker.LinkableDepType type);
 }
@@ -59,11 +59,25 @@ abstract class AbstractNativeLinkableInput {
    * Combine, in order, several {@link NativeLinkableInput} objects into a single one.
    */
   public static NativeLinkableInput concat(Iterable<NativeLinkableInput> items) {
+    // If at most one item contributes anything, share it rather than copying its contents.
+    ImmutableList<NativeLinkableInput> inputs = ImmutableList.copyOf(items);
+    NativeLinkableInput onlyNonEmpty = EMPTY;
+    int nonEmpty = 0;
+    for (NativeLinkableInput item : inputs) {
+      if (!item.isEmpty()) {
+        onlyNonEmpty = item;
+        nonEmpty++;
+      }
+    }
+    if (nonEmpty <= 1) {
+      return onlyNonEmpty;
+    }
+
     ImmutableList.Builder<Arg> args = ImmutableList.builder();
     ImmutableSet.Builder<FrameworkPath> frameworks = ImmutableSet.builder();
     ImmutableSet.Builder<FrameworkPath> libraries = ImmutableSet.builder();
 
-    for (NativeLinkableInput item : items) {
+    for (NativeLinkableInput item : inputs) {
       args.addAll(item.getArgs());
       frameworks.addAll(item.getFrameworks());
       libraries.addAll(item.getLibraries());
@@ -79,4 +93,8 @@ abstract class AbstractNativeLinkableInput {
     return EMPTY;
   }
 
+  boolean isEmpty() {
+    return getArgs().isEmpty() && getFrameworks().isEmpty() && getLibraries().isEmpty();
+  }
+
 }
@@ -19,15 +19,21 @@ package com.facebook.buck.cxx;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
 import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.HasRuntimeDeps;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.shell.ShellStep;
+import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.FileScrubberStep;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
 
 import java.nio.file.Path;
 
@@ -35,7 +41,7 @@ import java.nio.file.Path;
  * A {@link com.facebook.buck.rules.BuildRule} which builds an "ar" archive from input files
  * represented as {@link com.facebook.buck.rules.SourcePath}.
  */
-public class Archive extends AbstractBuildRule {
+public class Archive extends AbstractBuildRule implements HasRuntimeDeps {
 
   @AddToRuleKey
   private final Archiver archiver;
@@ -64,15 +70,60 @@ public class Archive extends AbstractBuildRule {
     // Cache the archive we built.
     buildableContext.recordArtifact(output);
 
-    return ImmutableList.of(
+    ImmutableList.Builder<Step> steps = ImmutableList.builder();
+    steps.add(
         new MkdirStep(getProjectFilesystem(), output.getParent()),
-        new RmStep(getProjectFilesystem(), output, /* shouldForceDeletion */ true),
-        new ArchiveStep(
-            getProjectFilesystem().getRootPath(),
-            archiver.getCommandPrefix(getResolver()),
-            output,
-            getResolver().deprecatedAllPaths(inputs)),
-        new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+        new RmStep(getProjectFilesystem(), output, /* shouldForceDeletion */ true));
+
+    Optional<ArchiveWriter> writer = archiver.getArchiveWriter();
+    if (writer.isPresent()) {
+      // Write all the inputs in one pass, then let the archiver add the symbol index.
+      final ImmutableList<String> indexCommand = ImmutableList.<String>builder()
+          .addAll(archiver.getCommandPrefix(getResolver()))
+          .add("s")
+          .add(output.toString())
+          .build();
+      steps.add(
+          new WriteArchiveStep(
+              getProjectFilesystem(),
+              writer.get(),
+              output,
+              getResolver().deprecatedAllPaths(inputs)),
+          new ShellStep(getProjectFilesystem().getRootPath()) {
+            @Override
+            public String getShortName() {
+              return "archive-index";
+            }
+
+            @Override
+            protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
+              return indexCommand;
+            }
+          });
+    } else {
+      steps.add(
+          new ArchiveStep(
+              getProjectFilesystem().getRootPath(),
+              archiver.getCommandPrefix(getResolver()),
+              output,
+              getResolver().deprecatedAllPaths(inputs)));
+    }
+
+    steps.add(new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
+    return steps.build();
+  }
+
+  /**
+   * Thin archives only refer to their inputs, so the rules producing them need to be built (or
+   * fetched from cache) whenever the archive is used.
+   */
+  @Override
+  public ImmutableSortedSet<BuildRule> getRuntimeDeps() {
+    Optional<ArchiveWriter> writer = archiver.getArchiveWriter();
+    if (writer.isPresent() && writer.get().isThin()) {
+      return ImmutableSortedSet.copyOf(getResolver().filterBuildRuleInputs(inputs));
+    }
+    return ImmutableSortedSet.of();
   }
 
   @Override
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+/**
+ * How {@link Archive} rules write their archives.
+ */
+public enum ArchiveMode {
+  /**
+   * Run the archiver over the inputs, splitting them across as many invocations as the command
+   * line length requires, then scrub the result.
+   */
+  EXTERNAL,
+
+  /**
+   * Stream the inputs into a deterministic archive with {@link ArchiveWriter}, then run the
+   * archiver once to add the symbol index.
+   */
+  IN_PROCESS,
+
+  /**
+   * Like {@link #IN_PROCESS}, but write a GNU thin archive which refers to the inputs by path
+   * instead of copying them.  Only supported by GNU archivers.
+   */
+  THIN,
+}
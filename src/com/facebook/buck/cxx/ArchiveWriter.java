@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes "ar" archives without invoking an archiver.
+ * <p>
+ * Every member is written with a zero timestamp, UID and GID and a 0644 mode, so the archive only
+ * depends on the contents and order of its inputs.  Inputs are streamed into the archive in a
+ * single pass.  No symbol index is written; the archiver's "s" operation adds one afterwards.
+ */
+public class ArchiveWriter {
+
+  public enum Format {
+    /**
+     * The System V/GNU variant, which keeps long member names in a "//" member.
+     */
+    GNU,
+
+    /**
+     * The 4.4BSD variant, which stores long member names right before the member data.
+     */
+    BSD,
+  }
+
+  public static final byte[] GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
+  public static final byte[] THIN_GLOBAL_HEADER = "!<thin>\n".getBytes(Charsets.US_ASCII);
+
+  private static final int MEMBER_HEADER_SIZE = 60;
+  private static final int MAX_GNU_SHORT_NAME_LENGTH = 15;
+  private static final String BSD_LONG_NAME_PREFIX = "#1/";
+  private static final String GNU_NAME_TABLE_NAME = "//";
+  private static final String MEMBER_MODE = "100644";
+
+  private final Format format;
+  private final boolean thin;
+
+  public ArchiveWriter(Format format, boolean thin) {
+    Preconditions.checkArgument(
+        !thin || format == Format.GNU,
+        "thin archives are only supported in the GNU format");
+    this.format = format;
+    this.thin = thin;
+  }
+
+  public Format getFormat() {
+    return format;
+  }
+
+  public boolean isThin() {
+    return thin;
+  }
+
+  /**
+   * Write an archive to {@code output} containing {@code inputs}, in order.
+   *
+   * @param output absolute path of the archive to write.
+   * @param inputs absolute paths of the members.  Thin archives refer to them by their path
+   *     relative to the directory containing {@code output}.
+   */
+  public void write(Path output, List<Path> inputs) throws IOException {
+    try (FileChannel out = FileChannel.open(
+             output,
+             StandardOpenOption.CREATE,
+             StandardOpenOption.TRUNCATE_EXISTING,
+             StandardOpenOption.WRITE)) {
+      writeFully(out, ByteBuffer.wrap(thin ? THIN_GLOBAL_HEADER : GLOBAL_HEADER));
+      switch (format) {
+        case GNU:
+          writeGnuMembers(out, output, inputs);
+          break;
+        case BSD:
+          writeBsdMembers(out, inputs);
+          break;
+      }
+    }
+  }
+
+  private void writeGnuMembers(FileChannel out, Path output, List<Path> inputs)
+      throws IOException {
+    // Collect the names which don't fit in a member header into the name table, which has to be
+    // the first member.  Thin archives always refer to their members through the name table.
+    ImmutableList.Builder<String> headerNames = ImmutableList.builder();
+    ByteArrayOutputStream nameTable = new ByteArrayOutputStream();
+    for (Path input : inputs) {
+      String name = thin
+          ? output.getParent().relativize(input).toString()
+          : input.getFileName().toString();
+      if (!thin && name.getBytes(Charsets.UTF_8).length <= MAX_GNU_SHORT_NAME_LENGTH) {
+        headerNames.add(name + "/");
+      } else {
+        headerNames.add("/" + nameTable.size());
+        byte[] entry = (name + "/\n").getBytes(Charsets.UTF_8);
+        nameTable.write(entry, 0, entry.length);
+      }
+    }
+
+    if (nameTable.size() > 0) {
+      writeFully(out, memberHeader(GNU_NAME_TABLE_NAME, nameTable.size(), /* metadata */ false));
+      writeFully(out, ByteBuffer.wrap(nameTable.toByteArray()));
+      writePadding(out, nameTable.size());
+    }
+
+    ImmutableList<String> names = headerNames.build();
+    for (int i = 0; i < inputs.size(); i++) {
+      try (FileChannel in = FileChannel.open(inputs.get(i), StandardOpenOption.READ)) {
+        long size = in.size();
+        writeFully(out, memberHeader(names.get(i), size, /* metadata */ true));
+        if (!thin) {
+          transferFully(in, out);
+          writePadding(out, size);
+        }
+      }
+    }
+  }
+
+  private void writeBsdMembers(FileChannel out, List<Path> inputs) throws IOException {
+    for (Path input : inputs) {
+      // Always use the long name form.  This handles names with spaces, and lets us pad the name
+      // with NULs so that the member data is 8-byte aligned.
+      byte[] name = input.getFileName().toString().getBytes(Charsets.UTF_8);
+      int paddedNameLength = name.length + 1;
+      paddedNameLength += (8 - (MEMBER_HEADER_SIZE + paddedNameLength) % 8) % 8;
+      try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+        long size = in.size();
+        writeFully(
+            out,
+            memberHeader(
+                BSD_LONG_NAME_PREFIX + paddedNameLength,
+                paddedNameLength + size,
+                /* metadata */ true));
+        ByteBuffer paddedName = ByteBuffer.allocate(paddedNameLength);
+        paddedName.put(name);
+        paddedName.rewind();
+        writeFully(out, paddedName);
+        transferFully(in, out);
+        writePadding(out, paddedNameLength + size);
+      }
+    }
+  }
+
+  private static ByteBuffer memberHeader(String name, long size, boolean metadata) {
+    StringBuilder header = new StringBuilder(MEMBER_HEADER_SIZE);
+    header.append(Strings.padEnd(name, 16, ' '));
+    header.append(Strings.padEnd(metadata ? "0" : "", 12, ' '));
+    header.append(Strings.padEnd(metadata ? "0" : "", 6, ' '));
+    header.append(Strings.padEnd(metadata ? "0" : "", 6, ' '));
+    header.append(Strings.padEnd(metadata ? MEMBER_MODE : "", 8, ' '));
+    header.append(Strings.padEnd(String.valueOf(size), 10, ' '));
+    header.append("`\n");
+    byte[] bytes = header.toString().getBytes(Charsets.UTF_8);
+    Preconditions.checkState(
+        bytes.length == MEMBER_HEADER_SIZE,
+        "member name %s does not fit in an archive header",
+        name);
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static void writePadding(FileChannel out, long size) throws IOException {
+    if (size % 2 != 0) {
+      writeFully(out, ByteBuffer.wrap(new byte[] {'\n'}));
+    }
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  private static void transferFully(FileChannel in, FileChannel out) throws IOException {
+    long size = in.size();
+    long position = 0;
+    while (position < size) {
+      position += in.transferTo(position, size - position, out);
+    }
+  }
+
+}
@@ -16,13 +16,24 @@
 
 package com.facebook.buck.cxx;
 
-
 import com.facebook.buck.io.FileScrubber;
 import com.facebook.buck.rules.Tool;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 
 public interface Archiver extends Tool {
 
   ImmutableList<FileScrubber> getScrubbers();
 
+  /**
+   * @return the writer {@link Archive} rules should use to write archives in-process, or absent if
+   *     they should run this archiver over their inputs instead.
+   */
+  Optional<ArchiveWriter> getArchiveWriter();
+
+  /**
+   * @return an equivalent archiver which writes archives in the given {@link ArchiveMode}.
+   */
+  Archiver withArchiveMode(ArchiveMode mode);
+
 }
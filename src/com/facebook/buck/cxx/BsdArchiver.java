@@ -22,7 +22,9 @@ import com.facebook.buck.rules.RuleKeyBuilder;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 
@@ -33,7 +35,7 @@ import java.util.Arrays;
 
 public class BsdArchiver implements Archiver {
 
-  private static final byte[] EXPECTED_GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
+  private static final byte[] EXPECTED_GLOBAL_HEADER = ArchiveWriter.GLOBAL_HEADER;
   private static final byte[] LONG_NAME_MARKER = "#1/".getBytes(Charsets.US_ASCII);
 
   private static final FileScrubber SYMBOL_NAME_TABLE_PADDING_SCRUBBER = new FileScrubber() {
@@ -116,9 +118,18 @@ public class BsdArchiver implements Archiver {
   };
 
   private final Tool tool;
+  private final ArchiveMode mode;
 
   public BsdArchiver(Tool tool) {
+    this(tool, ArchiveMode.EXTERNAL);
+  }
+
+  public BsdArchiver(Tool tool, ArchiveMode mode) {
+    if (mode == ArchiveMode.THIN) {
+      throw new HumanReadableException("BSD archivers do not support thin archives.");
+    }
     this.tool = tool;
+    this.mode = mode;
   }
 
   @Override
@@ -128,6 +139,18 @@ public class BsdArchiver implements Archiver {
         SYMBOL_NAME_TABLE_PADDING_SCRUBBER);
   }
 
+  @Override
+  public Optional<ArchiveWriter> getArchiveWriter() {
+    return mode == ArchiveMode.IN_PROCESS
+        ? Optional.of(new ArchiveWriter(ArchiveWriter.Format.BSD, /* thin */ false))
+        : Optional.<ArchiveWriter>absent();
+  }
+
+  @Override
+  public Archiver withArchiveMode(ArchiveMode mode) {
+    return new BsdArchiver(tool, mode);
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -147,7 +170,8 @@ public class BsdArchiver implements Archiver {
   public RuleKeyBuilder appendToRuleKey(RuleKeyBuilder builder) {
     return builder
         .setReflectively("tool", tool)
-        .setReflectively("type", getClass().getSimpleName());
+        .setReflectively("type", getClass().getSimpleName())
+        .setReflectively("mode", mode);
   }
 
 }
@@ -18,29 +18,113 @@ package com.facebook.buck.cxx;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * Performs an in-place find-and-replace on {@link ByteBuffer} objects, where the replacements are
  * of equal length to what they're replacing.
+ * <p>
+ * All the strings to find are compiled into a single Aho-Corasick automaton up front, so a
+ * replacement pass reads every byte of the buffer exactly once, however many strings there are.
+ * When matches overlap, the one that ends first is replaced, and matching restarts right after it.
  */
 public class ByteBufferReplacer {
 
-  private final ImmutableMap<byte[], byte[]> replacements;
+  private static final int ALPHABET_SIZE = 256;
+  private static final int NO_MATCH = -1;
+
+  private final ImmutableList<byte[]> values;
+
+  /**
+   * The automaton's transition table: the state after reading byte {@code b} in state {@code s} is
+   * {@code transitions[s * ALPHABET_SIZE + (b & 0xFF)]}.  State 0 is the start state.
+   */
+  private final int[] transitions;
+
+  /**
+   * For each state, the index of the longest string that ends there, or {@link #NO_MATCH}.
+   */
+  private final int[] matches;
 
   public ByteBufferReplacer(ImmutableMap<byte[], byte[]> replacements) {
+    ImmutableList.Builder<byte[]> keys = ImmutableList.builder();
+    ImmutableList.Builder<byte[]> values = ImmutableList.builder();
     for (Map.Entry<byte[], byte[]> entry : replacements.entrySet()) {
       Preconditions.checkArgument(entry.getKey().length == entry.getValue().length);
+      Preconditions.checkArgument(entry.getKey().length > 0);
+      keys.add(entry.getKey());
+      values.add(entry.getValue());
     }
-    this.replacements = replacements;
+    this.values = values.build();
+
+    ImmutableList<byte[]> allKeys = keys.build();
+    int maxStates = 1;
+    for (byte[] key : allKeys) {
+      maxStates += key.length;
+    }
+    int[] transitions = new int[maxStates * ALPHABET_SIZE];
+    int[] matches = new int[maxStates];
+    Arrays.fill(transitions, -1);
+    Arrays.fill(matches, NO_MATCH);
+
+    // Build a trie of the strings to find.
+    int numStates = 1;
+    for (int i = 0; i < allKeys.size(); i++) {
+      int state = 0;
+      for (byte b : allKeys.get(i)) {
+        int index = state * ALPHABET_SIZE + (b & 0xFF);
+        if (transitions[index] == -1) {
+          transitions[index] = numStates++;
+        }
+        state = transitions[index];
+      }
+      if (matches[state] == NO_MATCH) {
+        matches[state] = i;
+      }
+    }
+
+    // Walk the trie breadth first, filling in the missing transitions from each state's failure
+    // state (the state for the longest proper suffix of its string that is also in the trie), so
+    // that the scan never has to backtrack.
+    int[] failures = new int[numStates];
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int b = 0; b < ALPHABET_SIZE; b++) {
+      if (transitions[b] == -1) {
+        transitions[b] = 0;
+      } else {
+        failures[transitions[b]] = 0;
+        queue.add(transitions[b]);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.remove();
+      if (matches[state] == NO_MATCH) {
+        // A string ending in the failure state also ends here, and is the longest that does.
+        matches[state] = matches[failures[state]];
+      }
+      for (int b = 0; b < ALPHABET_SIZE; b++) {
+        int index = state * ALPHABET_SIZE + b;
+        int failureNext = transitions[failures[state] * ALPHABET_SIZE + b];
+        if (transitions[index] == -1) {
+          transitions[index] = failureNext;
+        } else {
+          failures[transitions[index]] = failureNext;
+          queue.add(transitions[index]);
+        }
+      }
+    }
+
+    this.transitions = Arrays.copyOf(transitions, numStates * ALPHABET_SIZE);
+    this.matches = Arrays.copyOf(matches, numStates);
   }
 
   private static byte[] getBytes(String str, Charset charset) {
@@ -96,25 +180,23 @@ public class ByteBufferReplacer {
    * @return the number of replacements that happened.
    */
   public int replace(ByteBuffer buffer, int maxReplacements) {
-    CharSequence charSequence = new ByteBufferCharSequence(buffer);
-    int position = buffer.position();
     int numReplacements = 0;
-
-    for (Map.Entry<byte[], byte[]> entry : replacements.entrySet()) {
-      byte[] value = entry.getValue();
-
-      // Since we can't use Pattern on a byte[], we need to convert our search byte array
-      // to a string.  To do this we use ISO-8859-1 since it maps 1-to-1 in 0-0xFF range.
-      Pattern pattern = Pattern.compile(
-          new String(entry.getKey(), Charsets.ISO_8859_1),
-          Pattern.LITERAL);
-      Matcher matcher = pattern.matcher(charSequence);
-
-      while (matcher.find() && (numReplacements < maxReplacements || maxReplacements == -1)) {
-        for (int i = 0; i < value.length; i++) {
-          buffer.put(position + matcher.start() + i, value[i]);
+    int state = 0;
+    int limit = buffer.limit();
+
+    for (int i = buffer.position();
+         i < limit && (numReplacements < maxReplacements || maxReplacements == -1);
+         i++) {
+      state = transitions[state * ALPHABET_SIZE + (buffer.get(i) & 0xFF)];
+      int match = matches[state];
+      if (match != NO_MATCH) {
+        byte[] value = values.get(match);
+        int start = i - value.length + 1;
+        for (int j = 0; j < value.length; j++) {
+          buffer.put(start + j, value[j]);
         }
         numReplacements += 1;
+        state = 0;
       }
     }
 
@@ -125,38 +207,4 @@ public class ByteBufferReplacer {
     return replace(buffer, -1);
   }
 
-  /**
-   * Provides a {@link CharSequence} view of an underlying {@link ByteBuffer} using the ISO-8859-1
-   * character encoding.
-   */
-  private class ByteBufferCharSequence implements CharSequence {
-
-    private final ByteBuffer buffer;
-
-    public ByteBufferCharSequence(ByteBuffer buffer) {
-      this.buffer = buffer;
-    }
-
-    @Override
-    public int length() {
-      return buffer.remaining();
-    }
-
-    @Override
-    public char charAt(int index) {
-      // We convert from a byte to a char here just by casting.  This should be fine, since we're
-      // performing the search via the ISO-8859-1 charset above.
-      return (char) (0xFF & buffer.get(buffer.position() + index));
-    }
-
-    @Override
-    public CharSequence subSequence(int start, int end) {
-      ByteBuffer slice = buffer.duplicate();
-      slice.position(buffer.position() + start);
-      slice.limit(buffer.position() + end);
-      return new ByteBufferCharSequence(slice);
-    }
-
-  }
-
 }
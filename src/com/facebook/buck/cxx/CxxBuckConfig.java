@@ -213,6 +213,13 @@ public class CxxBuckConfig {
     return Optional.of(result);
   }
 
+  /**
+   * @return how archives should be written, if configured.
+   */
+  public Optional<ArchiveMode> getArchiveMode() {
+    return delegate.getEnum(cxxSection, "archive_mode", ArchiveMode.class);
+  }
+
   /**
    * @return the maximum size in bytes of test output to report in test results.
    */
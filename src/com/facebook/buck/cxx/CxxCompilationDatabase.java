@@ -35,24 +35,45 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class CxxCompilationDatabase extends AbstractBuildRule implements HasPostBuildSteps {
   public static final Flavor COMPILATION_DATABASE = ImmutableFlavor.of("compilation-database");
 
+  /**
+   * The number of entries each task computes when the entries are computed in parallel.  Databases
+   * with fewer compile rules than this are generated on the calling thread.
+   */
+  private static final int ENTRIES_PER_BATCH = 256;
+
   @AddToRuleKey
   private final CxxPreprocessMode preprocessMode;
   @AddToRuleKey
@@ -143,29 +164,53 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasPost
 
     @Override
     public int execute(ExecutionContext context) {
-      Iterable<CxxCompilationDatabaseEntry> entries = createEntries();
-      return writeOutput(entries, context);
+      // The entries are written out as they're computed, so we never hold the whole database in
+      // memory.
+      List<List<CxxPreprocessAndCompile>> batches =
+          Lists.partition(compileRules.asList(), ENTRIES_PER_BATCH);
+      int threads = Math.min(context.getConcurrencyLimit().threadLimit, batches.size());
+      if (threads <= 1) {
+        return writeOutput(createEntries().iterator(), context);
+      }
+
+      ExecutorService executor =
+          MoreExecutors.newMultiThreadExecutor("compilation-database", threads);
+      try {
+        return writeOutput(new ParallelEntryIterator(executor, threads, batches), context);
+      } catch (UncheckedExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause());
+        throw e;
+      } finally {
+        executor.shutdownNow();
+      }
     }
 
     @VisibleForTesting
     Iterable<CxxCompilationDatabaseEntry> createEntries() {
-      List<CxxCompilationDatabaseEntry> entries = Lists.newArrayList();
-      for (CxxPreprocessAndCompile compileRule : compileRules) {
-        Optional<CxxPreprocessAndCompile> preprocessRule = Optional.absent();
-        if (preprocessMode == CxxPreprocessMode.SEPARATE) {
-          for (BuildRule buildRule : compileRule.getDeclaredDeps()) {
-            if (CxxSourceRuleFactory.isPreprocessFlavoredBuildTarget(buildRule.getBuildTarget())) {
-              preprocessRule = Optional.of((CxxPreprocessAndCompile) buildRule);
-              break;
-            }
-          }
-          if (!preprocessRule.isPresent()) {
-            throw new HumanReadableException("Can't find preprocess rule for " + compileRule);
+      return FluentIterable.from(compileRules)
+          .transform(
+              new Function<CxxPreprocessAndCompile, CxxCompilationDatabaseEntry>() {
+                @Override
+                public CxxCompilationDatabaseEntry apply(CxxPreprocessAndCompile compileRule) {
+                  return createEntry(compileRule);
+                }
+              });
+    }
+
+    private CxxCompilationDatabaseEntry createEntry(CxxPreprocessAndCompile compileRule) {
+      Optional<CxxPreprocessAndCompile> preprocessRule = Optional.absent();
+      if (preprocessMode == CxxPreprocessMode.SEPARATE) {
+        for (BuildRule buildRule : compileRule.getDeclaredDeps()) {
+          if (CxxSourceRuleFactory.isPreprocessFlavoredBuildTarget(buildRule.getBuildTarget())) {
+            preprocessRule = Optional.of((CxxPreprocessAndCompile) buildRule);
+            break;
           }
         }
-        entries.add(createEntry(preprocessRule, compileRule));
+        if (!preprocessRule.isPresent()) {
+          throw new HumanReadableException("Can't find preprocess rule for " + compileRule);
+        }
       }
-      return entries;
+      return createEntry(preprocessRule, compileRule);
     }
 
     private CxxCompilationDatabaseEntry createEntry(
@@ -188,13 +233,17 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasPost
     }
 
     private int writeOutput(
-        Iterable<CxxCompilationDatabaseEntry> entries,
+        Iterator<CxxCompilationDatabaseEntry> entries,
         ExecutionContext context) {
-      try {
-        OutputStream outputStream = getProjectFilesystem().newFileOutputStream(
-            getPathToOutput());
-        outputStream.write(context.getObjectMapper().writeValueAsBytes(entries));
-        outputStream.close();
+      try (OutputStream outputStream =
+               getProjectFilesystem().newFileOutputStream(getPathToOutput());
+           JsonGenerator generator =
+               context.getObjectMapper().getJsonFactory().createJsonGenerator(outputStream)) {
+        generator.writeStartArray();
+        while (entries.hasNext()) {
+          generator.writeObject(entries.next());
+        }
+        generator.writeEndArray();
       } catch (IOException e) {
         logError(e, context);
         return 1;
@@ -210,5 +259,55 @@ public class CxxCompilationDatabase extends AbstractBuildRule implements HasPost
           getPathToOutput(),
           getBuildTarget());
     }
+
+    /**
+     * Computes batches of entries on an executor, in order, keeping a bounded number of batches in
+     * flight so that computing entries doesn't run too far ahead of writing them out.
+     */
+    private class ParallelEntryIterator extends AbstractIterator<CxxCompilationDatabaseEntry> {
+
+      private final ExecutorService executor;
+      private final int maxBatchesInFlight;
+      private final Iterator<List<CxxPreprocessAndCompile>> pending;
+      private final Deque<Future<List<CxxCompilationDatabaseEntry>>> inFlight =
+          new ArrayDeque<>();
+      private Iterator<CxxCompilationDatabaseEntry> current =
+          Collections.<CxxCompilationDatabaseEntry>emptyIterator();
+
+      public ParallelEntryIterator(
+          ExecutorService executor,
+          int threads,
+          List<List<CxxPreprocessAndCompile>> batches) {
+        this.executor = executor;
+        this.maxBatchesInFlight = 2 * threads;
+        this.pending = batches.iterator();
+      }
+
+      @Override
+      protected CxxCompilationDatabaseEntry computeNext() {
+        while (!current.hasNext()) {
+          while (inFlight.size() < maxBatchesInFlight && pending.hasNext()) {
+            final List<CxxPreprocessAndCompile> batch = pending.next();
+            inFlight.add(
+                executor.submit(
+                    new Callable<List<CxxCompilationDatabaseEntry>>() {
+                      @Override
+                      public List<CxxCompilationDatabaseEntry> call() {
+                        List<CxxCompilationDatabaseEntry> entries = Lists.newArrayList();
+                        for (CxxPreprocessAndCompile compileRule : batch) {
+                          entries.add(createEntry(compileRule));
+                        }
+                        return entries;
+                      }
+                    }));
+          }
+          if (inFlight.isEmpty()) {
+            return endOfData();
+          }
+          current = Futures.getUnchecked(inFlight.remove()).iterator();
+        }
+        return current.next();
+      }
+    }
   }
 }
@@ -175,7 +175,7 @@ public class CxxLibrary extends AbstractCxxLibrary implements HasRuntimeDeps {
   }
 
   @Override
-  public NativeLinkableInput getNativeLinkableInput(
+  protected NativeLinkableInput computeNativeLinkableInput(
       TargetGraph targetGraph,
       CxxPlatform cxxPlatform,
       Linker.LinkableDepType type) {
@@ -99,7 +99,7 @@ public class CxxPlatforms {
             getTool(flavor, "cxxpp", config).transform(getPreprocessor(cxxpp.getClass())).or(cxxpp))
         .setLd(getTool(flavor, "ld", config).transform(getLinker(ld.getClass(), config)).or(ld))
         .addAllLdflags(ldFlags)
-        .setAr(getTool(flavor, "ar", config).transform(getArchiver(ar.getClass(), config)).or(ar))
+        .setAr(getArchiver(flavor, ar, config))
         .setStrip(getTool(flavor, "strip", config).or(strip))
         .setLex(getTool(flavor, "lex", config).or(lex))
         .setYacc(getTool(flavor, "yacc", config).or(yacc))
@@ -153,9 +153,7 @@ public class CxxPlatforms {
             getTool(flavor, "ld", config)
                 .transform(getLinker(defaultPlatform.getLd().getClass(), config))
                 .or(defaultPlatform.getLd()))
-        .setAr(getTool(flavor, "ar", config)
-                .transform(getArchiver(defaultPlatform.getAr().getClass(), config))
-                .or(defaultPlatform.getAr()))
+        .setAr(getArchiver(flavor, defaultPlatform.getAr(), config))
         .setStrip(getTool(flavor, "strip", config).or(defaultPlatform.getStrip()))
         .setLex(getTool(flavor, "lex", config).or(defaultPlatform.getLex()))
         .setYacc(getTool(flavor, "yacc", config).or(defaultPlatform.getYacc()))
@@ -197,6 +195,14 @@ public class CxxPlatforms {
     };
   }
 
+  private static Archiver getArchiver(Flavor flavor, Archiver defaultAr, CxxBuckConfig config) {
+    Archiver ar = getTool(flavor, "ar", config)
+        .transform(getArchiver(defaultAr.getClass(), config))
+        .or(defaultAr);
+    Optional<ArchiveMode> mode = config.getArchiveMode();
+    return mode.isPresent() ? ar.withArchiveMode(mode.get()) : ar;
+  }
+
   private static Function<Tool, Archiver> getArchiver(final Class<? extends Archiver> arClass,
       final CxxBuckConfig config) {
     return new Function<Tool, Archiver>() {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.AddToRuleKey;
@@ -82,6 +83,7 @@ public class CxxPreprocessAndCompile
   @AddToRuleKey
   private final ImmutableList<CxxHeaders> includes;
   private final DebugPathSanitizer sanitizer;
+  private final boolean cachePreprocessedOutput;
 
   @VisibleForTesting
   CxxPreprocessAndCompile(
@@ -104,7 +106,54 @@ public class CxxPreprocessAndCompile
       Optional<SourcePath> prefixHeader,
       ImmutableList<CxxHeaders> includes,
       DebugPathSanitizer sanitizer) {
+    this(
+        params,
+        resolver,
+        operation,
+        preprocessor,
+        platformPreprocessorFlags,
+        rulePreprocessorFlags,
+        compiler,
+        platformCompilerFlags,
+        ruleCompilerFlags,
+        output,
+        input,
+        inputType,
+        includeRoots,
+        systemIncludeRoots,
+        headerMaps,
+        frameworkRoots,
+        prefixHeader,
+        includes,
+        sanitizer,
+        /* cachePreprocessedOutput */ false);
+  }
+
+  private CxxPreprocessAndCompile(
+      BuildRuleParams params,
+      SourcePathResolver resolver,
+      CxxPreprocessAndCompileStep.Operation operation,
+      Optional<Preprocessor> preprocessor,
+      Optional<ImmutableList<String>> platformPreprocessorFlags,
+      Optional<ImmutableList<String>> rulePreprocessorFlags,
+      Optional<Compiler> compiler,
+      Optional<ImmutableList<String>> platformCompilerFlags,
+      Optional<ImmutableList<String>> ruleCompilerFlags,
+      Path output,
+      SourcePath input,
+      CxxSource.Type inputType,
+      ImmutableSet<Path> includeRoots,
+      ImmutableSet<Path> systemIncludeRoots,
+      ImmutableSet<Path> headerMaps,
+      ImmutableSet<Path> frameworkRoots,
+      Optional<SourcePath> prefixHeader,
+      ImmutableList<CxxHeaders> includes,
+      DebugPathSanitizer sanitizer,
+      boolean cachePreprocessedOutput) {
     super(params, resolver);
+    Preconditions.checkState(
+        !cachePreprocessedOutput ||
+            operation == CxxPreprocessAndCompileStep.Operation.PIPED_PREPROCESS_AND_COMPILE);
     Preconditions.checkState(operation.isPreprocess() == preprocessor.isPresent());
     Preconditions.checkState(operation.isPreprocess() == platformPreprocessorFlags.isPresent());
     Preconditions.checkState(operation.isPreprocess() == rulePreprocessorFlags.isPresent());
@@ -128,6 +177,7 @@ public class CxxPreprocessAndCompile
     this.prefixHeader = prefixHeader;
     this.includes = includes;
     this.sanitizer = sanitizer;
+    this.cachePreprocessedOutput = cachePreprocessedOutput;
   }
 
   /**
@@ -232,7 +282,7 @@ public class CxxPreprocessAndCompile
     return new CxxPreprocessAndCompile(
         params,
         resolver,
-        (strategy == CxxPreprocessMode.PIPED
+        (strategy == CxxPreprocessMode.PIPED || strategy == CxxPreprocessMode.PIPED_CACHED
             ? CxxPreprocessAndCompileStep.Operation.PIPED_PREPROCESS_AND_COMPILE
             : CxxPreprocessAndCompileStep.Operation.COMPILE_MUNGE_DEBUGINFO),
         Optional.of(preprocessor),
@@ -250,7 +300,8 @@ public class CxxPreprocessAndCompile
         frameworkRoots,
         prefixHeader,
         includes,
-        sanitizer);
+        sanitizer,
+        strategy == CxxPreprocessMode.PIPED_CACHED);
   }
 
   @Override
@@ -291,6 +342,11 @@ public class CxxPreprocessAndCompile
 
   @VisibleForTesting
   CxxPreprocessAndCompileStep makeMainStep() {
+    return makeMainStep(Optional.<ArtifactCache>absent());
+  }
+
+  private CxxPreprocessAndCompileStep makeMainStep(
+      Optional<ArtifactCache> preprocessedOutputCache) {
 
     // Resolve the map of symlinks to real paths to hand off the preprocess step.  If we're
     // compiling, this will just be empty.
@@ -350,7 +406,8 @@ public class CxxPreprocessAndCompile
               public Optional<Function<String, Iterable<String>>> apply(Preprocessor input) {
                 return input.getExtraLineProcessor();
               }
-            }));
+            }),
+        preprocessedOutputCache);
   }
 
   @Override
@@ -360,7 +417,10 @@ public class CxxPreprocessAndCompile
     buildableContext.recordArtifact(output);
     return ImmutableList.of(
         new MkdirStep(getProjectFilesystem(), output.getParent()),
-        makeMainStep());
+        makeMainStep(
+            cachePreprocessedOutput ?
+                Optional.of(context.getArtifactCache()) :
+                Optional.<ArtifactCache>absent()));
   }
 
   private ImmutableList<String> getPreprocessorPlatformPrefix() {
@@ -522,7 +582,7 @@ public class CxxPreprocessAndCompile
     // Add all dynamically detected header dependencies.
     inputs.addAll(
         Iterables.transform(
-            getProjectFilesystem().readLines(getDepFilePath()),
+            Depfiles.readDependencyList(getProjectFilesystem(), getDepFilePath()),
             MorePaths.TO_PATH));
 
     return inputs.build();
@@ -544,7 +604,8 @@ public class CxxPreprocessAndCompile
     ImmutableMultimap<String, String> fullHeaderMap = fullHeaderMapBuilder.build();
 
     ImmutableMultimap.Builder<String, String> headerMap = ImmutableMultimap.builder();
-    for (String input : getProjectFilesystem().readLines(getDepFilePath())) {
+    for (String input :
+         Depfiles.readDependencyList(getProjectFilesystem(), getDepFilePath())) {
       if (!fullHeaderMap.containsKey(input)) {
         return Optional.absent();
       }
@@ -16,11 +16,16 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.PerfEventId;
 import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.util.Escaper;
@@ -31,22 +36,29 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -60,6 +72,13 @@ public class CxxPreprocessAndCompileStep implements Step {
 
   private static final Logger LOG = Logger.get(CxxPreprocessAndCompileStep.class);
 
+  /** Metadata key under which the compiler's warnings are cached with the object file. */
+  private static final String COMPILER_STDERR_METADATA_KEY = "compiler_stderr";
+
+  /** Hashes of compiler binaries, keyed by their real path, size and modification time. */
+  private static final Cache<String, HashCode> COMPILER_HASHES =
+      CacheBuilder.newBuilder().maximumSize(64).build();
+
   private final ProjectFilesystem filesystem;
   private final Operation operation;
   private final Path output;
@@ -71,6 +90,7 @@ public class CxxPreprocessAndCompileStep implements Step {
   private final ImmutableMap<Path, Path> replacementPaths;
   private final DebugPathSanitizer sanitizer;
   private final Optional<Function<String, Iterable<String>>> extraLineProcessor;
+  private final Optional<ArtifactCache> preprocessedOutputCache;
 
   // N.B. These include paths are special to GCC. They aren't real files and there is no remapping
   // needed, so we can just ignore them everywhere.
@@ -91,8 +111,44 @@ public class CxxPreprocessAndCompileStep implements Step {
       ImmutableMap<Path, Path> replacementPaths,
       DebugPathSanitizer sanitizer,
       Optional<Function<String, Iterable<String>>> extraLineProcessor) {
+    this(
+        filesystem,
+        operation,
+        output,
+        depFile,
+        input,
+        inputType,
+        preprocessorCommand,
+        compilerCommand,
+        replacementPaths,
+        sanitizer,
+        extraLineProcessor,
+        Optional.<ArtifactCache>absent());
+  }
+
+  /**
+   * @param preprocessedOutputCache if present, a piped preprocess and compile first looks up the
+   *     object file in this cache, keyed by the hash of the preprocessed source and the compiler
+   *     command, and only runs the compiler on a miss.
+   */
+  public CxxPreprocessAndCompileStep(
+      ProjectFilesystem filesystem,
+      Operation operation,
+      Path output,
+      Path depFile,
+      Path input,
+      CxxSource.Type inputType,
+      Optional<ImmutableList<String>> preprocessorCommand,
+      Optional<ImmutableList<String>> compilerCommand,
+      ImmutableMap<Path, Path> replacementPaths,
+      DebugPathSanitizer sanitizer,
+      Optional<Function<String, Iterable<String>>> extraLineProcessor,
+      Optional<ArtifactCache> preprocessedOutputCache) {
     Preconditions.checkState(operation.isPreprocess() == preprocessorCommand.isPresent());
     Preconditions.checkState(operation.isCompile() == compilerCommand.isPresent());
+    Preconditions.checkState(
+        !preprocessedOutputCache.isPresent() ||
+            operation == Operation.PIPED_PREPROCESS_AND_COMPILE);
 
     this.filesystem = filesystem;
     this.operation = operation;
@@ -105,6 +161,7 @@ public class CxxPreprocessAndCompileStep implements Step {
     this.replacementPaths = replacementPaths;
     this.sanitizer = sanitizer;
     this.extraLineProcessor = extraLineProcessor;
+    this.preprocessedOutputCache = preprocessedOutputCache;
   }
 
   @Override
@@ -228,6 +285,14 @@ public class CxxPreprocessAndCompileStep implements Step {
     return depFile.getFileSystem().getPath(depFile + ".tmp");
   }
 
+  private Path getPreprocessedTemp() {
+    return output.getFileSystem().getPath(output + ".ii.tmp");
+  }
+
+  private Path getCachedOutputTemp() {
+    return output.getFileSystem().getPath(output + ".cached.tmp");
+  }
+
   private ImmutableList<String> getDepFileArgs(Path depFile) {
     return ImmutableList.of("-MD", "-MF", depFile.toString());
   }
@@ -386,18 +451,168 @@ public class CxxPreprocessAndCompileStep implements Step {
   }
 
   private int executeOther(ExecutionContext context) throws Exception {
-    ProcessBuilder builder = makeSubprocessBuilder();
-
     // If we're preprocessing, file output goes through stdout, so we can postprocess it.
     if (operation == Operation.PREPROCESS) {
-      builder.command(makePreprocessCommand());
-      builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
-    } else {
-      builder.command(
+      return executeProcess(
+          context,
+          makePreprocessCommand(),
+          Optional.of(output),
+          Optional.<Path>absent());
+    }
+    return executeProcess(
+        context,
+        makeCompileCommand(
+            input.toString(),
+            inputType.getLanguage(),
+            inputType.isPreprocessable()),
+        Optional.<Path>absent(),
+        Optional.<Path>absent());
+  }
+
+  /**
+   * Preprocess into a temporary file, then look up the object file in the preprocessed output
+   * cache by the hash of the preprocessed source, so that changes which don't affect the
+   * preprocessed source (e.g. editing a comment in a header) don't cause a recompile.  On a miss,
+   * compile the temporary file and store the object file in the cache.
+   */
+  private int executeCached(ExecutionContext context, ArtifactCache cache) throws Exception {
+    Path preprocessed = getPreprocessedTemp();
+    Path cachedOutput = getCachedOutputTemp();
+    try {
+      int exitCode = executeProcess(
+          context,
+          makePreprocessCommand(),
+          Optional.of(preprocessed),
+          Optional.<Path>absent());
+      if (exitCode != 0) {
+        return exitCode;
+      }
+
+      Optional<RuleKey> key = getPreprocessedOutputKey(preprocessed);
+      if (key.isPresent()) {
+        CacheResult result = cache.fetch(key.get(), filesystem.resolve(cachedOutput));
+        if (result.getType() == CacheResultType.HIT) {
+          LOG.debug("%s: using cached object file %s", input, key.get());
+          filesystem.move(cachedOutput, output, StandardCopyOption.REPLACE_EXISTING);
+          String warnings = result.getMetadata().get(COMPILER_STDERR_METADATA_KEY);
+          if (warnings != null && !warnings.isEmpty()) {
+            context.getBuckEventBus().post(ConsoleEvent.create(Level.WARNING, warnings));
+          }
+          return 0;
+        }
+      }
+
+      ByteArrayOutputStream compileError = new ByteArrayOutputStream();
+      exitCode = executeProcess(
+          context,
           makeCompileCommand(
-              input.toString(),
-              inputType.getLanguage(),
-              inputType.isPreprocessable()));
+              "-",
+              inputType.getPreprocessedLanguage(),
+              /* preprocessable */ false),
+          Optional.<Path>absent(),
+          Optional.of(preprocessed),
+          compileError);
+      if (exitCode == 0 && key.isPresent() && cache.isStoreSupported()) {
+        cache.store(
+            ImmutableSet.of(key.get()),
+            ImmutableMap.of(COMPILER_STDERR_METADATA_KEY, new String(compileError.toByteArray())),
+            filesystem.resolve(output));
+      }
+      return exitCode;
+    } finally {
+      filesystem.deleteFileAtPathIfExists(preprocessed);
+      filesystem.deleteFileAtPathIfExists(cachedOutput);
+    }
+  }
+
+  /**
+   * @return the key of the object file compiled from {@code preprocessed}, which covers the
+   *     preprocessed source, everything in the compiler command except the output path, and the
+   *     contents of the compiler binary, or absent if the compiler binary can't be found.
+   */
+  private Optional<RuleKey> getPreprocessedOutputKey(Path preprocessed) throws IOException {
+    Optional<HashCode> compilerHash = getCompilerHash();
+    if (!compilerHash.isPresent()) {
+      LOG.debug("%s: not caching, can't find compiler %s", input, compilerCommand.get().get(0));
+      return Optional.absent();
+    }
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(compilerHash.get().asBytes());
+    for (String arg : compilerCommand.get().subList(1, compilerCommand.get().size())) {
+      hasher.putUnencodedChars(arg).putByte((byte) 0);
+    }
+    hasher.putUnencodedChars(inputType.getPreprocessedLanguage()).putByte((byte) 0);
+    try (InputStream stream = filesystem.newFileInputStream(preprocessed)) {
+      ByteStreams.copy(stream, Funnels.asOutputStream(hasher));
+    }
+    return Optional.of(new RuleKey(hasher.hash().toString()));
+  }
+
+  /**
+   * @return the hash of the contents of the compiler binary, so that the same compiler installed
+   *     at different paths or times shares cache entries, and different compilers at the same
+   *     path don't.  Like the process we start, a compiler given by name alone is looked up on our
+   *     own {@code PATH}.
+   */
+  private Optional<HashCode> getCompilerHash() throws IOException {
+    Path compiler = Paths.get(compilerCommand.get().get(0));
+    Optional<Path> resolved;
+    if (compiler.isAbsolute() || compiler.getNameCount() > 1) {
+      Path path = filesystem.resolve(compiler);
+      resolved = java.nio.file.Files.isRegularFile(path)
+          ? Optional.of(path)
+          : Optional.<Path>absent();
+    } else {
+      resolved = new ExecutableFinder().getOptionalExecutable(
+          compiler,
+          ImmutableMap.copyOf(System.getenv()));
+    }
+    if (!resolved.isPresent()) {
+      return Optional.absent();
+    }
+
+    // Hashing the compiler is expensive, so remember the hash for as long as the binary's size and
+    // modification time stay the same.
+    Path realPath = resolved.get().toRealPath();
+    File file = realPath.toFile();
+    String memoKey = String.format("%s:%d:%d", realPath, file.length(), file.lastModified());
+    HashCode hash = COMPILER_HASHES.getIfPresent(memoKey);
+    if (hash == null) {
+      hash = Files.hash(file, Hashing.sha1());
+      COMPILER_HASHES.put(memoKey, hash);
+    }
+    return Optional.of(hash);
+  }
+
+  private int executeProcess(
+      ExecutionContext context,
+      ImmutableList<String> command,
+      Optional<Path> preprocessedOutput,
+      Optional<Path> stdin) throws Exception {
+    return executeProcess(context, command, preprocessedOutput, stdin, new ByteArrayOutputStream());
+  }
+
+  /**
+   * Run {@code command}, reporting its error output.
+   *
+   * @param preprocessedOutput if present, the standard output of the command is written here
+   *     after rewriting its line markers.
+   * @param stdin if present, the file to use as the standard input of the command.
+   * @param error receives the error output of the command, after rewriting its paths.
+   */
+  private int executeProcess(
+      ExecutionContext context,
+      ImmutableList<String> command,
+      Optional<Path> preprocessedOutput,
+      Optional<Path> stdin,
+      ByteArrayOutputStream error) throws Exception {
+    ProcessBuilder builder = makeSubprocessBuilder();
+    builder.command(command);
+    if (preprocessedOutput.isPresent()) {
+      builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+    }
+    if (stdin.isPresent()) {
+      builder.redirectInput(filesystem.resolve(stdin.get()).toFile());
     }
 
     LOG.debug(
@@ -408,9 +623,6 @@ public class CxxPreprocessAndCompileStep implements Step {
     // Start the process.
     Process process = builder.start();
 
-    // We buffer error messages in memory, as these are typically small.
-    ByteArrayOutputStream error = new ByteArrayOutputStream();
-
     // Open the temp file to write the intermediate output to and also fire up managed threads
     // to process the stdout and stderr lines from the preprocess command.
     int exitCode;
@@ -426,9 +638,9 @@ public class CxxPreprocessAndCompileStep implements Step {
 
         // If we're preprocessing, we pipe the output through a processor to sanitize the line
         // markers.  So fire that up...
-        if (operation == Operation.PREPROCESS) {
+        if (preprocessedOutput.isPresent()) {
           try (OutputStream output =
-                   filesystem.newFileOutputStream(this.output);
+                   filesystem.newFileOutputStream(preprocessedOutput.get());
                FunctionLineProcessorThread outputProcessor =
                    new FunctionLineProcessorThread(
                        process.getInputStream(),
@@ -471,7 +683,9 @@ public class CxxPreprocessAndCompileStep implements Step {
 
       // We need completely different logic if we're piping from the preprocessor to the compiler.
       int exitCode;
-      if (operation == Operation.PIPED_PREPROCESS_AND_COMPILE) {
+      if (preprocessedOutputCache.isPresent()) {
+        exitCode = executeCached(context, preprocessedOutputCache.get());
+      } else if (operation == Operation.PIPED_PREPROCESS_AND_COMPILE) {
         exitCode = executePiped(context);
       } else {
         exitCode = executeOther(context);
@@ -490,24 +704,23 @@ public class CxxPreprocessAndCompileStep implements Step {
             "input", this.input, "output", this.output);
         try (InputStream input = filesystem.newFileInputStream(getDepTemp());
              BufferedReader reader = new BufferedReader(new InputStreamReader(input));
-             OutputStream output = filesystem.newFileOutputStream(depFile);
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output));
              SimplePerfEvent.Scope perfEvent = SimplePerfEvent.scope(
                  context.getBuckEventBus(),
                  PerfEventId.of("depfile-parse"),
                  params)) {
+          ImmutableList.Builder<String> dependencies = ImmutableList.builder();
           for (String prereq : Depfiles.parseDepfile(reader).getPrereqs()) {
-            if (values.contains(Paths.get(prereq))) {
-              writer.write(prereq);
-              writer.newLine();
+            Path prereqPath = Paths.get(prereq);
+            if (values.contains(prereqPath)) {
+              dependencies.add(prereq);
               continue;
             }
-            Path replacement = replacementPaths.get(Paths.get(prereq));
+            Path replacement = replacementPaths.get(prereqPath);
             if (replacement != null) {
-              writer.write(replacement.toString());
-              writer.newLine();
+              dependencies.add(replacement.toString());
             }
           }
+          Depfiles.writeDependencyList(filesystem, depFile, dependencies.build());
         }
       }
 
@@ -32,6 +32,14 @@ public enum CxxPreprocessMode {
    */
   PIPED,
 
+  /**
+   * Like PIPED, but buffer the preprocessed output and look up the object file in the artifact
+   * cache by its hash before running the compiler, like ccache.  Changes which don't affect the
+   * preprocessed output, such as editing a comment in a header, then don't cause a recompile, even
+   * across rules.
+   */
+  PIPED_CACHED,
+
   /**
    * Run the preprocessor and compiler together.  Does not currently normalize debugging
    * information at the preprocessor level; does a search-and-replace on the debug section
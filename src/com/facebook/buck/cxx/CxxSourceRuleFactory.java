@@ -722,6 +722,7 @@ public class CxxSourceRuleFactory {
       switch (strategy) {
 
         case PIPED:
+        case PIPED_CACHED:
         case COMBINED: {
           CxxPreprocessAndCompile rule;
 
@@ -70,6 +70,19 @@ public class DebugPathSanitizer {
             }
           });
 
+  // Building a replacer compiles its automaton, so reuse it for every file from the same
+  // working directory.
+  private final LoadingCache<Path, ByteBufferReplacer> replacerCache =
+      CacheBuilder
+          .newBuilder()
+          .softValues()
+          .build(new CacheLoader<Path, ByteBufferReplacer>() {
+            @Override
+            public ByteBufferReplacer load(Path key) {
+              return getCompilationDirectoryReplacerWork(key);
+            }
+          });
+
   /**
    * @param pathSize fix paths to this size for in-place replacements.
    * @param separator the path separator used to fill paths aren't of {@code pathSize} length.
@@ -198,6 +211,17 @@ public class DebugPathSanitizer {
    *     {@code compilationDirectory}.
    */
   private ByteBufferReplacer getCompilationDirectoryReplacer(Path workingDir) {
+    try {
+      return replacerCache.get(workingDir);
+    } catch (ExecutionException e) {
+      Logger.get(DebugPathSanitizer.class).error(
+          "Problem loading replacer into cache",
+          e);
+      return getCompilationDirectoryReplacerWork(workingDir);
+    }
+  }
+
+  private ByteBufferReplacer getCompilationDirectoryReplacerWork(Path workingDir) {
     return new ByteBufferReplacer(
         ImmutableMap.of(
             getExpandedPath(workingDir).getBytes(Charsets.US_ASCII),
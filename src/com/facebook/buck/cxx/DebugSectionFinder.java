@@ -21,10 +21,13 @@ import static com.facebook.buck.cxx.DebugSectionProperty.STRINGS;
 
 import com.facebook.buck.cxx.elf.Elf;
 import com.facebook.buck.cxx.elf.ElfSection;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 
 public class DebugSectionFinder {
@@ -41,6 +44,27 @@ public class DebugSectionFinder {
           .put(".stabstr", ImmutableSet.of(STRINGS))
           .build();
 
+  // The Mach-O segment holding the DWARF sections, and the names of the ones which correspond to
+  // debug sections mapped to their properties.
+  private static final String MACHO_DWARF_SEGMENT = "__DWARF";
+  private static final ImmutableMap<String, ImmutableSet<DebugSectionProperty>>
+      MACHO_DEBUG_SECTIONS =
+      ImmutableMap.<String, ImmutableSet<DebugSectionProperty>>builder()
+          .put("__debug_str", ImmutableSet.of(STRINGS))
+          .put("__debug_line", ImmutableSet.of(STRINGS))
+          .build();
+
+  // Mach-O section and segment names are NUL padded to this length.
+  private static final int MACHO_NAME_LENGTH = 16;
+
+  // The sizes of the Mach-O load command header, and of the 32 and 64 bit segment command headers
+  // and section headers.
+  private static final int MACHO_LOAD_COMMAND_SIZE = 8;
+  private static final int MACHO_SEGMENT_COMMAND_SIZE = 56;
+  private static final int MACHO_SEGMENT_COMMAND_64_SIZE = 72;
+  private static final int MACHO_SECTION_SIZE = 68;
+  private static final int MACHO_SECTION_64_SIZE = 80;
+
   // Locate, if any, the debug sections in the ELF file represented by the given buffer.
   private ImmutableMap<String, DebugSection> findElf(ByteBuffer buffer) {
     ImmutableMap.Builder<String, DebugSection> debugSectionsBuilder = ImmutableMap.builder();
@@ -59,13 +83,109 @@ public class DebugSectionFinder {
     return debugSectionsBuilder.build();
   }
 
+  // Locate, if any, the debug sections in the Mach-O file represented by the given buffer, by
+  // walking the section headers of its segment load commands.  Every load command and the section
+  // headers within it are checked to fit in the buffer before they're read, so that a truncated or
+  // malformed file is reported as a MachoException.
+  private ImmutableMap<String, DebugSection> findMacho(ByteBuffer buffer)
+      throws Machos.MachoException {
+    ImmutableMap.Builder<String, DebugSection> debugSectionsBuilder = ImmutableMap.builder();
+    ByteBuffer map = buffer.duplicate();
+    MachoHeader header;
+    try {
+      header = Machos.getHeader(map);
+    } catch (BufferUnderflowException e) {
+      throw new Machos.MachoException("truncated Mach-O header");
+    }
+    for (int i = 0; i < header.getCommandsCount(); i++) {
+      int commandStart = map.position();
+      if (map.remaining() < MACHO_LOAD_COMMAND_SIZE) {
+        throw new Machos.MachoException("load command " + i + " extends past the end of the file");
+      }
+      int command = ObjectFileScrubbers.getLittleEndianInt(map);
+      int commandSize = ObjectFileScrubbers.getLittleEndianInt(map);
+      if (commandSize < MACHO_LOAD_COMMAND_SIZE ||
+          commandSize > buffer.limit() - commandStart) {
+        throw new Machos.MachoException("load command " + i + " has invalid size " + commandSize);
+      }
+      if (command == Machos.LC_SEGMENT || command == Machos.LC_SEGMENT_64) {
+        boolean is64Bit = command == Machos.LC_SEGMENT_64;
+        int segmentHeaderSize =
+            is64Bit ? MACHO_SEGMENT_COMMAND_64_SIZE : MACHO_SEGMENT_COMMAND_SIZE;
+        if (commandSize < segmentHeaderSize) {
+          throw new Machos.MachoException("segment command " + i + " is truncated");
+        }
+        /* segment name */ ObjectFileScrubbers.getBytes(map, MACHO_NAME_LENGTH);
+        /* vm address, vm size, file offset, file size */
+        ObjectFileScrubbers.getBytes(map, is64Bit ? 32 : 16);
+        /* maximum and initial vm protection */ ObjectFileScrubbers.getBytes(map, 8);
+        int sectionCount = ObjectFileScrubbers.getLittleEndianInt(map);
+        /* flags */ ObjectFileScrubbers.getLittleEndianInt(map);
+        long sectionsSize =
+            (sectionCount & 0xffffffffL) * (is64Bit ? MACHO_SECTION_64_SIZE : MACHO_SECTION_SIZE);
+        if (sectionsSize > commandSize - segmentHeaderSize) {
+          throw new Machos.MachoException(
+              "sections of segment command " + i + " extend past the end of the command");
+        }
+        for (int j = 0; j < sectionCount; j++) {
+          String sectionName = getMachoName(map);
+          String segmentName = getMachoName(map);
+          long size;
+          if (is64Bit) {
+            /* address */ ObjectFileScrubbers.getLittleEndianLong(map);
+            size = ObjectFileScrubbers.getLittleEndianLong(map);
+          } else {
+            /* address */ ObjectFileScrubbers.getLittleEndianInt(map);
+            size = ObjectFileScrubbers.getLittleEndianInt(map) & 0xffffffffL;
+          }
+          long offset = ObjectFileScrubbers.getLittleEndianInt(map) & 0xffffffffL;
+          /* align, relocations offset and count, flags, reserved1, reserved2 */
+          ObjectFileScrubbers.getBytes(map, 24);
+          if (is64Bit) {
+            /* reserved3 */ ObjectFileScrubbers.getLittleEndianInt(map);
+          }
+          ImmutableSet<DebugSectionProperty> properties =
+              MACHO_DWARF_SEGMENT.equals(segmentName) ?
+                  MACHO_DEBUG_SECTIONS.get(sectionName) :
+                  null;
+          if (properties != null) {
+            if (size < 0 || offset + size > buffer.limit()) {
+              throw new Machos.MachoException(sectionName + " extends past the end of the file");
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.position((int) offset);
+            body = body.slice();
+            body.limit((int) size);
+            debugSectionsBuilder.put(sectionName, new DebugSection(properties, body));
+          }
+        }
+      }
+      map.position(commandStart + commandSize);
+    }
+    return debugSectionsBuilder.build();
+  }
+
+  private static String getMachoName(ByteBuffer buffer) {
+    byte[] name = ObjectFileScrubbers.getBytes(buffer, MACHO_NAME_LENGTH);
+    int length = Bytes.indexOf(name, (byte) 0);
+    return new String(name, 0, length == -1 ? name.length : length, Charsets.US_ASCII);
+  }
+
   /**
    * @return a map of all the debug sections found in executable format represented as
    *     {@code buffer}, or {@link Optional#absent()} if the format was not recognized.
+   *     The sections are views of {@code buffer}, so they can be updated in place.
    */
   public Optional<ImmutableMap<String, DebugSection>> find(ByteBuffer buffer) {
     if (Elf.isElf(buffer)) {
       return Optional.of(findElf(buffer));
+    } else if (Machos.isMacho(buffer)) {
+      try {
+        return Optional.of(findMacho(buffer));
+      } catch (Machos.MachoException e) {
+        // Fall back to treating the file as an unrecognized blob.
+        return Optional.absent();
+      }
     } else {
       return Optional.absent();
     }
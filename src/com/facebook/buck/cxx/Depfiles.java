@@ -16,20 +16,56 @@
 
 package com.facebook.buck.cxx;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
-import java.nio.CharBuffer;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Objects;
 
 /**
- * Specialized parser for .d Makefiles emitted by {@code gcc -MD}.
+ * Specialized parser for .d Makefiles emitted by {@code gcc -MD}, and reader and writer for the
+ * processed dependency lists that {@link CxxPreprocessAndCompile} keeps next to its output.
  */
 public class Depfiles {
 
   private Depfiles() {}
 
+  /**
+   * The same headers show up in the depfiles of most of the sources in a build, so share a single
+   * copy of each path.
+   */
+  private static final Interner<String> PATH_INTERNER = Interners.newWeakInterner();
+
+  /**
+   * Dependency lists which have already been decoded, keyed by the hash stored in their header.
+   */
+  private static final Cache<HashCode, ImmutableList<String>> DEPENDENCY_LISTS =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private static final int DEPENDENCY_LIST_MAGIC = 0x44455031; // "DEP1"
+  private static final HashFunction DEPENDENCY_LIST_HASH = Hashing.sha1();
+  private static final int MAX_SHARED_PREFIX_LENGTH = 0xFFFF;
+
   private enum State {
       LOOKING_FOR_TARGET,
       FOUND_TARGET
@@ -135,11 +171,11 @@ public class Depfiles {
               throw new HumanReadableException(
                   "Depfile parser cannot handle .d file with multiple targets");
             }
-            target = identifierBuilder.toString();
+            target = PATH_INTERNER.intern(identifierBuilder.toString());
             identifierBuilder.setLength(0);
             break;
           case ADD_PREREQ:
-            prereqsBuilder.add(identifierBuilder.toString());
+            prereqsBuilder.add(PATH_INTERNER.intern(identifierBuilder.toString()));
             identifierBuilder.setLength(0);
             break;
         }
@@ -156,6 +192,104 @@ public class Depfiles {
     }
   }
 
+  /**
+   * Writes a processed list of dependencies to {@code path} in a compact binary form.
+   * <p>
+   * The file starts with a hash of its contents, which lets {@link #readDependencyList} verify it,
+   * and skip decoding it altogether when it has seen the same list before.  Each entry is stored
+   * as the length of the prefix it shares with the previous entry followed by the rest of it, as
+   * headers from the same directories tend to be listed together.
+   */
+  public static void writeDependencyList(
+      ProjectFilesystem filesystem,
+      Path path,
+      List<String> dependencies) throws IOException {
+    ImmutableList.Builder<String> interned = ImmutableList.builder();
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    try (DataOutputStream data = new DataOutputStream(payload)) {
+      data.writeInt(dependencies.size());
+      String previous = "";
+      for (String dependency : dependencies) {
+        int shared = Math.min(sharedPrefixLength(previous, dependency), MAX_SHARED_PREFIX_LENGTH);
+        data.writeShort(shared);
+        data.writeUTF(dependency.substring(shared));
+        interned.add(PATH_INTERNER.intern(dependency));
+        previous = dependency;
+      }
+    }
+    byte[] bytes = payload.toByteArray();
+    HashCode hash = DEPENDENCY_LIST_HASH.hashBytes(bytes);
+
+    try (OutputStream output = filesystem.newFileOutputStream(path);
+         DataOutputStream data = new DataOutputStream(output)) {
+      data.writeInt(DEPENDENCY_LIST_MAGIC);
+      data.write(hash.asBytes());
+      data.write(bytes);
+    }
+    DEPENDENCY_LISTS.put(hash, interned.build());
+  }
+
+  /**
+   * Reads a list of dependencies written by {@link #writeDependencyList}.
+   *
+   * @throws IOException if the file can't be read, or its contents don't match its hash.
+   */
+  public static ImmutableList<String> readDependencyList(
+      ProjectFilesystem filesystem,
+      Path path) throws IOException {
+    try (InputStream input = filesystem.newFileInputStream(path);
+         DataInputStream data = new DataInputStream(new BufferedInputStream(input))) {
+      if (data.readInt() != DEPENDENCY_LIST_MAGIC) {
+        throw new IOException(String.format("%s is not a dependency list", path));
+      }
+      byte[] hashBytes = new byte[DEPENDENCY_LIST_HASH.bits() / 8];
+      data.readFully(hashBytes);
+      HashCode hash = HashCode.fromBytes(hashBytes);
+
+      ImmutableList<String> dependencies = DEPENDENCY_LISTS.getIfPresent(hash);
+      if (dependencies != null) {
+        return dependencies;
+      }
+
+      byte[] bytes = ByteStreams.toByteArray(data);
+      if (!DEPENDENCY_LIST_HASH.hashBytes(bytes).equals(hash)) {
+        throw new IOException(String.format("%s does not match its hash", path));
+      }
+      dependencies = decodeDependencyList(bytes);
+      DEPENDENCY_LISTS.put(hash, dependencies);
+      return dependencies;
+    }
+  }
+
+  private static ImmutableList<String> decodeDependencyList(byte[] bytes) throws IOException {
+    try (DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      int size = data.readInt();
+      ImmutableList.Builder<String> dependencies = ImmutableList.builder();
+      String previous = "";
+      for (int i = 0; i < size; i++) {
+        int shared = data.readUnsignedShort();
+        String dependency = previous.substring(0, shared) + data.readUTF();
+        dependencies.add(PATH_INTERNER.intern(dependency));
+        previous = dependency;
+      }
+      return dependencies.build();
+    }
+  }
+
+  private static int sharedPrefixLength(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < length && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return i;
+  }
+
+  @VisibleForTesting
+  static void invalidateDependencyListCache() {
+    DEPENDENCY_LISTS.invalidateAll();
+  }
+
   public static class Depfile {
 
     private final String target;
@@ -22,23 +22,52 @@ import com.facebook.buck.rules.RuleKeyBuilder;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
-import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 
 public class GnuArchiver implements Archiver {
 
-  private static final byte[] EXPECTED_GLOBAL_HEADER = "!<arch>\n".getBytes(Charsets.US_ASCII);
-
   private final Tool tool;
+  private final ArchiveMode mode;
 
   public GnuArchiver(Tool tool) {
+    this(tool, ArchiveMode.EXTERNAL);
+  }
+
+  public GnuArchiver(Tool tool, ArchiveMode mode) {
     this.tool = tool;
+    this.mode = mode;
   }
 
   @Override
   public ImmutableList<FileScrubber> getScrubbers() {
-    return ImmutableList.of(ObjectFileScrubbers.createDateUidGidScrubber(EXPECTED_GLOBAL_HEADER));
+    if (mode == ArchiveMode.THIN) {
+      return ImmutableList.of(
+          ObjectFileScrubbers.createDateUidGidScrubber(
+              ArchiveWriter.THIN_GLOBAL_HEADER,
+              /* thinArchive */ true));
+    }
+    return ImmutableList.of(
+        ObjectFileScrubbers.createDateUidGidScrubber(ArchiveWriter.GLOBAL_HEADER));
+  }
+
+  @Override
+  public Optional<ArchiveWriter> getArchiveWriter() {
+    switch (mode) {
+      case IN_PROCESS:
+        return Optional.of(new ArchiveWriter(ArchiveWriter.Format.GNU, /* thin */ false));
+      case THIN:
+        return Optional.of(new ArchiveWriter(ArchiveWriter.Format.GNU, /* thin */ true));
+      case EXTERNAL:
+      default:
+        return Optional.absent();
+    }
+  }
+
+  @Override
+  public Archiver withArchiveMode(ArchiveMode mode) {
+    return new GnuArchiver(tool, mode);
   }
 
   @Override
@@ -60,7 +89,8 @@ public class GnuArchiver implements Archiver {
   public RuleKeyBuilder appendToRuleKey(RuleKeyBuilder builder) {
     return builder
         .setReflectively("tool", tool)
-        .setReflectively("type", getClass().getSimpleName());
+        .setReflectively("type", getClass().getSimpleName())
+        .setReflectively("mode", mode);
   }
 
 }
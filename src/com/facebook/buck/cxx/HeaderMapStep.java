@@ -22,9 +22,12 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Map;
 
 public class HeaderMapStep implements Step {
@@ -54,15 +57,29 @@ public class HeaderMapStep implements Step {
 
   @Override
   public int execute(ExecutionContext context) throws IOException {
-    HeaderMap.Builder builder = HeaderMap.builder();
+    HeaderMap.Builder builder = HeaderMap.builder(entries.size());
     for (Map.Entry<Path, Path> entry : entries.entrySet()) {
       builder.add(entry.getKey().toString(), entry.getValue());
     }
-    HeaderMap headerMap = builder.build();
-    filesystem.writeBytesToPath(headerMap.getBytes(), output);
+    byte[] bytes = builder.build().getBytes();
+
+    // The tree is regenerated whenever any of its headers change, but the map only depends on
+    // the header names, so it is usually identical.  Leave it (and its timestamp) alone then.
+    if (!isUpToDate(bytes)) {
+      filesystem.writeBytesToPath(bytes, output);
+    }
     return 0;
   }
 
+  private boolean isUpToDate(byte[] bytes) throws IOException {
+    if (!filesystem.isFile(output) || filesystem.getFileSize(output) != bytes.length) {
+      return false;
+    }
+    try (InputStream existing = filesystem.newFileInputStream(output)) {
+      return Arrays.equals(ByteStreams.toByteArray(existing), bytes);
+    }
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof HeaderMapStep)) {
@@ -29,6 +29,9 @@ public class LcUuidScrubber implements FileScrubber {
 
   private static final byte[] ZERO_UUID = new byte[16];
 
+  // The size of the chunks the mapped file is copied into for hashing.
+  private static final int HASH_CHUNK_SIZE = 64 * 1024;
+
   @Override
   public void scrubFile(FileChannel file) throws IOException, ScrubException {
     if (!Machos.isMacho(file)) {
@@ -45,9 +48,13 @@ public class LcUuidScrubber implements FileScrubber {
     }
     map.rewind();
 
+    // Hash in bulk rather than a byte at a time, as binaries can be hundreds of megabytes.
     Hasher hasher = Hashing.sha1().newHasher();
+    byte[] chunk = new byte[HASH_CHUNK_SIZE];
     while (map.hasRemaining()) {
-      hasher.putByte(map.get());
+      int length = Math.min(chunk.length, map.remaining());
+      map.get(chunk, 0, length);
+      hasher.putBytes(chunk, 0, length);
     }
 
     map.rewind();
@@ -71,9 +71,18 @@ public class Machos {
   }
 
   static boolean isMacho(FileChannel file) throws IOException {
-    MappedByteBuffer map = file.map(FileChannel.MapMode.READ_ONLY, 0, MH_MAGIC.length);
+    return file.size() >= MH_MAGIC.length &&
+        isMacho(file.map(FileChannel.MapMode.READ_ONLY, 0, MH_MAGIC.length));
+  }
 
-    byte[] magic = ObjectFileScrubbers.getBytes(map, MH_MAGIC.length);
+  /**
+   * @return whether the data this buffer points to is most likely Mach-O.
+   */
+  static boolean isMacho(ByteBuffer buffer) {
+    if (buffer.remaining() < MH_MAGIC.length) {
+      return false;
+    }
+    byte[] magic = ObjectFileScrubbers.getBytes(buffer.slice(), MH_MAGIC.length);
     return Arrays.equals(MH_MAGIC, magic) || Arrays.equals(MH_CIGAM, magic) ||
         Arrays.equals(MH_MAGIC_64, magic) || Arrays.equals(MH_CIGAM_64, magic);
   }
@@ -255,7 +264,7 @@ public class Machos {
     file.truncate(currentStringTableOffset);
   }
 
-  private static MachoHeader getHeader(MappedByteBuffer map) throws MachoException {
+  static MachoHeader getHeader(ByteBuffer map) throws MachoException {
     byte[] magic = ObjectFileScrubbers.getBytes(map, MH_MAGIC.length);
     boolean is64bit;
     if (Arrays.equals(MH_MAGIC, magic) || Arrays.equals(MH_CIGAM, magic)) {
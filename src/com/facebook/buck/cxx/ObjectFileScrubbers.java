@@ -38,7 +38,17 @@ public class ObjectFileScrubbers {
 
   private ObjectFileScrubbers() {}
 
-  public static FileScrubber createDateUidGidScrubber(final byte[] expectedGlobalHeader) {
+  public static FileScrubber createDateUidGidScrubber(byte[] expectedGlobalHeader) {
+    return createDateUidGidScrubber(expectedGlobalHeader, /* thinArchive */ false);
+  }
+
+  /**
+   * @param thinArchive whether the archive is a GNU thin archive, whose members other than the
+   *     symbol and name tables only refer to files outside of the archive.
+   */
+  public static FileScrubber createDateUidGidScrubber(
+      final byte[] expectedGlobalHeader,
+      final boolean thinArchive) {
     return new FileScrubber() {
 
       /**
@@ -60,7 +70,7 @@ public class ObjectFileScrubbers {
           // Iterate over all the file meta-data entries, injecting zero's for timestamp,
           // UID, and GID.
           while (map.hasRemaining()) {
-        /* File name */ getBytes(map, 16);
+            byte[] fileName = getBytes(map, 16);
 
             // Inject 0's for the non-deterministic meta-data entries.
         /* File modification timestamp */ putIntAsDecimalString(map, 12, 0);
@@ -76,8 +86,10 @@ public class ObjectFileScrubbers {
                 Arrays.equals(END_OF_FILE_HEADER_MARKER, fileMagic),
                 "invalid file magic");
 
-            // Skip the file data.
-            map.position(map.position() + fileSize + fileSize % 2);
+            // Skip the file data, which thin archives only store for the symbol and name tables.
+            if (!thinArchive || !isThinArchiveExternalMember(fileName)) {
+              map.position(map.position() + fileSize + fileSize % 2);
+            }
           }
 
           // Convert any low-level exceptions to `ArchiveExceptions`s.
@@ -89,6 +101,14 @@ public class ObjectFileScrubbers {
     };
   }
 
+  /**
+   * Members of thin archives which refer to external files are named by an offset into the name
+   * table, e.g. "/42".
+   */
+  private static boolean isThinArchiveExternalMember(byte[] fileName) {
+    return fileName[0] == '/' && fileName[1] >= '0' && fileName[1] <= '9';
+  }
+
   public static byte[] getBytes(ByteBuffer buffer, int len) {
     byte[] bytes = new byte[len];
     buffer.get(bytes);
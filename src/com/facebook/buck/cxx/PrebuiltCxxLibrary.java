@@ -228,7 +228,7 @@ public class PrebuiltCxxLibrary extends AbstractCxxLibrary {
   }
 
   @Override
-  public NativeLinkableInput getNativeLinkableInput(
+  protected NativeLinkableInput computeNativeLinkableInput(
       TargetGraph targetGraph,
       CxxPlatform cxxPlatform,
       Linker.LinkableDepType type) {
@@ -22,6 +22,8 @@ import com.facebook.buck.rules.RuleKeyBuilder;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.Tool;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 
@@ -43,6 +45,20 @@ public class UnknownArchiver implements Archiver {
     return ImmutableList.of();
   }
 
+  @Override
+  public Optional<ArchiveWriter> getArchiveWriter() {
+    return Optional.absent();
+  }
+
+  @Override
+  public Archiver withArchiveMode(ArchiveMode mode) {
+    if (mode != ArchiveMode.EXTERNAL) {
+      throw new HumanReadableException(
+          "Archives can only be written in-process for a known archiver platform.");
+    }
+    return this;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathResolver resolver) {
     return tool.getDeps(resolver);
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Write an "ar" archive with an {@link ArchiveWriter}.
+ */
+public class WriteArchiveStep implements Step {
+
+  private final ProjectFilesystem filesystem;
+  private final ArchiveWriter writer;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+
+  public WriteArchiveStep(
+      ProjectFilesystem filesystem,
+      ArchiveWriter writer,
+      Path output,
+      ImmutableList<Path> inputs) {
+    this.filesystem = filesystem;
+    this.writer = writer;
+    this.output = output;
+    this.inputs = inputs;
+  }
+
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    ImmutableList.Builder<Path> absoluteInputs = ImmutableList.builder();
+    for (Path input : inputs) {
+      absoluteInputs.add(filesystem.resolve(input));
+    }
+    try {
+      writer.write(filesystem.resolve(output), absoluteInputs.build());
+    } catch (IOException e) {
+      context.logError(e, "Error writing archive %s", output);
+      return 1;
+    }
+    return 0;
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("write %s archive %s", writer.getFormat(), output);
+  }
+
+}
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.dalvik;
 
+import static com.facebook.buck.util.concurrent.MoreExecutors.newMultiThreadExecutor;
+
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.classes.AbstractFileLike;
 import com.facebook.buck.jvm.java.classes.ClasspathTraversal;
@@ -24,11 +26,15 @@ import com.facebook.buck.jvm.java.classes.DefaultClasspathTraverser;
 import com.facebook.buck.jvm.java.classes.FileLike;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -72,7 +78,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   private final Set<String> wantedInPrimaryZip;
   private final Path reportDir;
   private final long linearAllocLimit;
-  private final DalvikStatsCache dalvikStatsCache;
+  private final Optional<Path> dalvikStatsCacheFile;
   private final DexSplitStrategy dexSplitStrategy;
   private final ImmutableSet<String> secondaryHeadSet;
   private final ImmutableSet<String> secondaryTailSet;
@@ -82,6 +88,9 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   @Nullable
   private DalvikAwareOutputStreamHelper primaryOut;
 
+  @Nullable
+  private DalvikStatsCache dalvikStatsCache;
+
   /**
    * @see ZipSplitterFactory#newInstance(ProjectFilesystem, Set, Path, Path, String, Predicate,
    *     ImmutableSet, ImmutableSet, com.facebook.buck.dalvik.ZipSplitter.DexSplitStrategy,
@@ -100,7 +109,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableSet<String> secondaryTailSet,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Optional<Path> dalvikStatsCacheFile) {
     if (linearAllocLimit <= 0) {
       throw new HumanReadableException("linear_alloc_hard_limit must be greater than zero.");
     }
@@ -116,7 +126,7 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
     this.reportDir = reportDir;
     this.dexSplitStrategy = dexSplitStrategy;
     this.linearAllocLimit = linearAllocLimit;
-    this.dalvikStatsCache = new DalvikStatsCache();
+    this.dalvikStatsCacheFile = dalvikStatsCacheFile;
   }
 
   public static DalvikAwareZipSplitter splitZip(
@@ -132,7 +142,8 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
       ImmutableSet<String> secondaryTailSet,
       DexSplitStrategy dexSplitStrategy,
       ZipSplitter.CanaryStrategy canaryStrategy,
-      Path reportDir) {
+      Path reportDir,
+      Optional<Path> dalvikStatsCacheFile) {
     return new DalvikAwareZipSplitter(
         filesystem,
         inFiles,
@@ -146,11 +157,34 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
         secondaryTailSet,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsCacheFile);
   }
 
   @Override
   public List<Path> execute() throws IOException {
+    int numThreads = Runtime.getRuntime().availableProcessors();
+    ListeningExecutorService executorService = MoreExecutors.listeningDecorator(
+        newMultiThreadExecutor(DalvikStatsCache.class.getSimpleName(), numThreads));
+    try {
+      ImmutableMap<HashCode, DalvikStatsTool.Stats> previousStats = ImmutableMap.of();
+      if (dalvikStatsCacheFile.isPresent()) {
+        previousStats = DalvikStatsCache.readCacheFile(dalvikStatsCacheFile.get());
+      }
+      dalvikStatsCache = new DalvikStatsCache(executorService, numThreads, previousStats);
+
+      List<Path> files = split();
+
+      if (dalvikStatsCacheFile.isPresent()) {
+        dalvikStatsCache.writeCacheFile(dalvikStatsCacheFile.get());
+      }
+      return files;
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private List<Path> split() throws IOException {
     ClasspathTraverser classpathTraverser = new DefaultClasspathTraverser();
     final Set<String> secondaryTail = new HashSet<String>();
 
@@ -172,6 +206,10 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
 
             String relativePath = entry.getRelativePath();
             Preconditions.checkNotNull(primaryOut);
+            Preconditions.checkNotNull(dalvikStatsCache);
+            // Every entry needs its stats eventually, so start computing them in the background
+            // while the rest of the classpath is traversed.
+            dalvikStatsCache.prefetch(entry);
             if (requiredInPrimaryZip.apply(relativePath)) {
               primaryOut.putEntry(entry);
             } else if (wantedInPrimaryZip.contains(relativePath) ||
@@ -248,7 +286,11 @@ public class DalvikAwareZipSplitter implements ZipSplitter {
   }
 
   private DalvikAwareOutputStreamHelper newZipOutput(Path file) throws IOException {
-    return new DalvikAwareOutputStreamHelper(file, linearAllocLimit, reportDir, dalvikStatsCache);
+    return new DalvikAwareOutputStreamHelper(
+        file,
+        linearAllocLimit,
+        reportDir,
+        Preconditions.checkNotNull(dalvikStatsCache));
   }
 
   private class MySecondaryDexHelper
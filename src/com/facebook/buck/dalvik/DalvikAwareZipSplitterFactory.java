@@ -17,6 +17,7 @@
 package com.facebook.buck.dalvik;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 
@@ -27,12 +28,20 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
 
   private final long linearAllocLimit;
   private final Set<String> wantedInPrimaryZip;
+  private final Optional<Path> dalvikStatsCacheFile;
 
+  /**
+   * @param dalvikStatsCacheFile if present, linear alloc estimates are read from and written back
+   *     to this file, so that classes that did not change since the last split are not analyzed
+   *     again.
+   */
   public DalvikAwareZipSplitterFactory(
       long linearAllocLimit,
-      Set<String> wantedInPrimaryZip) {
+      Set<String> wantedInPrimaryZip,
+      Optional<Path> dalvikStatsCacheFile) {
     this.linearAllocLimit = linearAllocLimit;
     this.wantedInPrimaryZip = wantedInPrimaryZip;
+    this.dalvikStatsCacheFile = dalvikStatsCacheFile;
   }
 
   @Override
@@ -61,6 +70,7 @@ public class DalvikAwareZipSplitterFactory implements ZipSplitterFactory {
         secondaryTailSet,
         dexSplitStrategy,
         canaryStrategy,
-        reportDir);
+        reportDir,
+        dalvikStatsCacheFile);
   }
 }
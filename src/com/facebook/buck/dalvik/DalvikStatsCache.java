@@ -17,44 +17,317 @@
 package com.facebook.buck.dalvik;
 
 import com.facebook.buck.jvm.java.classes.FileLike;
-import com.google.common.collect.MapMaker;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
-import java.io.InputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
 /**
  * Cache to memoize results from DalvikStatsTool.
+ * <p>
+ * Stats are keyed by the SHA-1 of the class file, so they can be written to disk with
+ * {@link #writeCacheFile(Path)} and reused by later builds through {@link #readCacheFile(Path)}.
+ * Classes handed to {@link #prefetch(FileLike)} are analyzed on the given executor while the
+ * caller moves on to the next class.
  */
 class DalvikStatsCache {
 
-  private final ConcurrentMap<FileLike, DalvikStatsTool.Stats> cache;
+  private static final Logger LOG = Logger.get(DalvikStatsCache.class);
+
+  private static final int CACHE_FILE_VERSION = 1;
+
+  /** How many classes may be read into memory while waiting to be analyzed, per thread. */
+  private static final int MAX_PENDING_CLASSES_PER_THREAD = 64;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+  private final ListeningExecutorService executorService;
+  private final Semaphore pendingClasses;
+
+  /** Stats read from a previous build, keyed by class file hash. */
+  private final ImmutableMap<HashCode, DalvikStatsTool.Stats> previousStats;
+
+  /** Stats for every class seen by this cache, keyed by class file hash. */
+  private final ConcurrentMap<HashCode, DalvikStatsTool.Stats> statsByHash;
+
+  /** Stats for every class seen by this cache, keyed by the location of the class. */
+  private final ConcurrentMap<Path, ListenableFuture<DalvikStatsTool.Stats>> statsByLocation;
 
   DalvikStatsCache() {
-    cache = new MapMaker().weakKeys().makeMap();
+    this(
+        MoreExecutors.newDirectExecutorService(),
+        1,
+        ImmutableMap.<HashCode, DalvikStatsTool.Stats>of());
+  }
+
+  /**
+   * @param executorService used to analyze classes passed to {@link #prefetch(FileLike)}.
+   * @param numThreads the number of threads backing {@code executorService}.
+   * @param previousStats stats from a previous build, as returned by {@link #readCacheFile(Path)}.
+   */
+  DalvikStatsCache(
+      ListeningExecutorService executorService,
+      int numThreads,
+      ImmutableMap<HashCode, DalvikStatsTool.Stats> previousStats) {
+    this.executorService = executorService;
+    this.pendingClasses = new Semaphore(numThreads * MAX_PENDING_CLASSES_PER_THREAD);
+    this.previousStats = previousStats;
+    this.statsByHash = Maps.newConcurrentMap();
+    this.statsByLocation = Maps.newConcurrentMap();
+  }
+
+  /**
+   * Reads {@code entry} and starts computing its stats in the background.  A later call to
+   * {@link #getStats(FileLike)} for an entry at the same location will wait for the result.
+   */
+  void prefetch(FileLike entry) throws IOException {
+    if (!isClass(entry) || statsByLocation.containsKey(getLocation(entry))) {
+      return;
+    }
+    final String name = entry.getRelativePath();
+    final byte[] contents = readContents(entry);
+    pendingClasses.acquireUninterruptibly();
+    ListenableFuture<DalvikStatsTool.Stats> stats;
+    try {
+      stats = executorService.submit(
+          new Callable<DalvikStatsTool.Stats>() {
+            @Override
+            public DalvikStatsTool.Stats call() {
+              try {
+                return computeStats(name, contents);
+              } finally {
+                pendingClasses.release();
+              }
+            }
+          });
+    } catch (RuntimeException e) {
+      pendingClasses.release();
+      throw e;
+    }
+    statsByLocation.putIfAbsent(getLocation(entry), stats);
   }
 
   DalvikStatsTool.Stats getStats(FileLike entry) {
-    String name = entry.getRelativePath();
-    if (!name.endsWith(".class")) {
+    if (!isClass(entry)) {
       // Probably something like a pom.properties file in a JAR: this does not contribute
       // to the linear alloc size, so return zero.
       return DalvikStatsTool.Stats.ZERO;
     }
 
-    DalvikStatsTool.Stats stats = cache.get(entry);
-    if (stats != null) {
-      return stats;
+    ListenableFuture<DalvikStatsTool.Stats> stats = statsByLocation.get(getLocation(entry));
+    if (stats == null) {
+      String name = entry.getRelativePath();
+      try {
+        stats = Futures.immediateFuture(computeStats(name, readContents(entry)));
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+      }
+      statsByLocation.putIfAbsent(getLocation(entry), stats);
+    }
+
+    try {
+      return Futures.getUnchecked(stats);
+    } catch (UncheckedExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private DalvikStatsTool.Stats computeStats(String name, byte[] contents) {
+    HashCode hash = HASH_FUNCTION.hashBytes(contents);
+    DalvikStatsTool.Stats stats = statsByHash.get(hash);
+    if (stats == null) {
+      stats = previousStats.get(hash);
+    }
+    if (stats == null) {
+      try {
+        stats = DalvikStatsTool.getEstimate(new ByteArrayInputStream(contents));
+      } catch (IOException e) {
+        throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+      } catch (RuntimeException e) {
+        throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+      }
     }
+    statsByHash.putIfAbsent(hash, stats);
+    return stats;
+  }
+
+  private static boolean isClass(FileLike entry) {
+    return entry.getRelativePath().endsWith(".class");
+  }
 
+  private static Path getLocation(FileLike entry) {
+    return entry.getContainer().resolve(entry.getRelativePath());
+  }
+
+  private static byte[] readContents(FileLike entry) throws IOException {
     try (InputStream is = entry.getInput()) {
-      stats = DalvikStatsTool.getEstimate(is);
-      cache.put(entry, stats);
-      return stats;
-    } catch (IOException e) {
-      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
-    } catch (RuntimeException e) {
-      throw new RuntimeException(String.format("Error calculating size for %s.", name), e);
+      return ByteStreams.toByteArray(is);
+    }
+  }
+
+  /**
+   * Reads stats written by {@link #writeCacheFile(Path)}.  A missing or unreadable file yields no
+   * stats, which means every class is analyzed again.
+   */
+  static ImmutableMap<HashCode, DalvikStatsTool.Stats> readCacheFile(Path cacheFile) {
+    if (!Files.isRegularFile(cacheFile)) {
+      return ImmutableMap.of();
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(cacheFile)))) {
+      if (in.readInt() != CACHE_FILE_VERSION) {
+        return ImmutableMap.of();
+      }
+
+      String[] strings = new String[in.readInt()];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = in.readUTF();
+      }
+      DalvikStatsTool.MethodReference[] methods =
+          new DalvikStatsTool.MethodReference[in.readInt()];
+      for (int i = 0; i < methods.length; i++) {
+        methods[i] = new DalvikStatsTool.MethodReference(
+            strings[in.readInt()],
+            strings[in.readInt()],
+            strings[in.readInt()]);
+      }
+      DalvikStatsTool.FieldReference[] fields = new DalvikStatsTool.FieldReference[in.readInt()];
+      for (int i = 0; i < fields.length; i++) {
+        fields[i] = new DalvikStatsTool.FieldReference(
+            strings[in.readInt()],
+            strings[in.readInt()],
+            strings[in.readInt()]);
+      }
+
+      int numClasses = in.readInt();
+      ImmutableMap.Builder<HashCode, DalvikStatsTool.Stats> stats = ImmutableMap.builder();
+      byte[] hash = new byte[HASH_FUNCTION.bits() / 8];
+      for (int i = 0; i < numClasses; i++) {
+        in.readFully(hash);
+        int estimatedLinearAllocSize = in.readInt();
+        ImmutableSet.Builder<DalvikStatsTool.MethodReference> methodReferences =
+            ImmutableSet.builder();
+        for (int j = in.readInt(); j > 0; j--) {
+          methodReferences.add(methods[in.readInt()]);
+        }
+        ImmutableSet.Builder<DalvikStatsTool.FieldReference> fieldReferences =
+            ImmutableSet.builder();
+        for (int j = in.readInt(); j > 0; j--) {
+          fieldReferences.add(fields[in.readInt()]);
+        }
+        stats.put(
+            HashCode.fromBytes(hash),
+            new DalvikStatsTool.Stats(
+                estimatedLinearAllocSize,
+                methodReferences.build(),
+                fieldReferences.build()));
+      }
+      return stats.build();
+    } catch (IOException | RuntimeException e) {
+      LOG.warn(e, "Ignoring unreadable dalvik stats cache %s.", cacheFile);
+      return ImmutableMap.of();
+    }
+  }
+
+  /**
+   * Writes the stats of every class seen by this cache to {@code cacheFile}.  Stats from the
+   * previous build for classes that were not seen again are dropped, so the file does not grow
+   * without bound.  Strings and references are written once and referred to by index.
+   */
+  void writeCacheFile(Path cacheFile) throws IOException {
+    Map<String, Integer> strings = Maps.newLinkedHashMap();
+    Map<DalvikStatsTool.MethodReference, Integer> methods = Maps.newLinkedHashMap();
+    Map<DalvikStatsTool.FieldReference, Integer> fields = Maps.newLinkedHashMap();
+    for (DalvikStatsTool.Stats stats : statsByHash.values()) {
+      for (DalvikStatsTool.MethodReference method : stats.methodReferences) {
+        if (!methods.containsKey(method)) {
+          methods.put(method, methods.size());
+          intern(strings, method.className);
+          intern(strings, method.methodName);
+          intern(strings, method.methodDesc);
+        }
+      }
+      for (DalvikStatsTool.FieldReference field : stats.fieldReferences) {
+        if (!fields.containsKey(field)) {
+          fields.put(field, fields.size());
+          intern(strings, field.className);
+          intern(strings, field.fieldName);
+          intern(strings, field.fieldDesc);
+        }
+      }
+    }
+
+    // Write to a temporary file first so that an interrupted write never leaves a truncated cache.
+    Path tempFile = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+      out.writeInt(CACHE_FILE_VERSION);
+
+      out.writeInt(strings.size());
+      for (String string : strings.keySet()) {
+        out.writeUTF(string);
+      }
+      out.writeInt(methods.size());
+      for (DalvikStatsTool.MethodReference method : methods.keySet()) {
+        out.writeInt(strings.get(method.className));
+        out.writeInt(strings.get(method.methodName));
+        out.writeInt(strings.get(method.methodDesc));
+      }
+      out.writeInt(fields.size());
+      for (DalvikStatsTool.FieldReference field : fields.keySet()) {
+        out.writeInt(strings.get(field.className));
+        out.writeInt(strings.get(field.fieldName));
+        out.writeInt(strings.get(field.fieldDesc));
+      }
+
+      out.writeInt(statsByHash.size());
+      for (Map.Entry<HashCode, DalvikStatsTool.Stats> entry : statsByHash.entrySet()) {
+        DalvikStatsTool.Stats stats = entry.getValue();
+        out.write(entry.getKey().asBytes());
+        out.writeInt(stats.estimatedLinearAllocSize);
+        out.writeInt(stats.methodReferences.size());
+        for (DalvikStatsTool.MethodReference method : stats.methodReferences) {
+          out.writeInt(methods.get(method));
+        }
+        out.writeInt(stats.fieldReferences.size());
+        for (DalvikStatsTool.FieldReference field : stats.fieldReferences) {
+          out.writeInt(fields.get(field));
+        }
+      }
+    }
+    Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void intern(Map<String, Integer> strings, String string) {
+    if (!strings.containsKey(string)) {
+      strings.put(string, strings.size());
     }
   }
 }
@@ -70,7 +70,11 @@ public class CalculateAbiStep implements Step {
     Path binJar = filesystem.resolve(binaryJar);
 
     try {
-      new StubJar(binJar).writeTo(filesystem, abiJar);
+      new StubJar(
+          binJar,
+          context.getClassStubCache().getExecutorService(),
+          context.getClassStubCache().getStubs())
+          .writeTo(filesystem, abiJar);
       buildableContext.recordArtifact(abiJar);
       return abiJar;
     } catch (IllegalArgumentException e) {
@@ -38,9 +38,11 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -56,6 +58,8 @@ public class JUnitStep extends ShellStep {
   @VisibleForTesting
   static final String TESTNG_TEST_RUNNER_CLASS_NAME =
       "com.facebook.buck.testrunner.TestNGMain";
+  private static final String TEST_RUNNER_WORKER_CLASS_NAME =
+      "com.facebook.buck.testrunner.TestRunnerWorker";
 
   private static final Path TESTRUNNER_CLASSES =
       Paths.get(
@@ -91,6 +95,7 @@ public class JUnitStep extends ShellStep {
   private final TestType type;
   private final Optional<Long> testRuleTimeoutMs;
   private final Optional<String> pathToJavaAgent;
+  private final Optional<Integer> testRunnerWorkerMaxRuns;
 
   // Set when the junit command times out.
   private boolean hasTimedOut = false;
@@ -115,6 +120,9 @@ public class JUnitStep extends ShellStep {
    * @param testClassNames the fully qualified names of the Java tests to run
    * @param directoryForTestResults directory where test results should be written
    * @param tmpDirectory directory tests can use for local file scratch space.
+   * @param testRunnerWorkerMaxRuns if present, the tests are run in a warm test runner JVM from
+   *     the {@link com.facebook.buck.util.TestRunnerWorkerPool} when they don't need a JVM of their
+   *     own, and the JVM is replaced after this many runs.
    */
   public JUnitStep(
       ProjectFilesystem filesystem,
@@ -134,7 +142,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testRuleTimeoutMs,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
-      Optional<String> pathToJavaAgent) {
+      Optional<String> pathToJavaAgent,
+      Optional<Integer> testRunnerWorkerMaxRuns) {
     this(
         filesystem,
         classpathEntries,
@@ -154,8 +163,8 @@ public class JUnitStep extends ShellStep {
         testRuleTimeoutMs,
         stdOutLogLevel,
         stdErrLogLevel,
-        pathToJavaAgent
-        );
+        pathToJavaAgent,
+        testRunnerWorkerMaxRuns);
   }
 
   @VisibleForTesting
@@ -178,7 +187,8 @@ public class JUnitStep extends ShellStep {
       Optional<Long> testRuleTimeoutMs,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
-      Optional<String> pathToJavaAgent) {
+      Optional<String> pathToJavaAgent,
+      Optional<Integer> testRunnerWorkerMaxRuns) {
     super(filesystem.getRootPath());
     this.filesystem = filesystem;
     this.classpathEntries = ImmutableSet.copyOf(classpathEntries);
@@ -199,6 +209,7 @@ public class JUnitStep extends ShellStep {
     this.stdOutLogLevel = stdOutLogLevel;
     this.stdErrLogLevel = stdErrLogLevel;
     this.pathToJavaAgent = pathToJavaAgent;
+    this.testRunnerWorkerMaxRuns = testRunnerWorkerMaxRuns;
   }
 
   @Override
@@ -206,25 +217,91 @@ public class JUnitStep extends ShellStep {
     return "junit";
   }
 
+  @Override
+  public int execute(ExecutionContext context) throws InterruptedException {
+    if (!canUseTestRunnerWorker(context)) {
+      return super.execute(context);
+    }
+
+    // System properties from vmArgs are set for the run, overriding any of our own, just as the
+    // last -D flag for a property wins.
+    Map<String, String> properties = new LinkedHashMap<>(getSystemProperties());
+    for (String vmArg : vmArgs) {
+      String property = vmArg.substring("-D".length());
+      int equals = property.indexOf('=');
+      if (equals < 0) {
+        properties.put(property, "");
+      } else {
+        properties.put(property.substring(0, equals), property.substring(equals + 1));
+      }
+    }
+
+    Optional<Path> logFile = Optional.absent();
+    if (tmpDirectory.isPresent()) {
+      logFile = Optional.of(filesystem.resolve(tmpDirectory.get()).resolve("test-runner.log"));
+    }
+
+    Optional<Integer> exitCode;
+    try {
+      exitCode = context.getTestRunnerWorkerPool().run(
+          ImmutableList.of(
+              "java",
+              "-classpath",
+              testRunnerClasspath.toString(),
+              TEST_RUNNER_WORKER_CLASS_NAME),
+          filesystem.getRootPath(),
+          FluentIterable.from(classpathEntries).append(testRunnerClasspath.toString()).toList(),
+          ImmutableMap.copyOf(properties),
+          logFile,
+          getTestRunnerClassName(),
+          getTestRunnerArgs(context),
+          testRunnerWorkerMaxRuns.get(),
+          testRuleTimeoutMs);
+    } catch (IOException e) {
+      e.printStackTrace(context.getStdErr());
+      return 1;
+    }
+
+    // As when the tests have a JVM of their own, a time out doesn't fail the step, so that the
+    // results of the tests which finished can still be read.
+    if (!exitCode.isPresent()) {
+      hasTimedOut = true;
+      return 0;
+    }
+    return exitCode.get();
+  }
+
+  /**
+   * Tests can share a warm test runner JVM unless they need one set up especially for them: with
+   * an agent or debugger attached, native libraries or VM arguments other than system properties.
+   */
+  private boolean canUseTestRunnerWorker(ExecutionContext context) {
+    if (!testRunnerWorkerMaxRuns.isPresent() ||
+        type != TestType.JUNIT ||
+        isCodeCoverageEnabled ||
+        isDebugEnabled ||
+        pathToJavaAgent.isPresent() ||
+        !nativeLibsEnvironment.isEmpty() ||
+        context.getVerbosity().shouldUseVerbosityFlagIfAvailable()) {
+      return false;
+    }
+    for (String vmArg : vmArgs) {
+      if (!vmArg.startsWith("-D")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   @Override
   protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
     ImmutableList.Builder<String> args = ImmutableList.builder();
     args.add("java");
 
-    if (tmpDirectory.isPresent()) {
-      args.add(
-          String.format(
-              "-Djava.io.tmpdir=%s",
-              filesystem.resolve(tmpDirectory.get())));
+    for (Map.Entry<String, String> property : getSystemProperties().entrySet()) {
+      args.add(String.format("-D%s=%s", property.getKey(), property.getValue()));
     }
 
-    // NOTE(agallagher): These propbably don't belong here, but buck integration tests need
-    // to find the test runner classes, so propagate these down via the relevant properties.
-    args.add(
-        String.format(
-            "-Dbuck.testrunner_classes=%s",
-            testRunnerClasspath));
-
     if (isCodeCoverageEnabled) {
       args.add(String.format("-javaagent:%s=destfile=%s/%s,append=true",
           PATH_TO_JACOCO_AGENT_JAR,
@@ -236,20 +313,6 @@ public class JUnitStep extends ShellStep {
       args.add(String.format("-agentpath:%s", pathToJavaAgent.get()));
     }
 
-    // Include the buildId
-    args.add(String.format("-D%s=%s", BUILD_ID_PROPERTY, buildId));
-
-    // Include the baseDir
-    args.add(String.format("-D%s=%s", MODULE_BASE_PATH_PROPERTY, modulePath));
-
-    // Include log levels
-    if (stdOutLogLevel.isPresent()) {
-      args.add(String.format("-D%s=%s", STD_OUT_LOG_LEVEL_PROPERTY, stdOutLogLevel.get()));
-    }
-    if (stdErrLogLevel.isPresent()) {
-      args.add(String.format("-D%s=%s", STD_ERR_LOG_LEVEL_PROPERTY, stdErrLogLevel.get()));
-    }
-
     if (isDebugEnabled) {
       // This is the default config used by IntelliJ. By doing this, all a user
       // needs to do is create a new "Remote" debug config. Note that we start
@@ -277,14 +340,56 @@ public class JUnitStep extends ShellStep {
 
     // Specify the Java class whose main() method should be run. This is the class that is
     // responsible for running the tests.
+    args.add(getTestRunnerClassName());
+    args.addAll(getTestRunnerArgs(context));
+
+    return args.build();
+  }
+
+  /**
+   * @return the system properties the test runner needs, other than those in {@code vmArgs}.
+   */
+  private ImmutableMap<String, String> getSystemProperties() {
+    ImmutableMap.Builder<String, String> properties = ImmutableMap.builder();
+
+    if (tmpDirectory.isPresent()) {
+      properties.put("java.io.tmpdir", filesystem.resolve(tmpDirectory.get()).toString());
+    }
+
+    // NOTE(agallagher): These propbably don't belong here, but buck integration tests need
+    // to find the test runner classes, so propagate these down via the relevant properties.
+    properties.put("buck.testrunner_classes", testRunnerClasspath.toString());
+
+    // Include the buildId
+    properties.put(BUILD_ID_PROPERTY, buildId.toString());
+
+    // Include the baseDir
+    properties.put(MODULE_BASE_PATH_PROPERTY, modulePath.toString());
+
+    // Include log levels
+    if (stdOutLogLevel.isPresent()) {
+      properties.put(STD_OUT_LOG_LEVEL_PROPERTY, stdOutLogLevel.get().toString());
+    }
+    if (stdErrLogLevel.isPresent()) {
+      properties.put(STD_ERR_LOG_LEVEL_PROPERTY, stdErrLogLevel.get().toString());
+    }
+
+    return properties.build();
+  }
+
+  private String getTestRunnerClassName() {
     if (TestType.JUNIT == type) {
-      args.add(JUNIT_TEST_RUNNER_CLASS_NAME);
+      return JUNIT_TEST_RUNNER_CLASS_NAME;
     } else if (TestType.TESTNG == type) {
-      args.add(TESTNG_TEST_RUNNER_CLASS_NAME);
+      return TESTNG_TEST_RUNNER_CLASS_NAME;
     } else {
       throw new IllegalArgumentException(
           "java_test: unrecognized type " + type + ", expected eg. junit or testng");
     }
+  }
+
+  private ImmutableList<String> getTestRunnerArgs(ExecutionContext context) {
+    ImmutableList.Builder<String> args = ImmutableList.builder();
 
     // The first argument to the test runner is where the test results should be written. It is not
     // reliable to write test results to stdout or stderr because there may be output from the unit
@@ -116,9 +116,14 @@ public class JavaTest
   @Nullable
   private JUnitStep junit;
 
+  @Nullable
+  private ShardedJUnitStep shardedJunit;
+
   @AddToRuleKey
   private final boolean runTestSeparately;
 
+  private final int shards;
+
   private final Optional<Path> testTempDirOverride;
 
   protected JavaTest(
@@ -140,6 +145,7 @@ public class JavaTest
       Optional<String> mavenCoords,
       Optional<Long> testRuleTimeoutMs,
       boolean runTestSeparately,
+      int shards,
       Optional<Level> stdOutLogLevel,
       Optional<Level> stdErrLogLevel,
       Optional<Path> testTempDirOverride) {
@@ -167,6 +173,8 @@ public class JavaTest
     this.testType = testType;
     this.testRuleTimeoutMs = testRuleTimeoutMs;
     this.runTestSeparately = runTestSeparately;
+    Preconditions.checkArgument(shards > 0, "%s: shards must be positive", getBuildTarget());
+    this.shards = shards;
     this.stdOutLogLevel = stdOutLogLevel;
     this.stdErrLogLevel = stdErrLogLevel;
     this.testTempDirOverride = testTempDirOverride;
@@ -206,10 +214,20 @@ public class JavaTest
       TestRunningOptions options,
       Optional<Path> outDir,
       Optional<Path> tempDir) {
+    return getJUnitStep(
+        executionContext,
+        options,
+        reorderClasses(getClassNamesForSources(), options.isShufflingTests()),
+        outDir,
+        tempDir);
+  }
 
-    Set<String> testClassNames = getClassNamesForSources();
-    Iterable<String> reorderedTestClasses =
-        reorderClasses(testClassNames, options.isShufflingTests());
+  private JUnitStep getJUnitStep(
+      ExecutionContext executionContext,
+      TestRunningOptions options,
+      Iterable<String> reorderedTestClasses,
+      Optional<Path> outDir,
+      Optional<Path> tempDir) {
 
     ImmutableList<String> properVmArgs = amendVmArgs(
         this.vmArgs,
@@ -233,7 +251,10 @@ public class JavaTest
         testRuleTimeoutMs,
         stdOutLogLevel,
         stdErrLogLevel,
-        options.getPathToJavaAgent());
+        options.getPathToJavaAgent(),
+        options.isUsingTestRunnerWorkers()
+            ? Optional.of(options.getTestRunnerWorkerMaxRuns())
+            : Optional.<Integer>absent());
   }
 
   /**
@@ -259,8 +280,41 @@ public class JavaTest
     ImmutableList.Builder<Step> steps = ImmutableList.builder();
     Path pathToTestOutput = getPathToTestOutputDirectory();
     Path tmpDirectory = getPathToTmpDirectory();
+
+    // Shards can't share the debugger port, so always run in a single JVM when debugging.
+    int numShards = executionContext.isDebugEnabled() ? 1 : shards;
+    if (numShards > 1 && testClassNames.size() > 1) {
+      // Balance the shards using the durations from the last run, before they're cleaned out.
+      ImmutableMap<String, Long> durations =
+          readPreviousTestClassDurations(pathToTestOutput, testClassNames);
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToTestOutput));
+      steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), tmpDirectory));
+      ImmutableList.Builder<JUnitStep> shardSteps = ImmutableList.builder();
+      ImmutableList<ImmutableList<String>> classShards =
+          ShardedJUnitStep.shardClasses(
+              reorderClasses(testClassNames, options.isShufflingTests()),
+              durations,
+              numShards);
+      for (int i = 0; i < classShards.size(); i++) {
+        Path shardTmpDirectory = tmpDirectory.resolve("shard-" + i);
+        steps.add(new MkdirStep(getProjectFilesystem(), shardTmpDirectory));
+        shardSteps.add(
+            getJUnitStep(
+                executionContext,
+                options,
+                classShards.get(i),
+                Optional.of(pathToTestOutput),
+                Optional.of(shardTmpDirectory)));
+      }
+      junit = null;
+      shardedJunit = new ShardedJUnitStep(shardSteps.build());
+      steps.add(shardedJunit);
+      return steps.build();
+    }
+
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), pathToTestOutput));
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), tmpDirectory));
+    shardedJunit = null;
     junit =
         getJUnitStep(
             executionContext,
@@ -271,7 +325,31 @@ public class JavaTest
     return steps.build();
   }
 
-  private static Iterable<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
+  /**
+   * @return the run times of the test classes whose results from a previous run are still in
+   *     {@code pathToTestOutput}.
+   */
+  private ImmutableMap<String, Long> readPreviousTestClassDurations(
+      Path pathToTestOutput,
+      Set<String> testClassNames) {
+    ImmutableMap.Builder<String, Long> durations = ImmutableMap.builder();
+    Path outputDirectory = getProjectFilesystem().resolve(pathToTestOutput);
+    for (String testClass : testClassNames) {
+      Path testResultFile = outputDirectory.resolve(testClass + ".xml");
+      if (!Files.isRegularFile(testResultFile)) {
+        continue;
+      }
+      try {
+        durations.put(testClass, XmlTestResultParser.parse(testResultFile).getTotalTime());
+      } catch (IOException | RuntimeException e) {
+        // The durations only balance the shards, so a missing or unreadable result is fine.
+        LOG.debug(e, "Could not read previous results of %s from %s", testClass, testResultFile);
+      }
+    }
+    return durations.build();
+  }
+
+  private static List<String> reorderClasses(Set<String> testClassNames, boolean shuffle) {
     Random rng;
     if (shuffle) {
       // This is a runtime-seed reorder, which always produces a new order.
@@ -433,7 +511,10 @@ public class JavaTest
               getPathToTestOutputDirectory().resolve(path));
           if (!isUsingTestSelectors && !Files.isRegularFile(testResultFile)) {
             String message;
-            if (Preconditions.checkNotNull(junit).hasTimedOut()) {
+            boolean hasTimedOut = shardedJunit != null ?
+                shardedJunit.hasTimedOut() :
+                Preconditions.checkNotNull(junit).hasTimedOut();
+            if (hasTimedOut) {
               message = "test timed out before generating results file";
             } else {
               message = "test exited before generating results file";
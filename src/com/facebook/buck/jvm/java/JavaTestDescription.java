@@ -145,6 +145,7 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
                 args.mavenCoords,
                 args.testRuleTimeoutMs.or(defaultTestRuleTimeoutMs),
                 args.getRunTestSeparately(),
+                validateShards(args.getShards(), params.getBuildTarget()),
                 args.stdOutLogLevel,
                 args.stdErrLogLevel,
                 testTempDirOverride));
@@ -181,6 +182,19 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     return sourceUnderTest.build();
   }
 
+  /**
+   * @return {@code shards}, after checking that the build file asked for at least one shard.
+   */
+  public static int validateShards(int shards, BuildTarget owner) {
+    if (shards < 1) {
+      throw new HumanReadableException(
+          "%s: shards must be a positive number, but it is %d.",
+          owner,
+          shards);
+    }
+    return shards;
+  }
+
   @SuppressFieldNotInitialized
   public static class Arg extends JavaLibraryDescription.Arg implements HasSourceUnderTest {
     public Optional<ImmutableSortedSet<String>> contacts;
@@ -189,6 +203,7 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     public Optional<ImmutableList<String>> vmArgs;
     public Optional<TestType> testType;
     public Optional<Boolean> runTestSeparately;
+    public Optional<Integer> shards;
     public Optional<Level> stdErrLogLevel;
     public Optional<Level> stdOutLogLevel;
     public Optional<String> pathToJavaAgent;
@@ -204,6 +219,10 @@ public class JavaTestDescription implements Description<JavaTestDescription.Arg>
     public boolean getRunTestSeparately() {
       return runTestSeparately.or(false);
     }
+
+    public int getShards() {
+      return shards.or(1);
+    }
   }
 
   public static class CxxLibraryEnhancement {
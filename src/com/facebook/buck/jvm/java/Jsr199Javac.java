@@ -62,7 +62,6 @@ import javax.annotation.processing.Processor;
 import javax.tools.Diagnostic;
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 
@@ -123,7 +122,11 @@ public abstract class Jsr199Javac implements Javac {
       Optional<Path> workingDirectory) {
     JavaCompiler compiler = createCompiler(context, resolver);
 
-    StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+    // File managers are reused across compilations so that the jars they have already opened,
+    // notably the bootclasspath, do not have to be opened and indexed again.
+    StandardJavaFileManager fileManager = context.getJavaFileManagerPool().acquire(
+        compiler,
+        options);
     Iterable<? extends JavaFileObject> compilationUnits = ImmutableSet.of();
     try {
       compilationUnits = createCompilationUnits(
@@ -131,7 +134,7 @@ public abstract class Jsr199Javac implements Javac {
           filesystem.getAbsolutifier(),
           javaSourceFilePaths);
     } catch (IOException e) {
-      close(fileManager, compilationUnits);
+      release(context, compiler, options, fileManager, compilationUnits);
       e.printStackTrace(context.getStdErr());
       return 1;
     }
@@ -147,7 +150,7 @@ public abstract class Jsr199Javac implements Javac {
                 .transform(ARGFILES_ESCAPER),
             pathToSrcsList.get());
       } catch (IOException e) {
-        close(fileManager, compilationUnits);
+        release(context, compiler, options, fileManager, compilationUnits);
         context.logError(
             e,
             "Cannot write list of .java files to compile to %s file! Terminating compilation.",
@@ -193,7 +196,7 @@ public abstract class Jsr199Javac implements Javac {
       } catch (IOException e) {
         LOG.warn(e, "Unable to close annotation processor class loader. We may be leaking memory.");
       } finally {
-        close(fileManager, compilationUnits);
+        release(context, compiler, options, fileManager, compilationUnits);
       }
     } finally {
       // Clear the tracing interface so we have no chance of leaking it to code that shouldn't
@@ -232,14 +235,18 @@ public abstract class Jsr199Javac implements Javac {
     }
   }
 
-  private void close(
-      JavaFileManager fileManager,
+  private void release(
+      ExecutionContext context,
+      JavaCompiler compiler,
+      List<String> options,
+      StandardJavaFileManager fileManager,
       Iterable<? extends JavaFileObject> compilationUnits) {
-    try {
-      fileManager.close();
-    } catch (IOException e) {
-      LOG.warn(e, "Unable to close java filemanager. We may be leaking memory.");
-    }
+    // Keep at most one idle file manager for each compilation that can run at the same time.
+    context.getJavaFileManagerPool().release(
+        compiler,
+        options,
+        fileManager,
+        context.getConcurrencyLimit().threadLimit);
 
     for (JavaFileObject unit : compilationUnits) {
       if (!(unit instanceof ZipEntryJavaFileObject)) {
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several {@link JUnitStep}s, each over a different shard of a rule's test classes,
+ * concurrently.  Every shard writes its per-class results to the same directory, so the results
+ * are read back exactly as if a single JVM had run all of the classes.
+ */
+public class ShardedJUnitStep implements Step {
+
+  private final ImmutableList<JUnitStep> shards;
+
+  public ShardedJUnitStep(ImmutableList<JUnitStep> shards) {
+    Preconditions.checkArgument(!shards.isEmpty());
+    this.shards = shards;
+  }
+
+  public ImmutableList<JUnitStep> getShards() {
+    return shards;
+  }
+
+  @Override
+  public int execute(final ExecutionContext context) throws IOException, InterruptedException {
+    ExecutorService executor =
+        MoreExecutors.newMultiThreadExecutor(
+            "junit-shards",
+            Math.max(1, Math.min(context.getConcurrencyLimit().threadLimit, shards.size())));
+    try {
+      List<Future<Integer>> results = Lists.newArrayList();
+      for (final JUnitStep shard : shards) {
+        results.add(
+            executor.submit(
+                new Callable<Integer>() {
+                  @Override
+                  public Integer call() throws Exception {
+                    return shard.execute(context);
+                  }
+                }));
+      }
+      int exitCode = 0;
+      for (Future<Integer> result : results) {
+        exitCode = Math.max(exitCode, result.get());
+      }
+      return exitCode;
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public boolean hasTimedOut() {
+    for (JUnitStep shard : shards) {
+      if (shard.hasTimedOut()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String getShortName() {
+    return "junit";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("%d junit shards", shards.size());
+  }
+
+  /**
+   * Split {@code testClassNames} into at most {@code numShards} shards with roughly equal expected
+   * run times, by assigning each class, longest first, to the shard with the least work so far.
+   * Classes keep their relative order within each shard.
+   *
+   * @param durations the run times of classes from a previous run.  Classes without one are
+   *     assumed to take the average of those with one.
+   */
+  public static ImmutableList<ImmutableList<String>> shardClasses(
+      List<String> testClassNames,
+      Map<String, Long> durations,
+      int numShards) {
+    Preconditions.checkArgument(numShards > 0);
+    numShards = Math.min(numShards, testClassNames.size());
+    if (numShards == 0) {
+      return ImmutableList.of();
+    }
+
+    long total = 0;
+    int known = 0;
+    for (String testClassName : testClassNames) {
+      Long duration = durations.get(testClassName);
+      if (duration != null) {
+        total += duration;
+        known++;
+      }
+    }
+    long defaultDuration = known == 0 ? 1 : Math.max(1, total / known);
+    final Map<String, Long> expected = Maps.newHashMap();
+    for (String testClassName : testClassNames) {
+      Long duration = durations.get(testClassName);
+      expected.put(testClassName, duration == null ? defaultDuration : duration);
+    }
+
+    // Sort the classes longest first, breaking ties by their original position.
+    final Map<String, Integer> positions = Maps.newHashMap();
+    for (int i = 0; i < testClassNames.size(); i++) {
+      positions.put(testClassNames.get(i), i);
+    }
+    List<String> byDuration = Lists.newArrayList(testClassNames);
+    Collections.sort(
+        byDuration,
+        new Comparator<String>() {
+          @Override
+          public int compare(String a, String b) {
+            int result = Long.compare(expected.get(b), expected.get(a));
+            return result != 0 ? result : Integer.compare(positions.get(a), positions.get(b));
+          }
+        });
+
+    // Each entry is {total expected duration, shard index}.
+    PriorityQueue<long[]> loads =
+        new PriorityQueue<>(
+            numShards,
+            new Comparator<long[]>() {
+              @Override
+              public int compare(long[] a, long[] b) {
+                int result = Long.compare(a[0], b[0]);
+                return result != 0 ? result : Long.compare(a[1], b[1]);
+              }
+            });
+    for (int i = 0; i < numShards; i++) {
+      loads.add(new long[] {0, i});
+    }
+    Map<String, Integer> assignments = Maps.newHashMap();
+    for (String testClassName : byDuration) {
+      long[] load = loads.poll();
+      assignments.put(testClassName, (int) load[1]);
+      load[0] += expected.get(testClassName);
+      loads.add(load);
+    }
+
+    List<ImmutableList.Builder<String>> shards = Lists.newArrayList();
+    for (int i = 0; i < numShards; i++) {
+      shards.add(ImmutableList.<String>builder());
+    }
+    for (String testClassName : testClassNames) {
+      shards.get(assignments.get(testClassName)).add(testClassName);
+    }
+    ImmutableList.Builder<ImmutableList<String>> result = ImmutableList.builder();
+    for (ImmutableList.Builder<String> shard : shards) {
+      result.add(shard.build());
+    }
+    return result.build();
+  }
+
+}
@@ -20,7 +20,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Sets;
-import com.google.common.io.ByteSource;
 
 import org.objectweb.asm.AnnotationVisitor;
 import org.objectweb.asm.ClassVisitor;
@@ -29,10 +28,7 @@ import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
-import java.io.IOException;
 import java.util.SortedSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -150,11 +146,10 @@ class ClassMirror extends ClassVisitor implements Comparable<ClassMirror> {
     return fileName.compareTo(o.fileName);
   }
 
-  public void writeTo(JarOutputStream jar) throws IOException {
-    JarEntry entry = new JarEntry(fileName);
-    entry.setTime(0);
-
-    jar.putNextEntry(entry);
+  /**
+   * @return the class file of the stub, which depends only on the class that was visited.
+   */
+  public byte[] toStubBytes() {
     ClassWriter writer = new ClassWriter(0);
     writer.visit(version, access, name, signature, superName, interfaces);
 
@@ -178,8 +173,7 @@ class ClassMirror extends ClassVisitor implements Comparable<ClassMirror> {
       method.appendTo(writer);
     }
     writer.visitEnd();
-    ByteSource.wrap(writer.toByteArray()).copyTo(jar);
-    jar.closeEntry();
+    return writer.toByteArray();
   }
 
   private static class InnerClass implements Comparable<InnerClass> {
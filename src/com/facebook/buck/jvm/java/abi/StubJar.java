@@ -22,6 +22,16 @@ import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.objectweb.asm.ClassReader;
 
@@ -29,14 +39,55 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 
+/**
+ * Writes a jar holding a stub of every class in a jar or directory.
+ * <p>
+ * Classes may be stubbed in parallel, and stubs may be reused from a cache keyed by the hash of the
+ * class they were made from, so that re-stubbing a library in which few classes changed is cheap.
+ */
 public class StubJar {
 
+  private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+
+  /**
+   * Upper bound on the classes which have been read but whose stubs have not been written yet, so
+   * that a large jar is never held in memory all at once.
+   */
+  private static final int MAX_PENDING_STUBS = 64;
+
   private final Path toMirror;
+  private final ListeningExecutorService executorService;
+  private final Cache<HashCode, byte[]> stubCache;
 
+  /**
+   * Stubs each class on the calling thread, without reusing stubs.
+   */
   public StubJar(Path toMirror) {
+    this(
+        toMirror,
+        MoreExecutors.newDirectExecutorService(),
+        CacheBuilder.newBuilder().maximumSize(0).<HashCode, byte[]>build());
+  }
+
+  /**
+   * @param executorService stubs the classes.
+   * @param stubCache stubs which may be reused, keyed by the SHA-1 of the class they were made
+   *     from.  New stubs are added to it.
+   */
+  public StubJar(
+      Path toMirror,
+      ListeningExecutorService executorService,
+      Cache<HashCode, byte[]> stubCache) {
     this.toMirror = Preconditions.checkNotNull(toMirror);
+    this.executorService = executorService;
+    this.stubCache = stubCache;
   }
 
   public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
@@ -46,25 +97,92 @@ public class StubJar {
       filesystem.createParentDirs(path);
     }
 
-    Walker walker = Walkers.getWalkerFor(toMirror);
+    // Reading the input is sequential, but the classes are stubbed on the executor as soon as they
+    // have been read, and each stub is written as soon as those before it have been.  The stubs
+    // are written in walk order, so the output stays deterministic.
+    final Deque<String> pendingFileNames = new ArrayDeque<>();
+    final Deque<ListenableFuture<byte[]>> pendingStubs = new ArrayDeque<>();
+    boolean isComplete = false;
     try (
         OutputStream fos = filesystem.newFileOutputStream(path);
-        JarOutputStream jar = new JarOutputStream(fos)) {
+        final JarOutputStream jar = new JarOutputStream(fos)) {
+      Walker walker = Walkers.getWalkerFor(toMirror);
       walker.walk(
           new FileAction() {
             @Override
             public void visit(Path relativizedPath, InputStream stream) throws IOException {
-              String fileName = relativizedPath.toString();
+              final String fileName = relativizedPath.toString();
               if (!fileName.endsWith(".class")) {
                 return;
               }
 
-              ClassReader classReader = new ClassReader(stream);
-              ClassMirror visitor = new ClassMirror(fileName);
-              classReader.accept(visitor, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
-              visitor.writeTo(jar);
+              final byte[] contents = ByteStreams.toByteArray(stream);
+              pendingFileNames.add(fileName);
+              pendingStubs.add(
+                  executorService.submit(
+                      new Callable<byte[]>() {
+                        @Override
+                        public byte[] call() {
+                          return getStub(fileName, contents);
+                        }
+                      }));
+
+              while (!pendingStubs.isEmpty() &&
+                  (pendingStubs.size() > MAX_PENDING_STUBS || pendingStubs.peek().isDone())) {
+                writeNextStub(jar, pendingFileNames, pendingStubs);
+              }
             }
           });
+      while (!pendingStubs.isEmpty()) {
+        writeNextStub(jar, pendingFileNames, pendingStubs);
+      }
+      isComplete = true;
+    } finally {
+      if (!isComplete) {
+        // Don't leave a partial ABI jar behind, for instance when ASM rejects a class and
+        // CalculateAbiStep falls back to hashing the input jar.
+        for (ListenableFuture<byte[]> stub : pendingStubs) {
+          stub.cancel(true);
+        }
+        filesystem.deleteFileAtPathIfExists(path);
+      }
+    }
+  }
+
+  private void writeNextStub(
+      JarOutputStream jar,
+      Deque<String> pendingFileNames,
+      Deque<ListenableFuture<byte[]>> pendingStubs) throws IOException {
+    String fileName = pendingFileNames.remove();
+    byte[] stub;
+    try {
+      stub = pendingStubs.remove().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while stubbing " + toMirror, e);
+    } catch (ExecutionException e) {
+      // Callers rely on ASM's IllegalArgumentException to detect classes it cannot read.
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException("Failed to stub " + toMirror, e.getCause());
+    }
+
+    JarEntry entry = new JarEntry(fileName);
+    entry.setTime(0);
+    jar.putNextEntry(entry);
+    jar.write(stub);
+    jar.closeEntry();
+  }
+
+  private byte[] getStub(String fileName, byte[] contents) {
+    HashCode hash = HASH_FUNCTION.hashBytes(contents);
+    byte[] stub = stubCache.getIfPresent(hash);
+    if (stub == null) {
+      ClassReader classReader = new ClassReader(contents);
+      ClassMirror visitor = new ClassMirror(fileName);
+      classReader.accept(visitor, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
+      stub = visitor.toStubBytes();
+      stubCache.put(hash, stub);
     }
+    return stub;
   }
 }
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.model;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.WatchEvents;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link BuildFileTree} backed by an index of every build file in the project: a trie over
+ * directories in which each node records whether its directory has a build file.  The index is
+ * built by a single walk of the filesystem the first time a recursive target pattern needs it, and
+ * is then kept up to date from file change events, so that later lookups never walk the filesystem
+ * again.  Until then, lookups stat the filesystem just as {@link FilesystemBackedBuildFileTree}
+ * does.
+ * <p>
+ * The walk does not follow symbolic links, so that it sees the same tree as the file change
+ * events.  Lookups under a symbolic link to a directory are answered from the filesystem instead.
+ */
+public class IndexedBuildFileTree extends BuildFileTree {
+
+  private static final Logger LOG = Logger.get(IndexedBuildFileTree.class);
+
+  private final ProjectFilesystem projectFilesystem;
+  private final String buildFileName;
+
+  /**
+   * The node of the project root, or null until the index has been built.
+   */
+  @Nullable private Node root;
+
+  /**
+   * Symbolic links to directories found by the walk, relative to the project root.
+   */
+  private final Set<Path> directorySymlinks = new HashSet<>();
+
+  /**
+   * Answers lookups the index cannot, or null until one is needed.  It caches which build files
+   * exist, so it is dropped whenever a build file is added or removed.
+   */
+  @Nullable private FilesystemBackedBuildFileTree filesystemBackedTree;
+
+  public IndexedBuildFileTree(ProjectFilesystem projectFilesystem, String buildFileName) {
+    this.projectFilesystem = projectFilesystem;
+    this.buildFileName = buildFileName;
+  }
+
+  /**
+   * @return paths relative to BuildTarget that contain their own build files.
+   */
+  @Override
+  public synchronized Collection<Path> getChildPaths(BuildTarget target) {
+    Path basePath = target.getBasePath();
+    if (!isIndexed(basePath)) {
+      return getFilesystemBackedTree().getChildPaths(target);
+    }
+
+    ImmutableSet.Builder<Path> childPaths = ImmutableSet.builder();
+    Node node = find(Preconditions.checkNotNull(root), basePath);
+    if (node != null) {
+      for (Map.Entry<String, Node> child : node.getChildren()) {
+        collectBasePaths(
+            Paths.get(child.getKey()),
+            child.getValue(),
+            /* isStoppingAtBuildFiles */ true,
+            ImmutableSet.<Path>of(),
+            childPaths);
+      }
+    }
+    return childPaths.build();
+  }
+
+  /**
+   * Returns the base path for a given path. The base path is the nearest directory at or
+   * above filePath that contains a build file. If no base directory is found, returns absent.
+   */
+  @Override
+  public synchronized Optional<Path> getBasePathOfAncestorTarget(Path filePath) {
+    Path rootPath = projectFilesystem.getRootPath();
+    boolean isAbsolute = filePath.isAbsolute();
+    if (isAbsolute) {
+      if (!filePath.startsWith(rootPath)) {
+        return Optional.absent();
+      }
+      filePath = rootPath.relativize(filePath);
+    }
+
+    Optional<Path> basePath = isIndexed(filePath) ?
+        getIndexedBasePathOfAncestorTarget(filePath) :
+        getFilesystemBackedTree().getBasePathOfAncestorTarget(filePath);
+    if (isAbsolute && basePath.isPresent()) {
+      return Optional.of(rootPath.resolve(basePath.get()));
+    }
+    return basePath;
+  }
+
+  private Optional<Path> getIndexedBasePathOfAncestorTarget(Path filePath) {
+    Node node = Preconditions.checkNotNull(root);
+    Optional<Path> basePath = node.hasBuildFile ?
+        Optional.of(Paths.get("")) :
+        Optional.<Path>absent();
+    for (int i = 0; i < filePath.getNameCount(); i++) {
+      node = node.getChild(filePath.getName(i).toString());
+      if (node == null) {
+        break;
+      }
+      if (node.hasBuildFile) {
+        basePath = Optional.of(filePath.subpath(0, i + 1));
+      }
+    }
+    return basePath;
+  }
+
+  /**
+   * @param basePath the directory, relative to the project root, to look for build files under.
+   * @param ignorePaths directories, relative to the project root, whose build files are skipped.
+   * @return the paths, relative to the project root, of every build file at or under
+   *     {@code basePath}, or absent if a symbolic link to a directory leads to or out of
+   *     {@code basePath}, which only walking the filesystem can follow.
+   */
+  public synchronized Optional<ImmutableSet<Path>> getBuildFilesUnder(
+      Path basePath,
+      Set<Path> ignorePaths)
+      throws IOException {
+    buildIndex();
+    if (!isIndexed(basePath)) {
+      return Optional.absent();
+    }
+
+    ImmutableSet.Builder<Path> basePaths = ImmutableSet.builder();
+    Node node = find(Preconditions.checkNotNull(root), basePath);
+    if (node != null) {
+      collectBasePaths(
+          basePath,
+          node,
+          /* isStoppingAtBuildFiles */ false,
+          ignorePaths,
+          basePaths);
+    }
+
+    ImmutableSet.Builder<Path> buildFiles = ImmutableSet.builder();
+    for (Path directory : basePaths.build()) {
+      buildFiles.add(directory.resolve(buildFileName));
+    }
+    return Optional.of(buildFiles.build());
+  }
+
+  /**
+   * Updates the index for a build file which has been added or removed.  {@link Path}s contained
+   * within events must all be relative to the {@link ProjectFilesystem} root.
+   */
+  public synchronized void onFileSystemChange(WatchEvent<?> event) {
+    if (!WatchEvents.isPathChangeEvent(event)) {
+      // Non-path change event, likely an overflow due to many change events: rebuild the index
+      // when it is next needed.
+      LOG.debug("Dropping the build file index on overflow.");
+      dropIndex();
+      filesystemBackedTree = null;
+      return;
+    }
+
+    Path path = (Path) event.context();
+    if (!WatchEvents.isPathCreateOrDeleteEvent(event)) {
+      return;
+    }
+    if (path.endsWith(buildFileName)) {
+      filesystemBackedTree = null;
+    }
+    if (root == null) {
+      // Nothing has been indexed yet.
+      return;
+    }
+
+    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+      try {
+        if (projectFilesystem.isSymLink(path) && projectFilesystem.isDirectory(path)) {
+          directorySymlinks.add(path);
+        }
+      } catch (IOException e) {
+        LOG.debug(e, "Unable to check whether %s is a symbolic link, dropping the index.", path);
+        dropIndex();
+        return;
+      }
+    } else {
+      Iterator<Path> symlinks = directorySymlinks.iterator();
+      while (symlinks.hasNext()) {
+        if (symlinks.next().startsWith(path)) {
+          symlinks.remove();
+        }
+      }
+    }
+
+    if (!path.endsWith(buildFileName)) {
+      return;
+    }
+
+    Path directory = path.getParent() == null ? Paths.get("") : path.getParent();
+    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+      if (!isIgnored(directory)) {
+        add(root, directory);
+      }
+    } else {
+      remove(root, directory);
+    }
+  }
+
+  private void buildIndex() throws IOException {
+    if (root != null) {
+      return;
+    }
+
+    final Node newRoot = new Node();
+    final Set<Path> newDirectorySymlinks = new HashSet<>();
+    final Set<Path> ignorePaths = projectFilesystem.getIgnorePaths();
+    projectFilesystem.walkRelativeFileTree(
+        Paths.get(""),
+        EnumSet.noneOf(FileVisitOption.class),
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (ignorePaths.contains(dir)) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (attrs.isSymbolicLink() && projectFilesystem.isDirectory(file)) {
+              newDirectorySymlinks.add(file);
+            } else if (buildFileName.equals(file.getFileName().toString())) {
+              add(newRoot, file.getParent() == null ? Paths.get("") : file.getParent());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            // A file which vanished or cannot be read has no say in the index.
+            LOG.debug(exc, "Skipping %s while indexing build files.", file);
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+            if (exc != null) {
+              LOG.debug(exc, "Unable to list all of %s while indexing build files.", dir);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+    root = newRoot;
+    directorySymlinks.addAll(newDirectorySymlinks);
+  }
+
+  private void dropIndex() {
+    root = null;
+    directorySymlinks.clear();
+  }
+
+  /**
+   * @return whether the index has been built and can answer lookups of {@code path}, relative to
+   *     the project root: that is, no symbolic link to a directory leads to or out of it.
+   */
+  private boolean isIndexed(Path path) {
+    if (root == null) {
+      return false;
+    }
+    boolean isProjectRoot = path.toString().isEmpty();
+    for (Path symlink : directorySymlinks) {
+      if (isProjectRoot || path.startsWith(symlink) || symlink.startsWith(path)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private FilesystemBackedBuildFileTree getFilesystemBackedTree() {
+    if (filesystemBackedTree == null) {
+      filesystemBackedTree = new FilesystemBackedBuildFileTree(projectFilesystem, buildFileName);
+    }
+    return filesystemBackedTree;
+  }
+
+  private boolean isIgnored(Path directory) {
+    Set<Path> ignorePaths = projectFilesystem.getIgnorePaths();
+    for (Path path = directory; path != null; path = path.getParent()) {
+      if (ignorePaths.contains(path)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the node of {@code directory}, or null if there are no build files at or under it.
+   */
+  @Nullable
+  private static Node find(Node root, Path directory) {
+    Node node = root;
+    for (Path name : directory) {
+      if (name.toString().isEmpty()) {
+        continue;
+      }
+      node = node.getChild(name.toString());
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  private static void add(Node root, Path directory) {
+    Node node = root;
+    for (Path name : directory) {
+      if (name.toString().isEmpty()) {
+        continue;
+      }
+      node = node.getOrCreateChild(name.toString());
+    }
+    node.hasBuildFile = true;
+  }
+
+  private static void remove(Node root, Path directory) {
+    List<Node> nodes = new ArrayList<>();
+    List<String> names = new ArrayList<>();
+    Node node = root;
+    for (Path name : directory) {
+      if (name.toString().isEmpty()) {
+        continue;
+      }
+      nodes.add(node);
+      names.add(name.toString());
+      node = node.getChild(name.toString());
+      if (node == null) {
+        return;
+      }
+    }
+    node.hasBuildFile = false;
+
+    // Drop the nodes which no longer lead to any build file.
+    for (int i = nodes.size() - 1; i >= 0 && node.isEmpty(); i--) {
+      node = nodes.get(i);
+      node.removeChild(names.get(i));
+    }
+  }
+
+  private static void collectBasePaths(
+      Path path,
+      Node node,
+      boolean isStoppingAtBuildFiles,
+      Set<Path> ignorePaths,
+      ImmutableSet.Builder<Path> basePaths) {
+    if (ignorePaths.contains(path)) {
+      return;
+    }
+    if (node.hasBuildFile) {
+      basePaths.add(path);
+      if (isStoppingAtBuildFiles) {
+        return;
+      }
+    }
+    for (Map.Entry<String, Node> child : node.getChildren()) {
+      collectBasePaths(
+          path.resolve(child.getKey()),
+          child.getValue(),
+          isStoppingAtBuildFiles,
+          ignorePaths,
+          basePaths);
+    }
+  }
+
+  /** A directory which has a build file, or has a descendant with one. */
+  private static class Node {
+
+    private boolean hasBuildFile = false;
+
+    /** Subdirectories by name: created lazily to save memory. */
+    @Nullable
+    private TreeMap<String, Node> children;
+
+    @Nullable
+    Node getChild(String name) {
+      return children == null ? null : children.get(name);
+    }
+
+    Node getOrCreateChild(String name) {
+      if (children == null) {
+        children = new TreeMap<>();
+      }
+      Node child = children.get(name);
+      if (child == null) {
+        child = new Node();
+        children.put(name, child);
+      }
+      return child;
+    }
+
+    void removeChild(String name) {
+      if (children != null) {
+        children.remove(name);
+        if (children.isEmpty()) {
+          children = null;
+        }
+      }
+    }
+
+    boolean isEmpty() {
+      return !hasBuildFile && children == null;
+    }
+
+    Iterable<Map.Entry<String, Node>> getChildren() {
+      return children == null ?
+          ImmutableSet.<Map.Entry<String, Node>>of() :
+          children.entrySet();
+    }
+  }
+}
@@ -18,9 +18,12 @@ package com.facebook.buck.parser;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.IndexedBuildFileTree;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSet;
 
 import org.immutables.value.Value;
@@ -152,4 +155,29 @@ abstract class AbstractBuildFileSpec {
     return buildFiles.build();
   }
 
+  /**
+   * Like {@link #findBuildFiles(Cell)}, but answers recursive specs from {@code buildFileTree},
+   * an index of the cell's build files, rather than by walking the filesystem.
+   */
+  public ImmutableSet<Path> findBuildFiles(Cell cell, IndexedBuildFileTree buildFileTree)
+      throws IOException {
+    // The index leaves out the filesystem's ignored directories, so it can only answer specs
+    // which ignore them too.
+    if (!isRecursive() ||
+        !getRecursiveIgnorePaths().containsAll(cell.getFilesystem().getIgnorePaths())) {
+      return findBuildFiles(cell);
+    }
+
+    Optional<ImmutableSet<Path>> buildFiles =
+        buildFileTree.getBuildFilesUnder(getBasePath(), getRecursiveIgnorePaths());
+    if (!buildFiles.isPresent() || buildFiles.get().isEmpty()) {
+      // Walk anyway, to follow symbolic links and so that a missing base path is reported just as
+      // before.
+      return findBuildFiles(cell);
+    }
+    return FluentIterable.from(buildFiles.get())
+        .transform(cell.getFilesystem().getAbsolutifier())
+        .toSet();
+  }
+
 }
@@ -34,13 +34,11 @@ import com.facebook.buck.json.JsonObjectHashing;
 import com.facebook.buck.json.ProjectBuildFileParser;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuckVersion;
-import com.facebook.buck.model.BuildFileTree;
-import com.facebook.buck.model.BuildId;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.BuildTargetPattern;
-import com.facebook.buck.model.FilesystemBackedBuildFileTree;
 import com.facebook.buck.model.Flavored;
+import com.facebook.buck.model.IndexedBuildFileTree;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.rules.ActionGraph;
@@ -62,7 +60,6 @@ import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
-import com.google.common.base.Supplier;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ArrayListMultimap;
@@ -128,60 +125,7 @@ public class Parser {
 
   private static final ConstructorArgMarshaller marshaller = new ConstructorArgMarshaller();
 
-  /**
-   * A cached BuildFileTree which can be invalidated and lazily constructs new BuildFileTrees.
-   * TODO(user): refactor this as a generic CachingSupplier<T> when it's needed elsewhere.
-   */
-  @VisibleForTesting
-  static class BuildFileTreeCache implements Supplier<BuildFileTree> {
-    private final Supplier<BuildFileTree> supplier;
-    @Nullable private BuildFileTree buildFileTree;
-    private BuildId currentBuildId = new BuildId();
-    private BuildId buildTreeBuildId = new BuildId();
-
-    /**
-     * @param buildFileTreeSupplier each call to get() must reconstruct the tree from disk.
-     */
-    public BuildFileTreeCache(Supplier<BuildFileTree> buildFileTreeSupplier) {
-      this.supplier = buildFileTreeSupplier;
-    }
-
-    /**
-     * Invalidate the current build file tree if it was not created during this build.
-     * If the BuildFileTree was created during the current build it is still valid and
-     * recreating it would generate an identical tree.
-     */
-    public synchronized void invalidateIfStale() {
-      if (!currentBuildId.equals(buildTreeBuildId)) {
-        buildFileTree = null;
-      }
-    }
-
-    /**
-     * @return the cached BuildFileTree, or a new lazily constructed BuildFileTree.
-     */
-    @Override
-    public synchronized BuildFileTree get() {
-      if (buildFileTree == null) {
-        buildTreeBuildId = currentBuildId;
-        buildFileTree = supplier.get();
-      }
-      return buildFileTree;
-    }
-
-    /**
-     * Stores the current build id, which is used to determine when the BuildFileTree is invalid.
-     */
-    public synchronized void onCommandStartedEvent(BuckEvent event) {
-      // Ideally, the type of event would be CommandEvent.Started, but that would introduce
-      // a dependency on com.facebook.buck.cli.
-      Preconditions.checkArgument(event.getEventName().equals("CommandStarted"),
-          "event should be of type CommandEvent.Started, but was: %s.",
-          event);
-      currentBuildId = event.getBuildId();
-    }
-  }
-  private final BuildFileTreeCache buildFileTreeCache;
+  private final IndexedBuildFileTree buildFileTree;
 
   public static Parser createBuildFileParser(
       final Cell cell,
@@ -190,36 +134,35 @@ public class Parser {
       throws IOException, InterruptedException {
     return new Parser(
         cell,
-        /* Calls to get() will reconstruct the build file tree by calling constructBuildFileTree. */
-        // TODO(simons): Consider momoizing the suppler.
-        new Supplier<BuildFileTree>() {
-          @Override
-          public BuildFileTree get() {
-            return new FilesystemBackedBuildFileTree(
-                cell.getFilesystem(),
-                cell.getBuildFileName());  // TODO(simons): This is doomed to failure.
-          }
-        },
+        new IndexedBuildFileTree(cell.getFilesystem(), cell.getBuildFileName()),
         useWatchmanGlob,
         allowSymlinks);
   }
 
   /**
-   * @param buildFileTreeSupplier each call to getInput() must reconstruct the build file tree from
+   * @param buildFileTree the index of the cell's build files, which the parser keeps up to date.
    */
   @VisibleForTesting
   Parser(
       Cell cell,
-      Supplier<BuildFileTree> buildFileTreeSupplier,
+      IndexedBuildFileTree buildFileTree,
       boolean useWatchmanGlob,
       ParserConfig.AllowSymlinks allowSymlinks)
       throws IOException, InterruptedException {
     this.cell = cell;
     this.useWatchmanGlob = useWatchmanGlob;
-    this.buildFileTreeCache = new BuildFileTreeCache(buildFileTreeSupplier);
+    this.buildFileTree = buildFileTree;
     this.state = new CachedState(cell.getBuildFileName(), allowSymlinks);
   }
 
+  /**
+   * @return the index of the cell's build files, which is kept up to date as files change, so it
+   *     may be shared by all the commands run by a daemon.
+   */
+  public IndexedBuildFileTree getBuildFileTree() {
+    return buildFileTree;
+  }
+
   /**
    * The rules in a build file are cached if that specific build file was parsed or all build
    * files in the project were parsed and the includes and environment haven't changed since the
@@ -265,7 +208,7 @@ public class Parser {
     ImmutableSet.Builder<BuildTarget> targets = ImmutableSet.builder();
 
     // Iterate over the build files the given target node spec returns.
-    for (Path buildFile : spec.getBuildFileSpec().findBuildFiles(cell)) {
+    for (Path buildFile : spec.getBuildFileSpec().findBuildFiles(cell, buildFileTree)) {
 
       // Format a proper error message for non-existent build files.
       if (!cell.getFilesystem().isFile(buildFile)) {
@@ -508,7 +451,7 @@ public class Parser {
         continue;
       }
 
-      Optional<Path> basePath = buildFileTreeCache.get().getBasePathOfAncestorTarget(buildFilePath);
+      Optional<Path> basePath = buildFileTree.getBasePathOfAncestorTarget(buildFilePath);
       Preconditions.checkState(basePath.isPresent());
       Path targetBasePath = MorePaths.relativize(
           cell.getFilesystem().getRootPath(),
@@ -863,21 +806,6 @@ public class Parser {
   }
 
 
-  /**
-   * Called when a new command is executed and used to signal to the BuildFileTreeCache
-   * that reconstructing the build file tree may result in a different BuildFileTree.
-   */
-  @Subscribe
-  public synchronized void onCommandStartedEvent(BuckEvent event) {
-    // Ideally, the type of event would be CommandEvent.Started, but that would introduce
-    // a dependency on com.facebook.buck.cli.
-    Preconditions.checkArgument(
-        event.getEventName().equals("CommandStarted"),
-        "event should be of type CommandEvent.Started, but was: %s.",
-        event);
-    buildFileTreeCache.onCommandStartedEvent(event);
-  }
-
   /**
    * Called when file change events are posted to the file change EventBus to invalidate cached
    * build rules if required. {@link Path}s contained within events must all be relative to the
@@ -897,12 +825,6 @@ public class Parser {
 
       if (WatchEvents.isPathCreateOrDeleteEvent(event)) {
 
-        if (path.endsWith(new ParserConfig(cell.getBuckConfig()).getBuildFileName())) {
-
-          // If a build file has been added or removed, reconstruct the build file tree.
-          buildFileTreeCache.invalidateIfStale();
-        }
-
         // Added or removed files can affect globs, so invalidate the package build file
         // "containing" {@code path} unless its filename matches a temp file pattern.
         if (!isTempFile(path)) {
@@ -918,9 +840,12 @@ public class Parser {
     } else {
       // Non-path change event, likely an overflow due to many change events: invalidate everything.
       LOG.debug("Parser invalidating entire cache on overflow.");
-      buildFileTreeCache.invalidateIfStale();
       invalidateCache();
     }
+
+    // Only now update the index of build files, so that adding or removing a build file has first
+    // invalidated the package which used to contain it.
+    buildFileTree.onFileSystemChange(event);
   }
 
   /**
@@ -949,7 +874,7 @@ public class Parser {
 
     // Find the closest ancestor package for the input path.  We'll definitely need to invalidate
     // that.
-    Optional<Path> packageBuildFile = buildFileTreeCache.get().getBasePathOfAncestorTarget(path);
+    Optional<Path> packageBuildFile = buildFileTree.getBasePathOfAncestorTarget(path);
     packageBuildFiles.addAll(packageBuildFile.asSet());
 
     // If we're *not* enforcing package boundary checks, it's possible for multiple ancestor
@@ -957,7 +882,7 @@ public class Parser {
     if (!cell.isEnforcingBuckPackageBoundaries()) {
       while (packageBuildFile.isPresent() && packageBuildFile.get().getParent() != null) {
         packageBuildFile =
-            buildFileTreeCache.get()
+            buildFileTree
                 .getBasePathOfAncestorTarget(packageBuildFile.get().getParent());
         packageBuildFiles.addAll(packageBuildFile.asSet());
       }
@@ -1343,7 +1268,7 @@ public class Parser {
         BuildRuleFactoryParams factoryParams = new BuildRuleFactoryParams(
             targetCell.getFilesystem(),
             buildTarget.withoutCell(),
-            buildFileTreeCache.get(),
+            buildFileTree,
             targetCell.isEnforcingBuckPackageBoundaries());
         Object constructorArg = description.createUnpopulatedConstructorArg();
         TargetNode<?> targetNode;
@@ -21,8 +21,12 @@ import com.facebook.buck.util.immutables.BuckStyleImmutable;
 
 import org.immutables.value.Value;
 
+/**
+ * Query results over a whole repository hold hundreds of thousands of these and combine them with
+ * set operations, so their hash codes are computed once, up front.
+ */
 @BuckStyleImmutable
-@Value.Immutable
+@Value.Immutable(prehash = true)
 abstract class AbstractQueryBuildTarget implements QueryTarget {
 
   @Value.Parameter
@@ -35,9 +35,11 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.SortedSet;
 
 /**
  * A binary algebraic set operation.
@@ -71,7 +73,8 @@ class BinaryOperatorExpression extends QueryExpression {
       switch (operator) {
         case INTERSECT:
         case CARET:
-          lhsValue.retainAll(rhsValue);
+          // Looks up every element of the left hand side in the right.
+          lhsValue.retainAll(withFastContains(rhsValue));
           break;
         case UNION:
         case PLUS:
@@ -79,7 +82,10 @@ class BinaryOperatorExpression extends QueryExpression {
           break;
         case EXCEPT:
         case MINUS:
-          lhsValue.removeAll(rhsValue);
+          // Removes each element of the right hand side from the left, unless the left is smaller,
+          // in which case every element of it is looked up in the right instead.
+          lhsValue.removeAll(
+              lhsValue.size() > rhsValue.size() ? rhsValue : withFastContains(rhsValue));
           break;
         //$CASES-OMITTED$
         default:
@@ -89,6 +95,15 @@ class BinaryOperatorExpression extends QueryExpression {
     return lhsValue;
   }
 
+  /**
+   * @return {@code set}, or a hashed copy of it if it is a {@link SortedSet}.  The results of
+   *     target patterns are sorted sets, whose {@code contains} compares targets by name, and for
+   *     sets of a whole repository's targets copying is much cheaper than that.
+   */
+  private static <T> Set<T> withFastContains(Set<T> set) {
+    return set instanceof SortedSet ? new HashSet<>(set) : set;
+  }
+
   @Override
   public void collectTargetPatterns(Collection<String> literals) {
     for (QueryExpression subExpression : operands) {
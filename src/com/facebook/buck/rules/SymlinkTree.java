@@ -19,7 +19,6 @@ package com.facebook.buck.rules;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.collect.ImmutableList;
@@ -110,9 +109,12 @@ public class SymlinkTree
   public ImmutableList<Step> getPostBuildSteps(
       BuildContext context,
       BuildableContext buildableContext) {
-    return ImmutableList.of(
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
-        new SymlinkTreeStep(getProjectFilesystem(), root, resolveLinks()));
+    return ImmutableList.<Step>of(
+        new SymlinkTreeStep(
+            getProjectFilesystem(),
+            root,
+            resolveLinks(),
+            /* incremental */ true));
   }
 
   public Path getRoot() {
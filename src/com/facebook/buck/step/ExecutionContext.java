@@ -25,8 +25,11 @@ import com.facebook.buck.jvm.java.JavaPackageFinder;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.util.Ansi;
 import com.facebook.buck.util.ClassLoaderCache;
+import com.facebook.buck.util.ClassStubCache;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.JavaFileManagerPool;
 import com.facebook.buck.util.ProcessExecutor;
+import com.facebook.buck.util.TestRunnerWorkerPool;
 import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.facebook.buck.util.environment.Platform;
@@ -96,6 +99,15 @@ public abstract class ExecutionContext implements Closeable {
   @Value.Parameter
   public abstract ClassLoaderCache getClassLoaderCache();
 
+  @Value.Parameter
+  public abstract JavaFileManagerPool getJavaFileManagerPool();
+
+  @Value.Parameter
+  public abstract TestRunnerWorkerPool getTestRunnerWorkerPool();
+
+  @Value.Parameter
+  public abstract ClassStubCache getClassStubCache();
+
   @Value.Parameter
   public abstract ConcurrencyLimit getConcurrencyLimit();
 
@@ -125,7 +137,10 @@ public abstract class ExecutionContext implements Closeable {
     return ImmutableExecutionContext.copyOf(this)
         .withConsole(console)
         .withProcessExecutor(new ProcessExecutor(console))
-        .withClassLoaderCache(getClassLoaderCache().addRef());
+        .withClassLoaderCache(getClassLoaderCache().addRef())
+        .withJavaFileManagerPool(getJavaFileManagerPool().addRef())
+        .withTestRunnerWorkerPool(getTestRunnerWorkerPool().addRef())
+        .withClassStubCache(getClassStubCache().addRef());
   }
 
   public void logError(Throwable error, String msg, Object... formatArgs) {
@@ -172,7 +187,13 @@ public abstract class ExecutionContext implements Closeable {
 
   @Override
   public void close() throws IOException {
-    getClassLoaderCache().close();
+    try {
+      getClassStubCache().close();
+      getTestRunnerWorkerPool().close();
+      getJavaFileManagerPool().close();
+    } finally {
+      getClassLoaderCache().close();
+    }
   }
 
   public BuildId getBuildId() {
@@ -196,6 +217,9 @@ public abstract class ExecutionContext implements Closeable {
     @Nullable private JavaPackageFinder javaPackageFinder = null;
     @Nullable private ObjectMapper objectMapper = null;
     private ClassLoaderCache classLoaderCache = new ClassLoaderCache();
+    private JavaFileManagerPool javaFileManagerPool = new JavaFileManagerPool();
+    private TestRunnerWorkerPool testRunnerWorkerPool = new TestRunnerWorkerPool();
+    private ClassStubCache classStubCache = new ClassStubCache();
     private ConcurrencyLimit concurrencyLimit =
         new ConcurrencyLimit(
             /* threadLimit */ Runtime.getRuntime().availableProcessors(),
@@ -221,6 +245,9 @@ public abstract class ExecutionContext implements Closeable {
           Preconditions.checkNotNull(javaPackageFinder),
           Preconditions.checkNotNull(objectMapper),
           Preconditions.checkNotNull(classLoaderCache),
+          Preconditions.checkNotNull(javaFileManagerPool),
+          Preconditions.checkNotNull(testRunnerWorkerPool),
+          Preconditions.checkNotNull(classStubCache),
           Preconditions.checkNotNull(concurrencyLimit),
           adbOptions,
           targetDeviceOptions);
@@ -323,6 +350,21 @@ public abstract class ExecutionContext implements Closeable {
       return this;
     }
 
+    public Builder setJavaFileManagerPool(JavaFileManagerPool javaFileManagerPool) {
+      this.javaFileManagerPool = javaFileManagerPool;
+      return this;
+    }
+
+    public Builder setTestRunnerWorkerPool(TestRunnerWorkerPool testRunnerWorkerPool) {
+      this.testRunnerWorkerPool = testRunnerWorkerPool;
+      return this;
+    }
+
+    public Builder setClassStubCache(ClassStubCache classStubCache) {
+      this.classStubCache = classStubCache;
+      return this;
+    }
+
     public Builder setConcurrencyLimit(ConcurrencyLimit concurrencyLimit) {
       this.concurrencyLimit = concurrencyLimit;
       return this;
@@ -16,25 +16,69 @@
 
 package com.facebook.buck.step.fs;
 
+import com.facebook.buck.io.MoreFiles;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.util.concurrent.MoreExecutors;
+import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+/**
+ * Creates a tree of symlinks under {@code root}.
+ * <p>
+ * In incremental mode, the step owns everything under {@code root}: it compares the existing tree
+ * with the links it should contain, removes anything stale and only creates the links which are
+ * missing, in parallel when there are many of them.
+ */
 public class SymlinkTreeStep implements Step {
 
+  private static final Logger LOG = Logger.get(SymlinkTreeStep.class);
+
+  /**
+   * The number of links each task creates when links are created in parallel.  Trees with fewer
+   * missing links than this are created on the calling thread.
+   */
+  private static final int LINKS_PER_BATCH = 512;
+
   private final ProjectFilesystem filesystem;
   private final Path root;
   private final ImmutableMap<Path, Path> links;
+  private final boolean incremental;
 
   public SymlinkTreeStep(ProjectFilesystem filesystem, Path root, ImmutableMap<Path, Path> links) {
+    this(filesystem, root, links, /* incremental */ false);
+  }
+
+  public SymlinkTreeStep(
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, Path> links,
+      boolean incremental) {
     this.filesystem = filesystem;
     this.root = root;
     this.links = links;
+    this.incremental = incremental;
   }
 
   @Override
@@ -48,13 +92,85 @@ public class SymlinkTreeStep implements Step {
   }
 
   @Override
-  public int execute(ExecutionContext context) {
-    for (ImmutableMap.Entry<Path, Path> ent : links.entrySet()) {
+  public int execute(ExecutionContext context) throws InterruptedException {
+    Map<Path, Path> missing;
+    try {
+      if (!incremental) {
+        missing = links;
+      } else if (Platform.detect() == Platform.WINDOWS) {
+        // Links are copies or hard links on Windows, so there's no cheap way to tell whether an
+        // existing entry is up to date.
+        filesystem.deleteRecursivelyIfExists(root);
+        missing = links;
+      } else {
+        missing = removeStaleEntries();
+      }
+    } catch (IOException e) {
+      context.logError(e, "failed updating link tree \"%s\"", root);
+      e.printStackTrace(context.getStdErr());
+      return 1;
+    }
+
+    List<Map.Entry<Path, Path>> toCreate = ImmutableList.copyOf(missing.entrySet());
+    LOG.verbose("%s: creating %d of %d links", root, toCreate.size(), links.size());
+
+    // Create each directory once up front, rather than once per link, which also means the
+    // batches below don't race to create them.
+    ImmutableSortedSet.Builder<Path> parents = ImmutableSortedSet.naturalOrder();
+    for (Map.Entry<Path, Path> entry : toCreate) {
+      parents.add(filesystem.resolve(root.resolve(entry.getKey())).getParent());
+    }
+    try {
+      for (Path parent : parents.build()) {
+        Files.createDirectories(parent);
+      }
+    } catch (IOException e) {
+      context.logError(e, "failed creating directories in link tree \"%s\"", root);
+      e.printStackTrace(context.getStdErr());
+      return 1;
+    }
+
+    int threads = Math.min(
+        context.getConcurrencyLimit().threadLimit,
+        (toCreate.size() + LINKS_PER_BATCH - 1) / LINKS_PER_BATCH);
+    if (threads <= 1) {
+      return createLinks(context, toCreate);
+    }
+
+    final ExecutionContext finalContext = context;
+    ExecutorService executor = MoreExecutors.newMultiThreadExecutor("link-tree", threads);
+    try {
+      List<Future<Integer>> results = Lists.newArrayList();
+      for (final List<Map.Entry<Path, Path>> batch : Lists.partition(toCreate, LINKS_PER_BATCH)) {
+        results.add(
+            executor.submit(
+                new Callable<Integer>() {
+                  @Override
+                  public Integer call() {
+                    return createLinks(finalContext, batch);
+                  }
+                }));
+      }
+      int exitCode = 0;
+      for (Future<Integer> result : results) {
+        exitCode = Math.max(exitCode, result.get());
+      }
+      return exitCode;
+    } catch (ExecutionException e) {
+      context.logError(e.getCause(), "failed creating link tree \"%s\"", root);
+      return 1;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int createLinks(ExecutionContext context, Iterable<Map.Entry<Path, Path>> toCreate) {
+    for (Map.Entry<Path, Path> ent : toCreate) {
       Path target = filesystem.resolve(ent.getValue());
       Path link = filesystem.resolve(root.resolve(ent.getKey()));
       try {
-        filesystem.mkdirs(link.getParent());
-        filesystem.createSymLink(link, target, true /* force */);
+        // Stale entries have already been removed from incremental trees.
+        filesystem.createSymLink(link, target, !incremental /* force */);
       } catch (IOException e) {
         String msg = String.format("failed creating linking \"%s\" -> \"%s\"", link, target);
         context.logError(e, msg);
@@ -65,18 +181,82 @@ public class SymlinkTreeStep implements Step {
     return 0;
   }
 
+  /**
+   * Walk the existing tree, deleting every entry which isn't a link we want or a directory
+   * containing one.
+   *
+   * @return the links which still need to be created.
+   */
+  private Map<Path, Path> removeStaleEntries() throws IOException {
+    final Path absoluteRoot = filesystem.resolve(root);
+    final Map<Path, Path> missing = Maps.newHashMap();
+    ImmutableSet.Builder<Path> directoriesBuilder = ImmutableSet.builder();
+    for (Map.Entry<Path, Path> entry : links.entrySet()) {
+      missing.put(entry.getKey(), filesystem.resolve(entry.getValue()));
+      for (Path parent = entry.getKey().getParent(); parent != null; parent = parent.getParent()) {
+        directoriesBuilder.add(parent);
+      }
+    }
+    final ImmutableSet<Path> directories = directoriesBuilder.build();
+
+    if (!Files.isDirectory(absoluteRoot)) {
+      filesystem.deleteFileAtPathIfExists(root);
+      filesystem.mkdirs(root);
+      return links;
+    }
+
+    Files.walkFileTree(
+        absoluteRoot,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            if (dir.equals(absoluteRoot) || directories.contains(absoluteRoot.relativize(dir))) {
+              return FileVisitResult.CONTINUE;
+            }
+            MoreFiles.deleteRecursively(dir);
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Path link = absoluteRoot.relativize(file);
+            Path target = missing.get(link);
+            if (target != null &&
+                attrs.isSymbolicLink() &&
+                Files.readSymbolicLink(file).equals(target)) {
+              missing.remove(link);
+            } else {
+              Files.delete(file);
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+
+    ImmutableMap.Builder<Path, Path> toCreate = ImmutableMap.builder();
+    for (Map.Entry<Path, Path> entry : links.entrySet()) {
+      if (missing.containsKey(entry.getKey())) {
+        toCreate.put(entry);
+      }
+    }
+    return toCreate.build();
+  }
+
   @Override
   public boolean equals(Object obj) {
     if (!(obj instanceof SymlinkTreeStep)) {
       return false;
     }
     SymlinkTreeStep that = (SymlinkTreeStep) obj;
-    return Objects.equal(this.root, that.root) && Objects.equal(this.links, that.links);
+    return Objects.equal(this.root, that.root) &&
+        Objects.equal(this.links, that.links) &&
+        this.incremental == that.incremental;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(root, links);
+    return Objects.hashCode(root, links, incremental);
   }
 
 }
@@ -71,6 +71,31 @@ abstract class AbstractTestRunningOptions {
     return false;
   }
 
+  /**
+   * Whether to stop starting tests once a test has failed.
+   */
+  @Value.Default
+  public boolean isFailFast() {
+    return false;
+  }
+
+  /**
+   * Whether java tests may run in warm test runner JVMs which are shared between test rules,
+   * rather than each in a JVM of its own.
+   */
+  @Value.Default
+  public boolean isUsingTestRunnerWorkers() {
+    return false;
+  }
+
+  /**
+   * The number of test rules a test runner JVM runs before it is replaced.
+   */
+  @Value.Default
+  public int getTestRunnerWorkerMaxRuns() {
+    return 50;
+  }
+
   public abstract Optional<String> getPathToXmlTestOutput();
 
   public abstract Optional<String> getPathToJavaAgent();
@@ -20,7 +20,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.util.XmlDomParser;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
 import org.w3c.dom.Document;
@@ -29,14 +31,34 @@ import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 public class XmlTestResultParser {
 
+  /**
+   * The number of characters of each test's stdout, and of its stderr, kept in memory.  Tests can
+   * print hundreds of megabytes, which is far more than anyone reads in a test report.
+   */
+  @VisibleForTesting
+  static final int MAX_CAPTURED_OUTPUT_CHARS = 1024 * 1024;
+
+  /**
+   * The number of characters of an unparseable result file included in the exception.
+   */
+  private static final int MAX_EXCEPTION_CONTENTS_CHARS = 64 * 1024;
+
   /** Utility Class:  Do not instantiate. */
   private XmlTestResultParser() {}
 
@@ -82,77 +104,165 @@ public class XmlTestResultParser {
     return new TestCaseSummary(testCaseName, testResults);
   }
 
+  /**
+   * Parses a test result file written by the java test runners.  The file is streamed rather than
+   * read into memory, and at most {@link #MAX_CAPTURED_OUTPUT_CHARS} characters of each test's
+   * stdout and stderr are kept.  The rest is left in the file, which the kept output points to.
+   */
   public static TestCaseSummary parse(Path xmlFile) throws IOException {
-    String xmlFileContents = new String(Files.readAllBytes(xmlFile), UTF_8);
-
-    try {
-      return doParse(xmlFileContents);
-    } catch (NumberFormatException | SAXException e) {
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(xmlFile))) {
+      return doParse(xmlFile, input);
+    } catch (NumberFormatException | XMLStreamException e) {
       // This is an attempt to track down an inexplicable error that we have observed in the wild.
-      String message = createDetailedExceptionMessage(xmlFile, xmlFileContents);
+      String message = createDetailedExceptionMessage(xmlFile);
       throw new RuntimeException(message, e);
     }
   }
 
-  private static TestCaseSummary doParse(String xml) throws IOException, SAXException {
-    Document doc = XmlDomParser.parse(new InputSource(new StringReader(xml)),
-        /* namespaceAware */ true);
-    Element root = doc.getDocumentElement();
-    Preconditions.checkState("testcase".equals(root.getTagName()));
-    String testCaseName = root.getAttribute("name");
+  private static TestCaseSummary doParse(Path xmlFile, InputStream input)
+      throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newFactory();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    XMLStreamReader reader = factory.createXMLStreamReader(input);
+    try {
+      reader.nextTag();
+      Preconditions.checkState("testcase".equals(reader.getLocalName()));
+      String testCaseName = getAttribute(reader, "name");
 
-    NodeList testElements = doc.getElementsByTagName("test");
-    List<TestResultSummary> testResults = Lists.newArrayListWithCapacity(testElements.getLength());
-    for (int i = 0; i < testElements.getLength(); i++) {
-      Element node = (Element) testElements.item(i);
-      String testName = node.getAttribute("name");
-      long time = Long.parseLong(node.getAttribute("time"));
-      String typeString = node.getAttribute("type");
-      ResultType type = ResultType.valueOf(typeString);
-
-      String message;
-      String stacktrace;
-      if (type == ResultType.SUCCESS) {
-        message = null;
-        stacktrace = null;
-      } else {
-        message = node.getAttribute("message");
-        stacktrace = node.getAttribute("stacktrace");
+      List<TestResultSummary> testResults = Lists.newArrayList();
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+            "test".equals(reader.getLocalName())) {
+          testResults.add(parseTest(xmlFile, reader, testCaseName));
+        }
       }
 
-      NodeList stdoutElements = node.getElementsByTagName("stdout");
-      String stdOut;
-      if (stdoutElements.getLength() == 1) {
-        stdOut = stdoutElements.item(0).getTextContent();
-      } else {
-        stdOut = null;
-      }
+      return new TestCaseSummary(testCaseName, testResults);
+    } finally {
+      reader.close();
+    }
+  }
 
-      NodeList stderrElements = node.getElementsByTagName("stderr");
-      String stdErr;
-      if (stderrElements.getLength() == 1) {
-        stdErr = stderrElements.item(0).getTextContent();
-      } else {
-        stdErr = null;
+  /**
+   * Parses the "test" element the reader is at, leaving the reader at its end.
+   */
+  private static TestResultSummary parseTest(
+      Path xmlFile,
+      XMLStreamReader reader,
+      String testCaseName) throws XMLStreamException {
+    String testName = getAttribute(reader, "name");
+    long time = Long.parseLong(getAttribute(reader, "time"));
+    String typeString = getAttribute(reader, "type");
+    ResultType type = ResultType.valueOf(typeString);
+
+    String message;
+    String stacktrace;
+    if (type == ResultType.SUCCESS) {
+      message = null;
+      stacktrace = null;
+    } else {
+      message = getAttribute(reader, "message");
+      stacktrace = getAttribute(reader, "stacktrace");
+    }
+
+    String stdOut = null;
+    String stdErr = null;
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+        case XMLStreamConstants.START_ELEMENT:
+          if ("stdout".equals(reader.getLocalName())) {
+            stdOut = readCapturedOutput(xmlFile, reader);
+          } else if ("stderr".equals(reader.getLocalName())) {
+            stdErr = readCapturedOutput(xmlFile, reader);
+          } else {
+            depth++;
+          }
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        default:
+          break;
       }
+    }
 
-      TestResultSummary testResult = new TestResultSummary(
-          testCaseName,
-          testName,
-          type,
-          time,
-          message,
-          stacktrace,
-          stdOut,
-          stdErr);
-      testResults.add(testResult);
+    return new TestResultSummary(
+        testCaseName,
+        testName,
+        type,
+        time,
+        message,
+        stacktrace,
+        stdOut,
+        stdErr);
+  }
+
+  /**
+   * Reads the text of the element the reader is at, leaving the reader at its end.  Only the first
+   * {@link #MAX_CAPTURED_OUTPUT_CHARS} characters are kept.
+   */
+  private static String readCapturedOutput(Path xmlFile, XMLStreamReader reader)
+      throws XMLStreamException {
+    StringBuilder output = new StringBuilder();
+    long dropped = 0;
+    int depth = 1;
+    while (depth > 0) {
+      switch (reader.next()) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          int length = reader.getTextLength();
+          int kept = Math.min(length, MAX_CAPTURED_OUTPUT_CHARS - output.length());
+          output.append(reader.getTextCharacters(), reader.getTextStart(), kept);
+          dropped += length - kept;
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          depth++;
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          depth--;
+          break;
+        default:
+          break;
+      }
     }
+    if (dropped > 0) {
+      output.append(
+          String.format(
+              "%n[%d more characters of output are in %s]%n",
+              dropped,
+              xmlFile.toAbsolutePath()));
+    }
+    return output.toString();
+  }
 
-    return new TestCaseSummary(testCaseName, testResults);
+  /**
+   * @return the value of the attribute, or "" if it's missing.
+   */
+  private static String getAttribute(XMLStreamReader reader, String name) {
+    return Strings.nullToEmpty(reader.getAttributeValue(null, name));
   }
 
-  private static String createDetailedExceptionMessage(Path xmlFile, String xmlFileContents) {
+  private static String createDetailedExceptionMessage(Path xmlFile) {
+    String contents;
+    try (Reader reader = Files.newBufferedReader(xmlFile, UTF_8)) {
+      char[] buffer = new char[MAX_EXCEPTION_CONTENTS_CHARS];
+      int length = 0;
+      int read;
+      while (length < buffer.length &&
+          (read = reader.read(buffer, length, buffer.length - length)) != -1) {
+        length += read;
+      }
+      contents = new String(buffer, 0, length);
+      if (reader.read() != -1) {
+        contents += "\n[truncated]";
+      }
+    } catch (IOException e) {
+      contents = "[unreadable: " + e.getMessage() + "]";
+    }
     return "Error parsing test result data in " + xmlFile.toAbsolutePath() + ".\n" +
-        "File contents:\n" + xmlFileContents;
+        "File contents:\n" + contents;
   }
 }
@@ -38,12 +38,23 @@ public class JUnitMain {
   }
 
   public static void main(String[] args) throws Throwable {
+    createRunner(args).runAndExit();
+  }
+
+  /**
+   * Runs the tests without exiting the JVM afterwards.  Used by {@link TestRunnerWorker}.
+   */
+  public static void run(String[] args) throws Throwable {
+    createRunner(args).run();
+  }
+
+  private static JUnitRunner createRunner(String[] args) throws Throwable {
     // Ensure that both junit and hamcrest are on the classpath
     CheckDependency.isPresent("junit", "org.junit.Test");
     CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
 
     JUnitRunner runner = new JUnitRunner();
     runner.parseArgs(args);
-    runner.runAndExit();
+    return runner;
   }
 }
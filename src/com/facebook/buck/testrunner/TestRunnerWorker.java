@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A long-lived JVM which runs the tests of one rule after another, so that each rule doesn't pay
+ * for starting and warming up a JVM of its own.  Every run gets a fresh class loader containing
+ * only the rule's classpath, so classes, and their static state, are never shared between runs.
+ * <p>
+ * Requests are read from stdin and replies are written to stdout.  Everything else the JVM writes
+ * to stdout goes to stderr instead.  Strings are written as an int byte count followed by their
+ * UTF-8 bytes.  A request is:
+ * <ul>
+ *   <li>(int, string...) classpath entries; an entry starting with "@" names a file listing more
+ *       entries, one per line
+ *   <li>(int, (string, string)...) system properties to set for the run
+ *   <li>(string) file to write the run's stdout and stderr to, or "" to use stderr
+ *   <li>(string) class whose {@code public static void run(String[])} method runs the tests
+ *   <li>(int, string...) arguments to the run method
+ * </ul>
+ * and the reply is:
+ * <ul>
+ *   <li>(int) exit code, which is zero unless the run method could not be called
+ *   <li>(boolean) whether the worker is fit for another run
+ * </ul>
+ * The worker exits when stdin is closed.
+ * <p>
+ * IMPORTANT! This class limits itself to types that are available in both the JDK and Android
+ * Java API. The objective is to limit the set of files added to the ClassLoader that runs the test,
+ * as not to interfere with the results of the test.
+ */
+public class TestRunnerWorker {
+
+  /**
+   * The fraction of the maximum heap which may still be in use after a run, and a garbage
+   * collection, for the worker to stay fit for another run.  Runs can leak memory through threads
+   * or caches which outlive them, so workers which grow past this are retired.
+   */
+  private static final double MAX_RETAINED_HEAP_FRACTION = 0.5;
+
+  private TestRunnerWorker() {
+    // Launcher class.
+  }
+
+  public static void main(String[] args) throws IOException {
+    DataInputStream requests = new DataInputStream(new BufferedInputStream(System.in));
+    DataOutputStream replies =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+    System.setOut(System.err);
+
+    while (true) {
+      List<String> classpath;
+      try {
+        classpath = readStrings(requests);
+      } catch (EOFException e) {
+        break;
+      }
+      Properties properties = new Properties();
+      int numProperties = requests.readInt();
+      for (int i = 0; i < numProperties; i++) {
+        properties.setProperty(readString(requests), readString(requests));
+      }
+      String logFile = readString(requests);
+      String mainClassName = readString(requests);
+      List<String> mainArgs = readStrings(requests);
+
+      int exitCode = run(classpath, properties, logFile, mainClassName, mainArgs);
+      replies.writeInt(exitCode);
+      replies.writeBoolean(isFitForAnotherRun());
+      replies.flush();
+    }
+
+    // Tests may have left non-daemon threads behind, which would otherwise keep the JVM alive.
+    System.exit(0);
+  }
+
+  private static int run(
+      List<String> classpath,
+      Properties properties,
+      String logFile,
+      String mainClassName,
+      List<String> mainArgs) throws IOException {
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    Thread thread = Thread.currentThread();
+    ClassLoader originalContextClassLoader = thread.getContextClassLoader();
+
+    PrintStream log = null;
+    if (!logFile.isEmpty()) {
+      log = new PrintStream(new FileOutputStream(logFile, /* append */ true), /* autoFlush */ true);
+      System.setOut(log);
+      System.setErr(log);
+    }
+
+    List<String> entries = expandClasspath(classpath);
+    URL[] urls = new URL[entries.size()];
+    StringBuilder classpathProperty = new StringBuilder();
+    for (int i = 0; i < entries.size(); i++) {
+      urls[i] = Paths.get(entries.get(i)).toUri().toURL();
+      if (i > 0) {
+        classpathProperty.append(File.pathSeparatorChar);
+      }
+      classpathProperty.append(entries.get(i));
+    }
+
+    // Parent the loader on the system class loader's parent, so that the only classes shared with
+    // the worker itself are those of the JDK.
+    URLClassLoader loader =
+        new URLClassLoader(urls, ClassLoader.getSystemClassLoader().getParent());
+    try {
+      System.getProperties().putAll(properties);
+      System.setProperty("java.class.path", classpathProperty.toString());
+      thread.setContextClassLoader(loader);
+      Class<?> mainClass = Class.forName(mainClassName, true, loader);
+      mainClass.getMethod("run", String[].class)
+          .invoke(null, new Object[] {mainArgs.toArray(new String[mainArgs.size()])});
+      return 0;
+    } catch (InvocationTargetException e) {
+      // As when running in a JVM of its own, the runner has done all it can once it returns.
+      e.getCause().printStackTrace();
+      return 0;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      e.printStackTrace();
+      return 1;
+    } finally {
+      thread.setContextClassLoader(originalContextClassLoader);
+      System.setProperties(originalProperties);
+      System.setOut(originalOut);
+      System.setErr(originalErr);
+      if (log != null) {
+        log.close();
+      }
+      loader.close();
+    }
+  }
+
+  private static List<String> expandClasspath(List<String> classpath) throws IOException {
+    List<String> entries = new ArrayList<>();
+    for (String entry : classpath) {
+      if (!entry.startsWith("@")) {
+        entries.add(entry);
+        continue;
+      }
+      List<String> lines =
+          Files.readAllLines(Paths.get(entry.substring(1)), StandardCharsets.UTF_8);
+      for (String line : lines) {
+        if (!line.isEmpty()) {
+          entries.add(line);
+        }
+      }
+    }
+    return entries;
+  }
+
+  private static boolean isFitForAnotherRun() {
+    Runtime runtime = Runtime.getRuntime();
+    long limit = (long) (runtime.maxMemory() * MAX_RETAINED_HEAP_FRACTION);
+    if (runtime.totalMemory() - runtime.freeMemory() < limit) {
+      return true;
+    }
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory() < limit;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static List<String> readStrings(DataInputStream in) throws IOException {
+    int count = in.readInt();
+    List<String> strings = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      strings.add(readString(in));
+    }
+    return strings;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+
+import javax.annotation.Nullable;
+
+/**
+ * The threads which stub classes when computing ABI jars, and the stubs they made keyed by the
+ * hash of the class they were made from.  Like {@link JavaFileManagerPool}, both live only until
+ * the cache itself is closed at the end of the command, so buckd does not hold on to them between
+ * commands.
+ */
+public final class ClassStubCache implements AutoCloseable {
+
+  /** Upper bound on the total size of the stubs kept. */
+  private static final long MAX_CACHED_STUB_BYTES = 64 * 1024 * 1024;
+
+  private final Cache<HashCode, byte[]> stubs = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHED_STUB_BYTES)
+      .weigher(
+          new Weigher<HashCode, byte[]>() {
+            @Override
+            public int weigh(HashCode key, byte[] value) {
+              return value.length;
+            }
+          })
+      .build();
+
+  @Nullable private ListeningExecutorService executorService;
+
+  private int referenceCount = 1;
+
+  /**
+   * @return the stubs made so far, keyed by the hash of the class each was made from.
+   */
+  public Cache<HashCode, byte[]> getStubs() {
+    return stubs;
+  }
+
+  /**
+   * @return the executor to stub classes on, which is only started the first time it is needed.
+   */
+  public synchronized ListeningExecutorService getExecutorService() {
+    if (executorService == null) {
+      executorService = MoreExecutors.listeningDecorator(
+          Executors.newFixedThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              new ThreadFactoryBuilder()
+                  .setNameFormat("ClassStubCache-%d")
+                  .setDaemon(true)
+                  .build()));
+    }
+    return executorService;
+  }
+
+  public synchronized ClassStubCache addRef() {
+    referenceCount += 1;
+    return this;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (referenceCount > 1) {
+      referenceCount -= 1;
+      return;
+    }
+
+    if (executorService != null) {
+      executorService.shutdownNow();
+      executorService = null;
+    }
+    stubs.invalidateAll();
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Keeps the file managers of in-process javac invocations so that later compilations can reuse
+ * them.  A file manager caches the jars it has opened, including the bootclasspath and the
+ * platform symbol file, so reusing one saves opening and indexing the same jars for every
+ * compilation.  Like {@link ClassLoaderCache}, the file managers live only until the pool itself
+ * is closed at the end of the command, so jars rewritten by a later build are always re-read.
+ */
+public final class JavaFileManagerPool implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(JavaFileManagerPool.class);
+
+  /**
+   * Options which javac hands to the file manager and which resetting its locations does not undo:
+   * javac 8, for one, keeps computing the platform classpath from {@code -bootclasspath} after
+   * {@code setLocation(PLATFORM_CLASS_PATH, null)}.  Each of these takes the following argument.
+   */
+  private static final ImmutableSet<String> STICKY_OPTIONS = ImmutableSet.of(
+      "-bootclasspath",
+      "--boot-class-path",
+      "-extdirs",
+      "-endorseddirs",
+      "-encoding",
+      "--release",
+      "--system");
+
+  /**
+   * Like {@link #STICKY_OPTIONS}, but with the argument joined to the option itself.
+   */
+  private static final ImmutableSet<String> STICKY_OPTION_PREFIXES = ImmutableSet.of(
+      "-Xbootclasspath",
+      "-Djava.ext.dirs=",
+      "-Djava.endorsed.dirs=",
+      "--release=",
+      "--system=");
+
+  /**
+   * Idle file managers, keyed by compiler class and the sticky options they were used with.  File
+   * managers from one instance of a compiler work with any other instance loaded by the same class
+   * loader.
+   */
+  private final Map<Key, Deque<StandardJavaFileManager>> idleFileManagers = new HashMap<>();
+
+  private int referenceCount = 1;
+  private boolean isClosed = false;
+
+  /**
+   * @param options the options the file manager will be passed to {@code getTask} with.
+   * @return an idle file manager created by a compiler of the same class as {@code compiler} and
+   *     last used with the same file manager options, or a new one.  It must be handed back with
+   *     {@link #release}, along with the same options.
+   */
+  public StandardJavaFileManager acquire(JavaCompiler compiler, List<String> options) {
+    Key key = new Key(compiler, options);
+    synchronized (this) {
+      Deque<StandardJavaFileManager> idle = idleFileManagers.get(key);
+      if (idle != null && !idle.isEmpty()) {
+        return idle.pop();
+      }
+    }
+    return compiler.getStandardFileManager(null, null, null);
+  }
+
+  /**
+   * Hands back a file manager returned by {@link #acquire}.  Its locations are reset so that
+   * options from the last compilation do not leak into the next one, and it is only handed out
+   * again to compilations with the same sticky options.  At most {@code maxIdle} file managers are
+   * kept per compiler and options; others are closed.
+   */
+  public void release(
+      JavaCompiler compiler,
+      List<String> options,
+      StandardJavaFileManager fileManager,
+      int maxIdle) {
+    if (resetLocations(fileManager)) {
+      Key key = new Key(compiler, options);
+      synchronized (this) {
+        Deque<StandardJavaFileManager> idle = idleFileManagers.get(key);
+        if (idle == null) {
+          idle = new ArrayDeque<>();
+          idleFileManagers.put(key, idle);
+        }
+        if (!isClosed && idle.size() < maxIdle) {
+          idle.push(fileManager);
+          return;
+        }
+      }
+    }
+    closeQuietly(fileManager);
+  }
+
+  private static boolean resetLocations(StandardJavaFileManager fileManager) {
+    try {
+      fileManager.flush();
+      for (StandardLocation location : StandardLocation.values()) {
+        if (fileManager.hasLocation(location)) {
+          // A null search path restores the default, exactly as if the option were never given.
+          fileManager.setLocation(location, null);
+        }
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      LOG.debug(e, "Unable to reset java file manager, it will not be reused.");
+      return false;
+    }
+  }
+
+  /**
+   * @return the options, with their arguments, which stay with a file manager once it has been
+   *     passed them.
+   */
+  @VisibleForTesting
+  static ImmutableList<String> getStickyOptions(List<String> options) {
+    ImmutableList.Builder<String> stickyOptions = ImmutableList.builder();
+    Iterator<String> iterator = options.iterator();
+    while (iterator.hasNext()) {
+      String option = iterator.next();
+      if (STICKY_OPTIONS.contains(option)) {
+        stickyOptions.add(option);
+        if (iterator.hasNext()) {
+          stickyOptions.add(iterator.next());
+        }
+        continue;
+      }
+      for (String prefix : STICKY_OPTION_PREFIXES) {
+        if (option.startsWith(prefix)) {
+          stickyOptions.add(option);
+          break;
+        }
+      }
+    }
+    return stickyOptions.build();
+  }
+
+  private static void closeQuietly(StandardJavaFileManager fileManager) {
+    try {
+      fileManager.close();
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to close java filemanager. We may be leaking memory.");
+    }
+  }
+
+  public synchronized JavaFileManagerPool addRef() {
+    referenceCount += 1;
+    return this;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (referenceCount > 1) {
+      referenceCount -= 1;
+      return;
+    }
+    isClosed = true;
+
+    Optional<IOException> caughtEx = Optional.absent();
+    for (Deque<StandardJavaFileManager> idle : idleFileManagers.values()) {
+      for (StandardJavaFileManager fileManager : idle) {
+        try {
+          fileManager.close();
+        } catch (IOException ex) {
+          if (caughtEx.isPresent()) {
+            caughtEx.get().addSuppressed(ex);
+          } else {
+            caughtEx = Optional.of(ex);
+          }
+        }
+      }
+    }
+    idleFileManagers.clear();
+
+    if (caughtEx.isPresent()) {
+      throw caughtEx.get();
+    }
+  }
+
+  private static final class Key {
+    private final Class<?> compilerClass;
+    private final ImmutableList<String> stickyOptions;
+
+    Key(JavaCompiler compiler, List<String> options) {
+      this.compilerClass = compiler.getClass();
+      this.stickyOptions = getStickyOptions(options);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      return compilerClass.equals(that.compilerClass) && stickyOptions.equals(that.stickyOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(compilerClass, stickyOptions);
+    }
+  }
+}
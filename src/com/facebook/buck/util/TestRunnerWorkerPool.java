@@ -0,0 +1,279 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import javax.annotation.Nullable;
+
+/**
+ * Keeps warm test runner JVMs so that later test runs can reuse them rather than each starting a
+ * JVM of its own.  The workers speak the protocol described in
+ * {@code com.facebook.buck.testrunner.TestRunnerWorker}, and each run gets a fresh class loader in
+ * the worker.  A worker is retired after a given number of runs, or once it reports that its heap
+ * has grown too much.  Like {@link JavaFileManagerPool}, the workers live only until the pool
+ * itself is closed at the end of the command.
+ */
+public final class TestRunnerWorkerPool implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(TestRunnerWorkerPool.class);
+
+  /**
+   * Idle workers, keyed by their working directory followed by the command which started them.
+   */
+  private final Map<ImmutableList<String>, Deque<Worker>> idleWorkers = new HashMap<>();
+  private final Set<Worker> busyWorkers = new HashSet<>();
+
+  @Nullable private Timer timer;
+  private int referenceCount = 1;
+  private boolean isClosed = false;
+
+  /**
+   * Runs the static {@code run(String[])} method of {@code mainClass} in an idle worker started by
+   * {@code workerCommand}, or in a new one.
+   *
+   * @param classpath the classpath of the run's class loader.  Entries starting with "@" name a
+   *     file listing more entries.
+   * @param logFile the file the run's stdout and stderr are appended to.
+   * @param maxRuns the number of runs after which the worker is retired.
+   * @param timeoutMs if present, the worker is killed if the run takes longer than this.
+   * @return the exit code of the run, or absent if the run timed out.
+   */
+  public Optional<Integer> run(
+      ImmutableList<String> workerCommand,
+      Path workingDirectory,
+      ImmutableList<String> classpath,
+      ImmutableMap<String, String> properties,
+      Optional<Path> logFile,
+      String mainClass,
+      ImmutableList<String> args,
+      int maxRuns,
+      Optional<Long> timeoutMs) throws IOException {
+    ImmutableList<String> key = ImmutableList.<String>builder()
+        .add(workingDirectory.toString())
+        .addAll(workerCommand)
+        .build();
+    final Worker worker = acquire(key, workerCommand, workingDirectory);
+    worker.startRun();
+
+    TimerTask killer = null;
+    if (timeoutMs.isPresent()) {
+      killer = new TimerTask() {
+        @Override
+        public void run() {
+          worker.kill();
+        }
+      };
+      getTimer().schedule(killer, timeoutMs.get());
+    }
+
+    boolean isReusable = false;
+    try {
+      worker.writeStrings(classpath);
+      worker.requests.writeInt(properties.size());
+      for (Map.Entry<String, String> property : properties.entrySet()) {
+        worker.writeString(property.getKey());
+        worker.writeString(property.getValue());
+      }
+      worker.writeString(logFile.isPresent() ? logFile.get().toString() : "");
+      worker.writeString(mainClass);
+      worker.writeStrings(args);
+      worker.requests.flush();
+
+      int exitCode = worker.replies.readInt();
+      isReusable = worker.replies.readBoolean() && ++worker.runs < maxRuns;
+      return Optional.of(exitCode);
+    } catch (IOException e) {
+      if (worker.isKilled()) {
+        return Optional.absent();
+      }
+      // Most likely a test exited the worker's JVM.
+      LOG.debug(e, "Test runner worker %s died during a run.", workerCommand);
+      return Optional.of(1);
+    } finally {
+      if (killer != null) {
+        killer.cancel();
+      }
+      release(key, worker, isReusable && worker.finishRun());
+    }
+  }
+
+  private Worker acquire(
+      ImmutableList<String> key,
+      ImmutableList<String> workerCommand,
+      Path workingDirectory) throws IOException {
+    synchronized (this) {
+      if (isClosed) {
+        throw new IOException("The test runner worker pool has been closed.");
+      }
+      Deque<Worker> idle = idleWorkers.get(key);
+      if (idle != null && !idle.isEmpty()) {
+        Worker worker = idle.pop();
+        busyWorkers.add(worker);
+        return worker;
+      }
+    }
+
+    LOG.debug("Starting test runner worker %s", workerCommand);
+    ProcessBuilder builder = new ProcessBuilder(workerCommand);
+    builder.directory(workingDirectory.toFile());
+    builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+    Worker worker = new Worker(builder.start());
+    synchronized (this) {
+      busyWorkers.add(worker);
+    }
+    return worker;
+  }
+
+  private void release(ImmutableList<String> key, Worker worker, boolean isReusable) {
+    synchronized (this) {
+      busyWorkers.remove(worker);
+      if (!isClosed && isReusable) {
+        Deque<Worker> idle = idleWorkers.get(key);
+        if (idle == null) {
+          idle = new ArrayDeque<>();
+          idleWorkers.put(key, idle);
+        }
+        idle.push(worker);
+        return;
+      }
+    }
+    worker.destroy();
+  }
+
+  private synchronized Timer getTimer() {
+    if (timer == null) {
+      timer = new Timer("test-runner-worker-timeouts", /* isDaemon */ true);
+    }
+    return timer;
+  }
+
+  public synchronized TestRunnerWorkerPool addRef() {
+    referenceCount += 1;
+    return this;
+  }
+
+  @Override
+  public void close() {
+    ImmutableList.Builder<Worker> workers = ImmutableList.builder();
+    synchronized (this) {
+      if (referenceCount > 1) {
+        referenceCount -= 1;
+        return;
+      }
+      isClosed = true;
+      for (Deque<Worker> idle : idleWorkers.values()) {
+        workers.addAll(idle);
+      }
+      idleWorkers.clear();
+      workers.addAll(busyWorkers);
+      if (timer != null) {
+        timer.cancel();
+      }
+    }
+    for (Worker worker : workers.build()) {
+      worker.destroy();
+    }
+  }
+
+  private static class Worker {
+    private final Process process;
+    private final DataOutputStream requests;
+    private final DataInputStream replies;
+    private int runs = 0;
+    private boolean isRunning = false;
+    private boolean isKilled = false;
+
+    public Worker(Process process) {
+      this.process = process;
+      this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      this.replies = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+    }
+
+    public void writeString(String string) throws IOException {
+      byte[] bytes = string.getBytes(Charsets.UTF_8);
+      requests.writeInt(bytes.length);
+      requests.write(bytes);
+    }
+
+    public void writeStrings(List<String> strings) throws IOException {
+      requests.writeInt(strings.size());
+      for (String string : strings) {
+        writeString(string);
+      }
+    }
+
+    public synchronized void startRun() {
+      isRunning = true;
+    }
+
+    /**
+     * Kills the worker if it is still in the middle of a run.
+     */
+    public synchronized void kill() {
+      if (isRunning) {
+        isKilled = true;
+        process.destroy();
+      }
+    }
+
+    public synchronized boolean isKilled() {
+      return isKilled;
+    }
+
+    /**
+     * @return whether the run finished before the worker was killed.
+     */
+    public synchronized boolean finishRun() {
+      if (isKilled) {
+        return false;
+      }
+      isRunning = false;
+      return true;
+    }
+
+    public void destroy() {
+      try {
+        // Closing stdin asks the worker to exit.
+        requests.close();
+      } catch (IOException e) {
+        LOG.debug(e, "Unable to close the stdin of a test runner worker.");
+      }
+      process.destroy();
+    }
+  }
+}
@@ -21,21 +21,45 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import com.android.ddmlib.IDevice;
+import com.facebook.buck.android.agent.AgentMain;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.ExopackageInfo;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.InstallableApk;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.step.AdbOptions;
+import com.facebook.buck.step.TargetDeviceOptions;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TestConsole;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
 
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
 import java.util.regex.Matcher;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @SuppressWarnings("PMD.AddEmptyString")
 public class ExopackageInstallerTest {
@@ -43,6 +67,9 @@ public class ExopackageInstallerTest {
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void testScanSecondaryDexDir() throws Exception {
     String output =
@@ -245,4 +272,182 @@ public class ExopackageInstallerTest {
     }
     return null;
   }
+
+  @Test
+  public void testMultiReceivePayloadIsReadByAgent() throws Exception {
+    Path first = tmp.newFile("first").toPath();
+    Files.write(first, "first contents".getBytes(Charsets.UTF_8));
+    Path second = tmp.newFile("second").toPath();
+    Files.write(second, new byte[0]);
+    Path deviceRoot = tmp.newFolder("device").toPath();
+    Files.createDirectories(deviceRoot.resolve("data/local/tmp"));
+
+    ByteSource payload = ExopackageInstaller.getMultiReceivePayload(
+        ImmutableMap.of(
+            "/data/local/tmp/first.dex.jar", first,
+            "/data/local/tmp/second.dex.jar", second));
+    try (InputStream input = payload.openStream()) {
+      AgentMain.receiveFiles(deviceRoot.toFile(), input);
+    }
+
+    assertEquals(
+        "first contents",
+        new String(
+            Files.readAllBytes(deviceRoot.resolve("data/local/tmp/first.dex.jar")),
+            Charsets.UTF_8));
+    assertEquals(0, Files.size(deviceRoot.resolve("data/local/tmp/second.dex.jar")));
+  }
+
+  @Test
+  public void testInstallOnFakeDevicesOnlySendsChangedDexFiles() throws Exception {
+    Path projectRoot = tmp.newFolder("project").toPath();
+    Path manifest = projectRoot.resolve("AndroidManifest.xml");
+    Files.write(
+        manifest,
+        ("<manifest xmlns:android='http://schemas.android.com/apk/res/android' " +
+            "package='com.example'/>").getBytes(Charsets.UTF_8));
+    Path apk = projectRoot.resolve("app.apk");
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(apk))) {
+      zip.putNextEntry(new ZipEntry("META-INF/CERT.SF"));
+      zip.write("SHA1-Digest-Manifest: signature\n".getBytes(Charsets.UTF_8));
+      zip.closeEntry();
+    }
+    Path dexDir = projectRoot.resolve("secondary");
+    Files.createDirectories(dexDir);
+    Files.write(dexDir.resolve("secondary-1.dex.jar"), "one".getBytes(Charsets.UTF_8));
+    Files.write(dexDir.resolve("secondary-2.dex.jar"), "two".getBytes(Charsets.UTF_8));
+    String firstHash = Strings.repeat("1", 40);
+    String secondHash = Strings.repeat("2", 40);
+    Path metadata = projectRoot.resolve("metadata.txt");
+    Files.write(
+        metadata,
+        ImmutableList.of(
+            "secondary-1.dex.jar " + firstHash + " com.example.Canary1",
+            "secondary-2.dex.jar " + secondHash + " com.example.Canary2"),
+        Charsets.UTF_8);
+
+    final ImmutableList<FakeExopackageDevice> devices = ImmutableList.of(
+        new FakeExopackageDevice("1", tmp.newFolder("device1").toPath(), "21"),
+        new FakeExopackageDevice("2", tmp.newFolder("device2").toPath(), "21"));
+    AdbHelper adbHelper = new AdbHelper(
+        new AdbOptions(0, /* multiInstallMode */ true),
+        new TargetDeviceOptions(),
+        TestExecutionContext.newInstance(),
+        new TestConsole(),
+        BuckEventBusFactory.newInstance(),
+        /* restartAdbOnFailure */ false) {
+      @Override
+      public List<IDevice> getDevices(boolean quiet) {
+        return ImmutableList.<IDevice>copyOf(devices);
+      }
+
+      @Override
+      protected boolean isDeviceTempWritable(IDevice device, String name) {
+        return true;
+      }
+    };
+    InstallableApk apkRule = new FakeInstallableApk(
+        new ProjectFilesystem(projectRoot),
+        manifest,
+        apk,
+        ExopackageInfo.builder()
+            .setDexInfo(ExopackageInfo.DexInfo.of(metadata, dexDir))
+            .build());
+
+    assertTrue(
+        new ExopackageInstaller(TestExecutionContext.newInstance(), adbHelper, apkRule)
+            .install(/* quiet */ true));
+
+    String dexDirOnDevice = "/data/local/tmp/exopackage/com.example/secondary-dex/";
+    for (FakeExopackageDevice device : devices) {
+      assertEquals(
+          "one",
+          new String(
+              Files.readAllBytes(
+                  device.getHostPath(dexDirOnDevice + "secondary-" + firstHash + ".dex.jar")),
+              Charsets.UTF_8));
+      assertTrue(
+          Files.exists(
+              device.getHostPath(dexDirOnDevice + "secondary-" + secondHash + ".dex.jar")));
+      assertTrue(Files.exists(device.getHostPath(dexDirOnDevice + "metadata.txt")));
+      // Mark the first dex file so that we can tell whether it is sent again.
+      Files.setLastModifiedTime(
+          device.getHostPath(dexDirOnDevice + "secondary-" + firstHash + ".dex.jar"),
+          FileTime.fromMillis(0));
+    }
+
+    // Change only the second secondary dex and install again.
+    String changedHash = Strings.repeat("3", 40);
+    Files.write(dexDir.resolve("secondary-2.dex.jar"), "changed".getBytes(Charsets.UTF_8));
+    Files.write(
+        metadata,
+        ImmutableList.of(
+            "secondary-1.dex.jar " + firstHash + " com.example.Canary1",
+            "secondary-2.dex.jar " + changedHash + " com.example.Canary2"),
+        Charsets.UTF_8);
+
+    assertTrue(
+        new ExopackageInstaller(TestExecutionContext.newInstance(), adbHelper, apkRule)
+            .install(/* quiet */ true));
+
+    for (FakeExopackageDevice device : devices) {
+      assertEquals(
+          FileTime.fromMillis(0),
+          Files.getLastModifiedTime(
+              device.getHostPath(dexDirOnDevice + "secondary-" + firstHash + ".dex.jar")));
+      assertEquals(
+          "changed",
+          new String(
+              Files.readAllBytes(
+                  device.getHostPath(dexDirOnDevice + "secondary-" + changedHash + ".dex.jar")),
+              Charsets.UTF_8));
+      assertFalse(
+          Files.exists(
+              device.getHostPath(dexDirOnDevice + "secondary-" + secondHash + ".dex.jar")));
+
+      int agentInvocations = 0;
+      for (String command : device.getCommands()) {
+        if (command.contains("multi-receive-file")) {
+          agentInvocations++;
+        }
+      }
+      // One agent invocation per install, however many files changed.
+      assertEquals(2, agentInvocations);
+    }
+  }
+
+  private static class FakeInstallableApk extends FakeBuildRule implements InstallableApk {
+    private final Path manifestPath;
+    private final Path apkPath;
+    private final ExopackageInfo exopackageInfo;
+
+    public FakeInstallableApk(
+        ProjectFilesystem filesystem,
+        Path manifestPath,
+        Path apkPath,
+        ExopackageInfo exopackageInfo) {
+      super(
+          BuildTargetFactory.newInstance("//:app"),
+          filesystem,
+          new SourcePathResolver(new BuildRuleResolver()));
+      this.manifestPath = manifestPath;
+      this.apkPath = apkPath;
+      this.exopackageInfo = exopackageInfo;
+    }
+
+    @Override
+    public Path getManifestPath() {
+      return manifestPath;
+    }
+
+    @Override
+    public Path getApkPath() {
+      return apkPath;
+    }
+
+    @Override
+    public Optional<ExopackageInfo> getExopackageInfo() {
+      return Optional.of(exopackageInfo);
+    }
+  }
 }
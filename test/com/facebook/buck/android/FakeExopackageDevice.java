@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.android.ddmlib.IShellOutputReceiver;
+import com.android.ddmlib.InstallException;
+import com.facebook.buck.android.agent.AgentMain;
+import com.facebook.buck.android.agent.util.AgentUtil;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link com.android.ddmlib.IDevice} that emulates just enough of an Android shell and of the
+ * exopackage agent for {@link ExopackageInstaller} to run against it.  The device filesystem is a
+ * directory on the host, and files sent to the agent are received with the real agent code.
+ */
+public class FakeExopackageDevice extends TestDevice {
+
+  private static final String AGENT_MAIN = "com.facebook.buck.android.agent.AgentMain ";
+
+  private final Path deviceRoot;
+  private final String sdkVersion;
+  private final List<String> commands = Lists.newCopyOnWriteArrayList();
+  private Optional<String> installedPackage = Optional.absent();
+  private Optional<String> installedSignature = Optional.absent();
+
+  public FakeExopackageDevice(String serial, Path deviceRoot, String sdkVersion) {
+    setIsEmulator(false);
+    setSerialNumber(serial);
+    setName("device-" + serial);
+    setState(DeviceState.ONLINE);
+    this.deviceRoot = deviceRoot;
+    this.sdkVersion = sdkVersion;
+  }
+
+  /**
+   * @return the file on the host that backs {@code devicePath}.
+   */
+  public Path getHostPath(String devicePath) {
+    return deviceRoot.resolve(devicePath.replaceFirst("^/+", ""));
+  }
+
+  /**
+   * @return every shell command run on this device, without the exit code suffix.
+   */
+  public ImmutableList<String> getCommands() {
+    return ImmutableList.copyOf(commands);
+  }
+
+  @Override
+  public String installPackage(String packageFilePath, boolean reinstall, String... extraArgs)
+      throws InstallException {
+    try {
+      installedPackage = Optional.of(packageFilePath);
+      installedSignature = Optional.of(AgentUtil.getJarSignature(packageFilePath));
+      return null;
+    } catch (IOException e) {
+      throw new InstallException(e);
+    }
+  }
+
+  @Override
+  public void createForward(int localPort, int remotePort) {
+    // The fake agent listens on the local port directly.
+  }
+
+  @Override
+  public void removeForward(int localPort, int remotePort) {
+  }
+
+  @Override
+  public void executeShellCommand(String command, IShellOutputReceiver receiver)
+      throws IOException {
+    String suffix = AdbHelper.ECHO_COMMAND_SUFFIX;
+    if (command.endsWith(suffix)) {
+      command = command.substring(0, command.length() - suffix.length());
+    }
+    commands.add(command);
+
+    if (command.startsWith("umask 022 && ")) {
+      command = command.substring("umask 022 && ".length());
+    }
+
+    int exitCode = 0;
+    String output = "";
+    if (command.contains(AGENT_MAIN + "multi-receive-file ")) {
+      int port = Integer.parseInt(command.substring(
+          command.indexOf("multi-receive-file ") + "multi-receive-file ".length()).trim());
+      exitCode = runMultiReceiveFile(port, receiver);
+    } else if (command.contains(AGENT_MAIN + "get-signature ")) {
+      output = installedSignature.get() + "\n";
+    } else if (command.startsWith("pm path ")) {
+      output = getPackageInfo(Splitter.on(' ').splitToList(command).get(2).replace(";", ""));
+    } else if (command.startsWith("getprop ro.build.version.sdk")) {
+      output = sdkVersion + "\n";
+    } else if (command.startsWith("mkdir -p ")) {
+      Files.createDirectories(getHostPath(command.substring("mkdir -p ".length())));
+    } else if (command.startsWith("ls ")) {
+      File[] files = getHostPath(command.substring("ls ".length())).toFile().listFiles();
+      List<String> names = Lists.newArrayList();
+      for (File file : files) {
+        names.add(file.getName());
+      }
+      output = names.isEmpty() ? "" : Joiner.on("\r\n").join(names) + "\r\n";
+    } else if (command.startsWith("cd ")) {
+      List<String> parts = Splitter.on(" && rm ").splitToList(command.substring("cd ".length()));
+      for (String name : Splitter.on(' ').split(parts.get(1))) {
+        Files.delete(getHostPath(parts.get(0)).resolve(name));
+      }
+    } else if (command.startsWith("chmod 644 ") || command.startsWith("am force-stop ")) {
+      // Nothing to do.
+    } else {
+      throw new UnsupportedOperationException("Unexpected command: " + command);
+    }
+
+    byte[] bytes = (output + ":" + exitCode).getBytes(Charsets.UTF_8);
+    receiver.addOutput(bytes, 0, bytes.length);
+    receiver.flush();
+  }
+
+  private String getPackageInfo(String packageName) {
+    String apkPath;
+    if (packageName.equals(AgentUtil.AGENT_PACKAGE_NAME)) {
+      apkPath = "/data/app/" + AgentUtil.AGENT_PACKAGE_NAME + "-1.apk";
+    } else if (installedPackage.isPresent()) {
+      apkPath = "/data/app/" + packageName + "-1.apk";
+    } else {
+      return "";
+    }
+    String versionCode = packageName.equals(AgentUtil.AGENT_PACKAGE_NAME)
+        ? AgentUtil.AGENT_VERSION_CODE
+        : "1";
+    return "package:" + apkPath + "\r\n" +
+        "  Package [" + packageName + "] (4229ce68):\r\n" +
+        "    codePath=" + apkPath + "\r\n" +
+        "    resourcePath=" + apkPath + "\r\n" +
+        "    nativeLibraryPath=/data/app-lib/" + packageName + "-1\r\n" +
+        "    versionCode=" + versionCode + " targetSdk=19\r\n";
+  }
+
+  /**
+   * Plays the part of the agent's multi-receive-file command: print a key, accept a connection,
+   * check the key and hand the rest of the stream to the real agent code.
+   */
+  private int runMultiReceiveFile(int port, IShellOutputReceiver receiver) throws IOException {
+    final byte[] key = Strings.repeat("k", AgentUtil.TEXT_SECRET_KEY_SIZE)
+        .getBytes(Charsets.UTF_8);
+    final ServerSocket serverSocket = new ServerSocket(port);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<Void> agent = executor.submit(
+          new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+              try (Socket socket = serverSocket.accept();
+                   InputStream input = socket.getInputStream()) {
+                byte[] receivedKey = new byte[key.length];
+                ByteStreams.readFully(input, receivedKey);
+                if (!Arrays.equals(key, receivedKey)) {
+                  throw new IllegalStateException("Received incorrect secret key.");
+                }
+                AgentMain.receiveFiles(deviceRoot.toFile(), input);
+              }
+              return null;
+            }
+          });
+      // The installer connects and sends the payload as soon as it sees the key.
+      receiver.addOutput(key, 0, key.length);
+      agent.get(10, TimeUnit.SECONDS);
+      return 0;
+    } catch (Exception e) {
+      return 1;
+    } finally {
+      executor.shutdownNow();
+      serverSocket.close();
+    }
+  }
+}
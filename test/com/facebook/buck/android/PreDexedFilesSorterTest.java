@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.Sha1HashCode;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class PreDexedFilesSorterTest {
+
+  private static final long LINEAR_ALLOC_HARD_LIMIT = 100;
+  private static final Path SECONDARY_DEX_DIR = Paths.get("secondary");
+
+  @Test
+  public void testSecondaryDexesArePackedGreedilyByDefault() {
+    PreDexedFilesSorter.Result result = sort(
+        ImmutableList.of(dex("a", 60), dex("b", 30), dex("c", 50), dex("d", 20)),
+        Optional.<ImmutableMap<Path, Integer>>absent());
+
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("a.dex.jar"), 0,
+            Paths.get("b.dex.jar"), 0,
+            Paths.get("c.dex.jar"), 1,
+            Paths.get("d.dex.jar"), 1),
+        result.secondaryDexAssignment);
+  }
+
+  @Test
+  public void testIncrementalPackingKeepsPreviousAssignmentWhenLibraryGrows() {
+    ImmutableMap<Path, Integer> previous = sort(
+        ImmutableList.of(dex("a", 60), dex("b", 30), dex("c", 50), dex("d", 20)),
+        Optional.of(ImmutableMap.<Path, Integer>of()))
+        .secondaryDexAssignment;
+
+    // "a" grows so that "a" and "b" no longer fit together.  A greedy packing would push "b" into
+    // the next secondary dex, which would then shift "c" and "d" too.
+    PreDexedFilesSorter.Result result = sort(
+        ImmutableList.of(dex("a", 80), dex("b", 30), dex("c", 50), dex("d", 20)),
+        Optional.of(previous));
+
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("a.dex.jar"), 0,
+            Paths.get("b.dex.jar"), 1,
+            Paths.get("c.dex.jar"), 1,
+            Paths.get("d.dex.jar"), 1),
+        result.secondaryDexAssignment);
+  }
+
+  @Test
+  public void testIncrementalPackingPutsNewLibrariesInFirstSecondaryDexWithRoom() {
+    ImmutableMap<Path, Integer> previous = ImmutableMap.of(
+        Paths.get("a.dex.jar"), 0,
+        Paths.get("b.dex.jar"), 1,
+        Paths.get("c.dex.jar"), 2);
+
+    PreDexedFilesSorter.Result result = sort(
+        ImmutableList.of(dex("a", 90), dex("b", 50), dex("c", 80), dex("new", 40)),
+        Optional.of(previous));
+
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("a.dex.jar"), 0,
+            Paths.get("b.dex.jar"), 1,
+            Paths.get("c.dex.jar"), 2,
+            Paths.get("new.dex.jar"), 1),
+        result.secondaryDexAssignment);
+  }
+
+  @Test
+  public void testIncrementalPackingKeepsSlotsOfEmptySecondaryDexes() {
+    ImmutableMap<Path, Integer> previous = ImmutableMap.of(
+        Paths.get("a.dex.jar"), 0,
+        Paths.get("removed.dex.jar"), 1,
+        Paths.get("c.dex.jar"), 2,
+        Paths.get("removed_last.dex.jar"), 3);
+
+    PreDexedFilesSorter.Result result = sort(
+        ImmutableList.of(dex("a", 90), dex("c", 80)),
+        Optional.of(previous));
+
+    // The emptied secondary dex keeps its canary so that c stays in the third one; only the empty
+    // secondary dex at the end is dropped.
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("a.dex.jar"), 0,
+            Paths.get("c.dex.jar"), 2),
+        result.secondaryDexAssignment);
+    assertEquals(
+        ImmutableSet.of(
+            SECONDARY_DEX_DIR.resolve(DexStore.JAR.fileNameForSecondary(0)),
+            SECONDARY_DEX_DIR.resolve(DexStore.JAR.fileNameForSecondary(1)),
+            SECONDARY_DEX_DIR.resolve(DexStore.JAR.fileNameForSecondary(2))),
+        result.secondaryOutputToInputs.keySet());
+    assertEquals(
+        1,
+        result.secondaryOutputToInputs.get(
+            SECONDARY_DEX_DIR.resolve(DexStore.JAR.fileNameForSecondary(1))).size());
+  }
+
+  private static PreDexedFilesSorter.Result sort(
+      List<DexWithClasses> dexFilesToMerge,
+      Optional<ImmutableMap<Path, Integer>> previousSecondaryDexAssignment) {
+    PreDexedFilesSorter sorter = new PreDexedFilesSorter(
+        Optional.<DexWithClasses>absent(),
+        dexFilesToMerge,
+        /* primaryDexPatterns */ ImmutableSet.<String>of(),
+        Paths.get("scratch"),
+        LINEAR_ALLOC_HARD_LIMIT,
+        DexStore.JAR,
+        SECONDARY_DEX_DIR,
+        previousSecondaryDexAssignment);
+    return sorter.sortIntoPrimaryAndSecondaryDexes(
+        FakeBuildContext.NOOP_CONTEXT,
+        new FakeProjectFilesystem(),
+        ImmutableList.<Step>builder());
+  }
+
+  private static DexWithClasses dex(final String name, final int sizeEstimate) {
+    return new DexWithClasses() {
+      @Override
+      public Path getPathToDexFile() {
+        return Paths.get(name + ".dex.jar");
+      }
+
+      @Override
+      public ImmutableSet<String> getClassNames() {
+        return ImmutableSet.of("com/example/" + name);
+      }
+
+      @Override
+      public Sha1HashCode getClassesHash() {
+        return Sha1HashCode.of(Strings.repeat("a", 40));
+      }
+
+      @Override
+      public int getSizeEstimate() {
+        return sizeEstimate;
+      }
+    };
+  }
+}
@@ -126,12 +126,14 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.<SourcePath>absent(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.<SourcePath>absent(),
-            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent()),
+            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent(),
+            /* isIncrementalSecondaryDexPacking */ false),
         Optional.<Path>absent(),
         Optional.of(Paths.get("the/manifest.txt")),
         Optional.<Path>absent(),
         Optional.<Path>absent(),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsCache */ Optional.<Path>absent());
 
     ExecutionContext context = EasyMock.createMock(ExecutionContext.class);
     EasyMock.replay(projectFilesystem, context);
@@ -218,12 +220,14 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.<SourcePath>absent(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.<SourcePath>absent(),
-            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent()),
+            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent(),
+            /* isIncrementalSecondaryDexPacking */ false),
         Optional.<Path>absent(),
         Optional.of(Paths.get("the/manifest.txt")),
         Optional.<Path>absent(),
         Optional.<Path>absent(),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsCache */ Optional.<Path>absent());
 
     ExecutionContext context = EasyMock.createMock(ExecutionContext.class);
     EasyMock.replay(projectFilesystem, context);
@@ -290,12 +294,14 @@ public class SplitZipStepTest {
             /* primaryDexScenarioFile */ Optional.<SourcePath>absent(),
             /* isPrimaryDexScenarioOverflowAllowed */ false,
             /* secondaryDexHeadClassesFile */ Optional.<SourcePath>absent(),
-            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent()),
+            /* secondaryDexTailClassesFile */ Optional.<SourcePath>absent(),
+            /* isIncrementalSecondaryDexPacking */ false),
         Optional.<Path>absent(),
         Optional.<Path>absent(),
         Optional.<Path>absent(),
         Optional.<Path>absent(),
-        /* pathToReportDir */ Paths.get(""));
+        /* pathToReportDir */ Paths.get(""),
+        /* pathToDalvikStatsCache */ Optional.<Path>absent());
 
     ExecutionContext context = EasyMock.createMock(ExecutionContext.class);
     EasyMock.replay(projectFilesystem, context);
@@ -277,4 +277,24 @@ public class HeaderMapTest {
     }
   }
 
+  @Test
+  public void presizedBuilderHoldsExpectedEntriesWithoutGrowing() {
+    for (int n : new int[] {0, 1, 3, 384, 385}) {
+      HeaderMap.Builder builder = HeaderMap.builder(n);
+      int initialBuckets = builder.build().getNumBuckets();
+      for (int i = 0; i < n; i++) {
+        assertTrue(builder.add("foo" + i, "value of foo", Integer.toString(i)));
+      }
+      HeaderMap hmap = builder.build();
+
+      assertEquals(n, hmap.getNumEntries());
+      assertEquals(initialBuckets, hmap.getNumBuckets());
+      assertTrue(hmap.getNumBuckets() < 2 * Math.max(n / 0.75, 1));
+      for (int i = 0; i < n; i++) {
+        assertEquals("value of foo" + i, hmap.lookup("foo" + i));
+      }
+      assertThatHeaderMapsAreEqual(hmap, HeaderMap.deserialize(hmap.getBytes()));
+    }
+  }
+
 }
@@ -384,6 +384,48 @@ public class AuditOwnerCommandTest {
     assertEquals(targetNode.getInputs(), report.owners.get(targetNode));
   }
 
+  /**
+   * Verify that owners are correctly detected:
+   *  - one owner, whose input is a directory containing some of the files
+   */
+  @Test
+  public void verifyInputsInADirectoryInputAreOwnedByIt()
+      throws CmdLineException, IOException, InterruptedException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem() {
+      @Override
+      public File getFileForRelativePath(String pathRelativeToProjectRoot) {
+        return new ExistingFile(getRootPath(), pathRelativeToProjectRoot);
+      }
+    };
+
+    ImmutableSet<String> inputs = ImmutableSet.of(
+        "java/somefolder/badfolder/somefile.java",
+        "java/somefolder/perfect.java",
+        "java/somefolderwithsuffix/other.java",
+        "com/test/subtest/random.java");
+
+    BuildTarget target = BuildTargetFactory.newInstance("//base:name");
+    TargetNode<?> targetNode =
+        createTargetNode(target, ImmutableSet.of(Paths.get("java/somefolder")));
+
+    CommandRunnerParams params = createAuditOwnerCommandRunnerParams(filesystem);
+    AuditOwnerCommand.OwnersReport report = AuditOwnerCommand.generateOwnersReport(
+        params,
+        targetNode,
+        inputs,
+        false);
+    assertEquals(
+        ImmutableSet.of(
+            Paths.get("java/somefolder/badfolder/somefile.java"),
+            Paths.get("java/somefolder/perfect.java")),
+        report.owners.get(targetNode));
+    assertEquals(
+        ImmutableSet.of(
+            Paths.get("java/somefolderwithsuffix/other.java"),
+            Paths.get("com/test/subtest/random.java")),
+        report.inputsWithNoOwners);
+  }
+
   /**
    * Verify that owners are correctly detected:
    *  - one owner, multiple inputs, json output
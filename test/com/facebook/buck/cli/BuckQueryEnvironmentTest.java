@@ -18,6 +18,7 @@ package com.facebook.buck.cli;
 
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.android.FakeAndroidDirectoryResolver;
@@ -49,6 +50,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Set;
 
 public class BuckQueryEnvironmentTest {
 
@@ -123,4 +125,31 @@ public class BuckQueryEnvironmentTest {
         buckQueryEnvironment.getTargetsMatchingPattern("//example:"),
         is(equalTo(expectedTargets)));
   }
+
+  @Test
+  public void testTransitiveClosuresAreMemoized() throws QueryException, InterruptedException {
+    ImmutableSet<QueryTarget> roots = ImmutableSet.of(createQueryBuildTarget("//example", "three"));
+    buckQueryEnvironment.buildTransitiveClosure(roots, Integer.MAX_VALUE);
+
+    ImmutableSet<QueryTarget> closure = buckQueryEnvironment.getTransitiveClosure(roots);
+    assertThat(
+        closure,
+        is(equalTo(
+            (ImmutableSet<QueryTarget>) ImmutableSortedSet.of(
+                createQueryBuildTarget("//example", "three"),
+                createQueryBuildTarget("//example", "four"),
+                createQueryBuildTarget("//example", "five"),
+                createQueryBuildTarget("//example", "six")))));
+    assertSame(closure, buckQueryEnvironment.getTransitiveClosure(roots));
+  }
+
+  @Test
+  public void testRdepsWithinUniverse() throws QueryException, InterruptedException {
+    assertThat(
+        buckQueryEnvironment.evaluateQuery("rdeps(//example:three, //example:four)"),
+        is(equalTo(
+            (Set<QueryTarget>) ImmutableSet.of(
+                createQueryBuildTarget("//example", "four"),
+                createQueryBuildTarget("//example", "three")))));
+  }
 }
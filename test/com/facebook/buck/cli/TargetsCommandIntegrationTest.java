@@ -30,6 +30,8 @@ import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.HumanReadableException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
@@ -101,6 +103,30 @@ public class TargetsCommandIntegrationTest {
         result.getStdout());
   }
 
+  @Test
+  public void testJsonOutputWithOutputAndRuleKey() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "output_path", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand(
+        "targets",
+        "--json",
+        "--show-rulekey",
+        "--show-output",
+        "//:test");
+    result.assertSuccess();
+    JsonNode observed = new ObjectMapper().readTree(result.getStdout());
+    assertEquals(1, observed.size());
+    assertEquals("test", observed.get(0).get("name").asText());
+    assertEquals(
+        "12c109cdbab186fbb8fdd785853d8bcb4538aed2",
+        observed.get(0).get("buck.ruleKey").asText());
+    assertEquals(
+        "buck-out/gen/test/test-output",
+        observed.get(0).get("buck.outputPath").asText());
+  }
+
   @Test
   public void testOutputWithoutTarget() throws IOException {
     ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
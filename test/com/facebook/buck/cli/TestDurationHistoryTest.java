@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Functions;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class TestDurationHistoryTest {
+
+  private static final BuildTarget A = BuildTargetFactory.newInstance("//:a");
+  private static final BuildTarget B = BuildTargetFactory.newInstance("//:b");
+  private static final BuildTarget C = BuildTargetFactory.newInstance("//:c");
+  private static final BuildTarget D = BuildTargetFactory.newInstance("//:d");
+
+  @Test
+  public void durationsSurviveASaveAndLoad() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    TestDurationHistory history = TestDurationHistory.load(filesystem, objectMapper);
+    assertEquals(Optional.<Long>absent(), history.getDuration(A));
+    history.setDuration(A, 1234L);
+    history.save();
+
+    assertEquals(
+        Optional.of(1234L),
+        TestDurationHistory.load(filesystem, objectMapper).getDuration(A));
+  }
+
+  @Test
+  public void unreadableHistoryIsIgnored() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("not json", TestDurationHistory.PATH);
+
+    assertEquals(
+        Optional.<Long>absent(),
+        TestDurationHistory.load(filesystem, new ObjectMapper()).getDuration(A));
+  }
+
+  @Test
+  public void longestTestsComeFirstAndUnknownOnesAreAssumedAverage() {
+    TestDurationHistory history =
+        TestDurationHistory.load(new FakeProjectFilesystem(), new ObjectMapper());
+    history.setDuration(A, 10L);
+    history.setDuration(B, 50L);
+    history.setDuration(D, 30L);
+
+    // C is assumed to take 30, and so stays after D, which came before it.
+    assertEquals(
+        ImmutableList.of(B, D, C, A),
+        history.sortLongestFirst(
+            ImmutableList.of(A, B, D, C),
+            Functions.<BuildTarget>identity()));
+  }
+}
@@ -87,6 +87,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -956,4 +957,83 @@ public class TestRunningTest {
 
     assertThat(ret, equalTo(TestRunning.TEST_FAILURES_EXIT_CODE));
   }
+
+  @Test
+  public void failFastSkipsTestsWhichHaveNotStartedAfterAFailure() throws Exception {
+    CommandRunnerParams commandRunnerParams = CommandRunnerParamsForTesting
+        .builder()
+        .build();
+    final TestResults failingTestResults =
+        new TestResults(
+            ImmutableList.of(
+                new TestCaseSummary(
+                    "TestCase",
+                    ImmutableList.of(
+                        new TestResultSummary(
+                            "TestCaseResult",
+                            "failTest",
+                            ResultType.FAILURE,
+                            5000,
+                            null,
+                            null,
+                            null,
+                            null)))));
+    BuildTarget failingTestTarget = BuildTargetFactory.newInstance("//:failingtest");
+    FakeTestRule failingTest = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(failingTestTarget).build(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSet.<Label>of(),
+        Optional.of(Paths.get("failingTestStep1OutputDir")),
+        false, // runTestSeparately
+        ImmutableList.<Step>of(),
+        new Callable<TestResults>() {
+          @Override
+          public TestResults call() {
+            return failingTestResults;
+          }
+        });
+    final AtomicBoolean skippedTestRan = new AtomicBoolean(false);
+    BuildTarget skippedTestTarget = BuildTargetFactory.newInstance("//:skippedtest");
+    FakeTestRule skippedTest = new FakeTestRule(
+        new FakeBuildRuleParamsBuilder(skippedTestTarget).build(),
+        new SourcePathResolver(new BuildRuleResolver()),
+        ImmutableSet.<Label>of(),
+        Optional.of(Paths.get("skippedTestStep1OutputDir")),
+        false, // runTestSeparately
+        ImmutableList.<Step>of(),
+        new Callable<TestResults>() {
+          @Override
+          public TestResults call() {
+            skippedTestRan.set(true);
+            return new TestResults(ImmutableList.<TestCaseSummary>of());
+          }
+        });
+
+    // A single thread runs the tests one after the other, in the order they're given.
+    ListeningExecutorService service =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    FakeBuildEngine fakeBuildEngine = new FakeBuildEngine(
+        ImmutableMap.of(
+            failingTestTarget, BuildResult.success(failingTest, BUILT_LOCALLY, CacheResult.skip()),
+            skippedTestTarget, BuildResult.success(skippedTest, BUILT_LOCALLY, CacheResult.skip())
+        ),
+        ImmutableMap.of(
+            failingTestTarget, new RuleKey("00"),
+            skippedTestTarget, new RuleKey("00")
+        ));
+    ExecutionContext fakeExecutionContext = TestExecutionContext.newInstance();
+    DefaultStepRunner stepRunner = new DefaultStepRunner(fakeExecutionContext);
+    int ret = TestRunning.runTests(
+        commandRunnerParams,
+        ImmutableList.<TestRule>of(failingTest, skippedTest),
+        FakeBuildContext.NOOP_CONTEXT,
+        fakeExecutionContext,
+        TestRunningOptions.builder().setFailFast(true).build(),
+        service,
+        fakeBuildEngine,
+        stepRunner);
+
+    assertThat(ret, equalTo(TestRunning.TEST_FAILURES_EXIT_CODE));
+    assertFalse(skippedTestRan.get());
+  }
 }
@@ -131,6 +131,17 @@ public class ArchiveTest {
             DEFAULT_INPUTS));
     assertNotEquals(defaultRuleKey, archiverTypeChange);
 
+    // Verify that changing how the archive is written causes a rulekey change.
+    RuleKey archiveModeChange = generateRuleKey(
+        ruleKeyBuilderFactory,
+        new Archive(
+            params,
+            pathResolver,
+            DEFAULT_ARCHIVER.withArchiveMode(ArchiveMode.IN_PROCESS),
+            DEFAULT_OUTPUT,
+            DEFAULT_INPUTS));
+    assertNotEquals(defaultRuleKey, archiveModeChange);
+
   }
 
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import org.apache.commons.compress.archivers.ar.ArArchiveEntry;
+import org.apache.commons.compress.archivers.ar.ArArchiveInputStream;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ArchiveWriterTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  public void gnuArchivesContainAllInputsWithDeterministicMetadata() throws IOException {
+    Path shortName = write("a.o", "odd");
+    Path longName = write("a_very_long_object_file_name.o", "even");
+    Path output = tmp.getRoot().resolve("libfoo.a");
+
+    new ArchiveWriter(ArchiveWriter.Format.GNU, /* thin */ false)
+        .write(output, ImmutableList.of(shortName, longName));
+
+    try (ArArchiveInputStream stream = new ArArchiveInputStream(Files.newInputStream(output))) {
+      assertEntry(stream, "a.o", "odd");
+      assertEntry(stream, "a_very_long_object_file_name.o", "even");
+      assertNull(stream.getNextArEntry());
+    }
+  }
+
+  @Test
+  public void bsdArchivesStoreNamesBeforeAlignedMemberData() throws IOException {
+    Path input = write("a b.o", "odd");
+    Path output = tmp.getRoot().resolve("libfoo.a");
+
+    new ArchiveWriter(ArchiveWriter.Format.BSD, /* thin */ false)
+        .write(output, ImmutableList.of(input));
+
+    // The name is NUL padded so that the member data starts 8-byte aligned: 8 + 60 + 12 = 80.
+    String expected =
+        "!<arch>\n" +
+        String.format(
+            "%-16s%-12s%-6s%-6s%-8s%-10d`\n", "#1/12", "0", "0", "0", "100644", 12 + 3) +
+        "a b.o\0\0\0\0\0\0\0" +
+        "odd\n";
+    assertEquals(expected, new String(Files.readAllBytes(output), Charsets.US_ASCII));
+  }
+
+  @Test
+  public void thinArchivesReferToInputsRelativeToTheArchive() throws IOException {
+    Files.createDirectories(tmp.getRoot().resolve("obj"));
+    Files.createDirectories(tmp.getRoot().resolve("lib"));
+    Path input = write("obj/a.o", "odd");
+    Path output = tmp.getRoot().resolve("lib/libfoo.a");
+
+    new ArchiveWriter(ArchiveWriter.Format.GNU, /* thin */ true)
+        .write(output, ImmutableList.of(input));
+
+    String nameTable = "../obj/a.o/\n";
+    String expected =
+        "!<thin>\n" +
+        String.format("%-16s%-32s%-10d`\n", "//", "", nameTable.length()) +
+        nameTable +
+        String.format("%-16s%-12s%-6s%-6s%-8s%-10d`\n", "/0", "0", "0", "0", "100644", 3);
+    assertEquals(expected, new String(Files.readAllBytes(output), Charsets.US_ASCII));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void bsdArchivesCannotBeThin() {
+    new ArchiveWriter(ArchiveWriter.Format.BSD, /* thin */ true);
+  }
+
+  @SuppressWarnings("PMD.AvoidUsingOctalValues")
+  private static void assertEntry(
+      ArArchiveInputStream stream,
+      String name,
+      String contents) throws IOException {
+    ArArchiveEntry entry = stream.getNextArEntry();
+    assertEquals(name, entry.getName());
+    assertEquals(0, entry.getLastModified());
+    assertEquals(0, entry.getUserId());
+    assertEquals(0, entry.getGroupId());
+    assertEquals(0100644, entry.getMode());
+    assertArrayEquals(contents.getBytes(Charsets.US_ASCII), ByteStreams.toByteArray(stream));
+  }
+
+  private Path write(String name, String contents) throws IOException {
+    Path path = tmp.getRoot().resolve(name);
+    Files.write(path, contents.getBytes(Charsets.US_ASCII));
+    return path;
+  }
+
+}
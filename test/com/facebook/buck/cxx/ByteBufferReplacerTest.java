@@ -73,4 +73,65 @@ public class ByteBufferReplacerTest {
     }
   }
 
+  @Test
+  public void replacesEveryStringInOnePass() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(
+            bytes("/home/a"), bytes("/xxxxxx"),
+            bytes("/tmp/bb"), bytes("/yyyyyy")));
+    byte[] blob = bytes("/tmp/bb:/home/a:/home/a:/tmp/b");
+
+    assertEquals(3, replacer.replace(ByteBuffer.wrap(blob)));
+    assertArrayEquals(bytes("/yyyyyy:/xxxxxx:/xxxxxx:/tmp/b"), blob);
+  }
+
+  @Test
+  public void findsMatchesAfterPartialMatches() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(bytes("aab"), bytes("xyz")));
+    byte[] blob = bytes("aaaab aab");
+
+    assertEquals(2, replacer.replace(ByteBuffer.wrap(blob)));
+    assertArrayEquals(bytes("aaxyz xyz"), blob);
+  }
+
+  @Test
+  public void replacesTheMatchThatEndsFirstWhenMatchesOverlap() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(
+            bytes("abcd"), bytes("1234"),
+            bytes("bc"), bytes("xy")));
+    byte[] blob = bytes("abcd bcd");
+
+    assertEquals(2, replacer.replace(ByteBuffer.wrap(blob)));
+    assertArrayEquals(bytes("axyd xyd"), blob);
+  }
+
+  @Test
+  public void stopsAfterMaxReplacements() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(bytes("ab"), bytes("xy")));
+    byte[] blob = bytes("ab ab ab");
+
+    assertEquals(2, replacer.replace(ByteBuffer.wrap(blob), 2));
+    assertArrayEquals(bytes("xy xy ab"), blob);
+  }
+
+  @Test
+  public void onlyReplacesBetweenPositionAndLimit() {
+    ByteBufferReplacer replacer = new ByteBufferReplacer(
+        ImmutableMap.of(bytes("ab"), bytes("xy")));
+    byte[] blob = bytes("ab ab ab");
+    ByteBuffer buffer = ByteBuffer.wrap(blob);
+    buffer.position(1);
+    buffer.limit(6);
+
+    assertEquals(1, replacer.replace(buffer));
+    assertArrayEquals(bytes("ab xy ab"), blob);
+  }
+
+  private static byte[] bytes(String string) {
+    return string.getBytes(Charsets.US_ASCII);
+  }
+
 }
@@ -147,7 +147,7 @@ public class CxxBinaryDescriptionTest {
       }
 
       @Override
-      public NativeLinkableInput getNativeLinkableInput(
+      protected NativeLinkableInput computeNativeLinkableInput(
           TargetGraph targetGraph,
           CxxPlatform cxxPlatform,
           Linker.LinkableDepType type) {
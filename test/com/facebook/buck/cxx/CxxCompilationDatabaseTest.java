@@ -34,17 +34,22 @@ import com.facebook.buck.rules.HashedFileTool;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TestSourcePath;
+import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.step.fs.MkdirStep;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.MoreAsserts;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
 
 import org.junit.Test;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -136,6 +141,7 @@ public class CxxCompilationDatabaseTest {
             .build();
         break;
       case PIPED:
+      case PIPED_CACHED:
         operation = CxxPreprocessAndCompileStep.Operation.PIPED_PREPROCESS_AND_COMPILE;
         compileBuildRuleParams = new FakeBuildRuleParamsBuilder(compileTarget)
             .setProjectFilesystem(filesystem)
@@ -370,4 +376,69 @@ public class CxxCompilationDatabaseTest {
                     "test.cpp")));
     MoreAsserts.assertIterablesEquals(expectedEntries, observedEntries);
   }
+
+  @Test
+  public void testParallelGenerationWritesEntriesInOrder() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    BuildTarget target = BuildTarget
+        .builder(BuildTargetFactory.newInstance("//foo:baz"))
+        .addFlavors(CxxCompilationDatabase.COMPILATION_DATABASE)
+        .build();
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target)
+        .setProjectFilesystem(filesystem)
+        .build();
+    SourcePathResolver pathResolver = new SourcePathResolver(new BuildRuleResolver());
+
+    // Enough compile rules for several batches.
+    List<CxxPreprocessAndCompile> compileRules = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      String name = String.format("test%04d.cpp", i);
+      BuildTarget compileTarget = BuildTarget
+          .builder(target.getUnflavoredBuildTarget())
+          .addFlavors(ImmutableFlavor.of("compile-" + name))
+          .build();
+      compileRules.add(
+          CxxPreprocessAndCompile.preprocessAndCompile(
+              new FakeBuildRuleParamsBuilder(compileTarget)
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver,
+              new DefaultPreprocessor(new HashedFileTool(Paths.get("preprocessor"))),
+              ImmutableList.<String>of(),
+              ImmutableList.<String>of(),
+              new DefaultCompiler(new HashedFileTool(Paths.get("compiler"))),
+              ImmutableList.<String>of(),
+              ImmutableList.<String>of(),
+              Paths.get(name + ".o"),
+              new TestSourcePath(name),
+              CxxSource.Type.CXX,
+              ImmutableSet.of(Paths.get("foo/bar")),
+              ImmutableSet.<Path>of(),
+              ImmutableSet.<Path>of(),
+              ImmutableSet.<Path>of(),
+              Optional.<SourcePath>absent(),
+              ImmutableList.<CxxHeaders>of(),
+              CxxPlatforms.DEFAULT_DEBUG_PATH_SANITIZER,
+              CxxPreprocessMode.COMBINED));
+    }
+
+    CxxCompilationDatabase compilationDatabase = CxxCompilationDatabase.createCompilationDatabase(
+        params,
+        pathResolver,
+        CxxPreprocessMode.COMBINED,
+        compileRules);
+    CxxCompilationDatabase.GenerateCompilationCommandsJson step =
+        (CxxCompilationDatabase.GenerateCompilationCommandsJson)
+            compilationDatabase
+                .getPostBuildSteps(FakeBuildContext.NOOP_CONTEXT, new FakeBuildableContext())
+                .get(1);
+
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setConcurrencyLimit(new ConcurrencyLimit(4, 1.0))
+        .build();
+    assertEquals(0, step.execute(context));
+    assertEquals(
+        context.getObjectMapper().writeValueAsString(ImmutableList.copyOf(step.createEntries())),
+        filesystem.readFileIfItExists(compilationDatabase.getPathToOutput()).get());
+  }
 }
@@ -192,7 +192,7 @@ public class CxxLibraryDescriptionTest {
       }
 
       @Override
-      public NativeLinkableInput getNativeLinkableInput(
+      protected NativeLinkableInput computeNativeLinkableInput(
           TargetGraph targetGraph,
           CxxPlatform cxxPlatform,
           Linker.LinkableDepType type) {
@@ -648,7 +648,7 @@ public class CxxLibraryDescriptionTest {
       }
 
       @Override
-      public NativeLinkableInput getNativeLinkableInput(
+      protected NativeLinkableInput computeNativeLinkableInput(
           TargetGraph targetGraph,
           CxxPlatform cxxPlatform,
           Linker.LinkableDepType type) {
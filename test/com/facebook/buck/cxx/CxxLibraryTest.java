@@ -18,6 +18,7 @@ package com.facebook.buck.cxx;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.cli.FakeBuckConfig;
@@ -43,6 +44,7 @@ import com.facebook.buck.rules.args.Arg;
 import com.facebook.buck.rules.args.SourcePathArg;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
@@ -56,6 +58,7 @@ import org.junit.Test;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 public class CxxLibraryTest {
@@ -248,4 +251,63 @@ public class CxxLibraryTest {
             Linker.LinkableDepType.SHARED));
   }
 
+  @Test
+  public void nativeLinkableInputIsComputedOncePerPlatformAndLinkStyle() {
+    BuildRuleResolver ruleResolver = new BuildRuleResolver();
+    SourcePathResolver pathResolver = new SourcePathResolver(ruleResolver);
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    CxxPlatform cxxPlatform =
+        DefaultCxxPlatforms.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+
+    // Count how often the input is actually computed via the header-only check, which is
+    // consulted every time it is.
+    final AtomicInteger computations = new AtomicInteger();
+    Predicate<CxxPlatform> headerOnly =
+        new Predicate<CxxPlatform>() {
+          @Override
+          public boolean apply(CxxPlatform input) {
+            computations.incrementAndGet();
+            return true;
+          }
+        };
+
+    CxxLibrary cxxLibrary = new CxxLibrary(
+        params,
+        ruleResolver,
+        pathResolver,
+        FluentIterable.from(params.getDeclaredDeps().get())
+            .filter(NativeLinkable.class),
+        headerOnly,
+        Functions.constant(ImmutableMultimap.<CxxSource.Type, String>of()),
+        /* exportedLinkerFlags */ Functions.constant(ImmutableList.<Arg>of()),
+        /* supportedPlatformsRegex */ Optional.<Pattern>absent(),
+        ImmutableSet.<FrameworkPath>of(),
+        ImmutableSet.<FrameworkPath>of(),
+        NativeLinkable.Linkage.ANY,
+        /* linkWhole */ false,
+        Optional.<String>absent(),
+        ImmutableSortedSet.<BuildTarget>of(),
+        /* isAsset */ false);
+
+    NativeLinkableInput staticInput =
+        cxxLibrary.getNativeLinkableInput(
+            TargetGraph.EMPTY,
+            cxxPlatform,
+            Linker.LinkableDepType.STATIC);
+    assertSame(
+        staticInput,
+        cxxLibrary.getNativeLinkableInput(
+            TargetGraph.EMPTY,
+            cxxPlatform,
+            Linker.LinkableDepType.STATIC));
+    assertEquals(1, computations.get());
+
+    cxxLibrary.getNativeLinkableInput(
+        TargetGraph.EMPTY,
+        cxxPlatform,
+        Linker.LinkableDepType.SHARED);
+    assertEquals(2, computations.get());
+  }
+
 }
@@ -17,24 +17,49 @@
 package com.facebook.buck.cxx;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
-
+import static org.junit.Assume.assumeThat;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.InMemoryArtifactCache;
+import com.facebook.buck.event.BuckEventBusFactory.CapturingConsoleEventListener;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.Escaper;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
+import org.junit.Rule;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
 
 public class CxxPreprocessAndCompileStepTest {
 
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Rule
+  public TemporaryPaths toolsTmp = new TemporaryPaths();
+
   @Test
   public void outputProcessor() {
     Path original = Paths.get("buck-out/foo#bar/world.h");
@@ -269,4 +294,175 @@ public class CxxPreprocessAndCompileStepTest {
         equalTo(processor.apply(" error message!")));
   }
 
+  @Test
+  public void cachedCompilationIsSkippedWhenPreprocessedOutputIsUnchanged() throws Exception {
+    assumeThat(Platform.detect(), equalTo(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    writeFakeTools();
+
+    write("test.c", "// first comment", "int x;");
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(newContext()), equalTo(0));
+    assertThat(read("compiles.log"), equalTo((List<String>) ImmutableList.of("compiled")));
+    assertThat(read("test.o"), equalTo((List<String>) ImmutableList.of("int x;")));
+
+    // Only the comment changes, so the preprocessed output is the same and the object file comes
+    // from the cache.
+    write("test.c", "// second comment", "int x;");
+    Files.delete(tmp.getRoot().resolve("test.o"));
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(newContext()), equalTo(0));
+    assertThat(read("compiles.log"), equalTo((List<String>) ImmutableList.of("compiled")));
+    assertThat(read("test.o"), equalTo((List<String>) ImmutableList.of("int x;")));
+    assertThat(Files.exists(tmp.getRoot().resolve("test.o.ii.tmp")), equalTo(false));
+  }
+
+  @Test
+  public void cachedCompilationRerunsCompilerWhenSourceOrFlagsChange() throws Exception {
+    assumeThat(Platform.detect(), equalTo(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    writeFakeTools();
+
+    write("test.c", "int x;");
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(newContext()), equalTo(0));
+    write("test.c", "int y;");
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(newContext()), equalTo(0));
+    assertThat(read("test.o"), equalTo((List<String>) ImmutableList.of("int y;")));
+    assertThat(makeCachedStep(filesystem, cache, "-O2").execute(newContext()), equalTo(0));
+    assertThat(
+        read("compiles.log"),
+        equalTo((List<String>) ImmutableList.of("compiled", "compiled", "compiled")));
+  }
+
+  @Test
+  public void cachedCompilationReplaysCompilerWarningsOnAHit() throws Exception {
+    assumeThat(Platform.detect(), equalTo(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    writeFakeTools("echo 'test.c:1: warning: unused' >&2");
+
+    write("test.c", "// first comment", "int x;");
+    ExecutionContext context = newContext();
+    CapturingConsoleEventListener listener = new CapturingConsoleEventListener();
+    context.getBuckEventBus().register(listener);
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(context), equalTo(0));
+    assertThat(listener.getLogMessages(), contains(containsString("warning: unused")));
+
+    write("test.c", "// second comment", "int x;");
+    context = newContext();
+    listener = new CapturingConsoleEventListener();
+    context.getBuckEventBus().register(listener);
+    assertThat(makeCachedStep(filesystem, cache, "-O0").execute(context), equalTo(0));
+    assertThat(read("compiles.log"), equalTo((List<String>) ImmutableList.of("compiled")));
+    assertThat(listener.getLogMessages(), contains(containsString("warning: unused")));
+  }
+
+  @Test
+  public void cachedCompilationIdentifiesCompilerOutsideTheProjectByItsContents()
+      throws Exception {
+    assumeThat(Platform.detect(), equalTo(Platform.LINUX));
+    ProjectFilesystem filesystem = new ProjectFilesystem(tmp.getRoot());
+    InMemoryArtifactCache cache = new InMemoryArtifactCache();
+    writeFakeTools();
+    Path compiler = toolsTmp.getRoot().resolve("cc");
+    Files.copy(tmp.getRoot().resolve("cc.sh"), compiler);
+
+    write("test.c", "int x;");
+    assertThat(
+        makeCachedStep(filesystem, cache, compiler.toString(), "-O0").execute(newContext()),
+        equalTo(0));
+    assertThat(
+        makeCachedStep(filesystem, cache, compiler.toString(), "-O0").execute(newContext()),
+        equalTo(0));
+    assertThat(read("compiles.log"), equalTo((List<String>) ImmutableList.of("compiled")));
+
+    // A different compiler at the same path doesn't reuse the object file of the old one.
+    writeFakeTools("true");
+    Files.copy(tmp.getRoot().resolve("cc.sh"), compiler, StandardCopyOption.REPLACE_EXISTING);
+    assertThat(
+        makeCachedStep(filesystem, cache, compiler.toString(), "-O0").execute(newContext()),
+        equalTo(0));
+    assertThat(
+        read("compiles.log"),
+        equalTo((List<String>) ImmutableList.of("compiled", "compiled")));
+  }
+
+  private CxxPreprocessAndCompileStep makeCachedStep(
+      ProjectFilesystem filesystem,
+      InMemoryArtifactCache cache,
+      String compilerFlag) {
+    return makeCachedStep(
+        filesystem,
+        cache,
+        tmp.getRoot().resolve("cc.sh").toString(),
+        compilerFlag);
+  }
+
+  private CxxPreprocessAndCompileStep makeCachedStep(
+      ProjectFilesystem filesystem,
+      InMemoryArtifactCache cache,
+      String compiler,
+      String compilerFlag) {
+    return new CxxPreprocessAndCompileStep(
+        filesystem,
+        CxxPreprocessAndCompileStep.Operation.PIPED_PREPROCESS_AND_COMPILE,
+        Paths.get("test.o"),
+        Paths.get("test.o.dep"),
+        Paths.get("test.c"),
+        CxxSource.Type.C,
+        Optional.of(ImmutableList.of(tmp.getRoot().resolve("cpp.sh").toString())),
+        Optional.of(ImmutableList.of(compiler, compilerFlag)),
+        ImmutableMap.<Path, Path>of(),
+        CxxPlatforms.DEFAULT_DEBUG_PATH_SANITIZER,
+        Optional.<Function<String, Iterable<String>>>absent(),
+        Optional.<ArtifactCache>of(cache));
+  }
+
+  private static ExecutionContext newContext() {
+    return TestExecutionContext.newInstance();
+  }
+
+  /**
+   * Writes a "preprocessor" which drops comment lines and writes a depfile, and a
+   * "compiler" which copies its input to its output and logs each invocation.
+   *
+   * @param extraCompilerLines additional lines for the compiler to run after compiling.
+   */
+  private void writeFakeTools(String... extraCompilerLines) throws IOException {
+    // Arguments: -x c -E -MD -MF <depfile> <input>
+    writeScript(
+        "cpp.sh",
+        "#!/bin/sh",
+        "echo \"test.o: $7\" > \"$6\"",
+        "grep -v '^//' \"$7\"");
+    // Arguments: <flag> -x cpp-output -c - -o <output>
+    writeScript(
+        "cc.sh",
+        ImmutableList.<String>builder()
+            .add("#!/bin/sh")
+            .add("cat > \"$7\"")
+            .add("echo compiled >> compiles.log")
+            .add(extraCompilerLines)
+            .build()
+            .toArray(new String[0]));
+  }
+
+  private void writeScript(String name, String... lines) throws IOException {
+    Path script = write(name, lines);
+    Files.setPosixFilePermissions(
+        script,
+        ImmutableSet.of(
+            PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.OWNER_EXECUTE));
+  }
+
+  private Path write(String name, String... lines) throws IOException {
+    return Files.write(tmp.getRoot().resolve(name), ImmutableList.copyOf(lines), Charsets.UTF_8);
+  }
+
+  private List<String> read(String name) throws IOException {
+    return Files.readAllLines(tmp.getRoot().resolve(name), Charsets.UTF_8);
+  }
+
 }
@@ -578,6 +578,10 @@ public class CxxPreprocessAndCompileTest {
     SourcePathResolver pathResolver = new SourcePathResolver(new BuildRuleResolver());
     BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
       BuildRuleParams params = new FakeBuildRuleParamsBuilder(target).build();
+    Depfiles.writeDependencyList(
+        params.getProjectFilesystem(),
+        Paths.get(DEFAULT_OUTPUT + ".dep"),
+        ImmutableList.<String>of());
 
     CxxPreprocessAndCompile cxxPreprocess =
         new CxxPreprocessAndCompile(
@@ -24,6 +24,7 @@ import static org.junit.Assert.assertTrue;
 import com.facebook.buck.testutil.integration.DebuggableTemporaryFolder;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -33,10 +34,12 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Map;
 
 public class DebugSectionFinderTest {
@@ -140,6 +143,92 @@ public class DebugSectionFinderTest {
         workspace.resolve("elf-stabs+.o"));
   }
 
+  @Test
+  public void testMacho() {
+    byte[] debugStr = "/Users/foo/src\0".getBytes(Charsets.US_ASCII);
+    ByteBuffer buffer = makeMacho(debugStr);
+
+    Optional<ImmutableMap<String, DebugSection>> sections = new DebugSectionFinder().find(buffer);
+    assertDebugSections(
+        Optional.of(ImmutableMap.of("__debug_str", ImmutableSet.of(STRINGS))),
+        sections);
+    assertEquals(ByteBuffer.wrap(debugStr), sections.get().get("__debug_str").body);
+  }
+
+  @Test
+  public void testTruncatedMachoHeader() {
+    ByteBuffer buffer = makeMacho("/Users/foo/src\0".getBytes(Charsets.US_ASCII));
+    buffer.limit(20);
+    assertEquals(
+        Optional.<ImmutableMap<String, DebugSection>>absent(),
+        new DebugSectionFinder().find(buffer));
+  }
+
+  @Test
+  public void testTruncatedMachoLoadCommands() {
+    ByteBuffer buffer = makeMacho("/Users/foo/src\0".getBytes(Charsets.US_ASCII));
+    for (int limit : new int[] {36, 100, 200}) {
+      buffer.limit(limit);
+      assertEquals(
+          Optional.<ImmutableMap<String, DebugSection>>absent(),
+          new DebugSectionFinder().find(buffer));
+    }
+  }
+
+  @Test
+  public void testMachoWithInvalidLoadCommandSize() {
+    ByteBuffer buffer = makeMacho("/Users/foo/src\0".getBytes(Charsets.US_ASCII));
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    for (int commandSize : new int[] {0, 16, Integer.MAX_VALUE}) {
+      buffer.putInt(36, commandSize);
+      assertEquals(
+          Optional.<ImmutableMap<String, DebugSection>>absent(),
+          new DebugSectionFinder().find(buffer));
+    }
+  }
+
+  /**
+   * @return a 64 bit Mach-O object file with a {@code __debug_str} section holding
+   *     {@code debugStr}.
+   */
+  private static ByteBuffer makeMacho(byte[] debugStr) {
+    int headerSize = 32;
+    int segmentCommandSize = 72 + 3 * 80;
+    int dataOffset = headerSize + segmentCommandSize;
+
+    ByteBuffer buffer = ByteBuffer.allocate(dataOffset + debugStr.length);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    // mach_header_64
+    buffer.put(Machos.MH_CIGAM_64);
+    buffer.putInt(0x01000007).putInt(3).putInt(1);
+    buffer.putInt(1).putInt(segmentCommandSize).putInt(0).putInt(0);
+    // segment_command_64, with the unnamed segment which holds all sections in object files
+    buffer.putInt(Machos.LC_SEGMENT_64).putInt(segmentCommandSize);
+    buffer.put(new byte[16]);
+    buffer.putLong(0).putLong(debugStr.length).putLong(dataOffset).putLong(debugStr.length);
+    buffer.putInt(7).putInt(7).putInt(3).putInt(0);
+    putMachoSection64(buffer, "__text", "__TEXT", dataOffset, 0);
+    putMachoSection64(buffer, "__debug_str", "__DWARF", dataOffset, debugStr.length);
+    // Debug section names outside the __DWARF segment aren't debug sections.
+    putMachoSection64(buffer, "__debug_line", "__DATA", dataOffset, 0);
+    buffer.put(debugStr);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private static void putMachoSection64(
+      ByteBuffer buffer,
+      String sectionName,
+      String segmentName,
+      int offset,
+      int size) {
+    buffer.put(Arrays.copyOf(sectionName.getBytes(Charsets.US_ASCII), 16));
+    buffer.put(Arrays.copyOf(segmentName.getBytes(Charsets.US_ASCII), 16));
+    buffer.putLong(0).putLong(size);
+    buffer.putInt(offset).putInt(0).putInt(0).putInt(0).putInt(0);
+    buffer.putInt(0).putInt(0).putInt(0);
+  }
+
   @Test
   public void testUnrecognizedData() {
     assertDebugSections(
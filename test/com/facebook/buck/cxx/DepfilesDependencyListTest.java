@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class DepfilesDependencyListTest {
+
+  private static final ImmutableList<String> DEPENDENCIES = ImmutableList.of(
+      "buck-out/gen/foo/headers/foo/a.h",
+      "buck-out/gen/foo/headers/foo/b.h",
+      "buck-out/gen/bar/headers/bar.h",
+      "b.h",
+      "");
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @After
+  public void tearDown() {
+    Depfiles.invalidateDependencyListCache();
+  }
+
+  @Test
+  public void dependencyListsSurviveRoundTrip() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("foo.o.dep");
+    Depfiles.writeDependencyList(filesystem, path, DEPENDENCIES);
+
+    assertEquals(DEPENDENCIES, Depfiles.readDependencyList(filesystem, path));
+
+    // Decoding the list again, rather than taking it from the cache, gives the same result.
+    Depfiles.invalidateDependencyListCache();
+    assertEquals(DEPENDENCIES, Depfiles.readDependencyList(filesystem, path));
+  }
+
+  @Test
+  public void identicalDependencyListsAreOnlyDecodedOnce() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Depfiles.writeDependencyList(filesystem, Paths.get("a.o.dep"), DEPENDENCIES);
+    Depfiles.writeDependencyList(filesystem, Paths.get("b.o.dep"), DEPENDENCIES);
+
+    assertSame(
+        Depfiles.readDependencyList(filesystem, Paths.get("a.o.dep")),
+        Depfiles.readDependencyList(filesystem, Paths.get("b.o.dep")));
+  }
+
+  @Test
+  public void parsedPrerequisitesAreInterned() throws IOException {
+    Depfiles.Depfile first = Depfiles.parseDepfile(new StringReader("a.o: a.c common.h\n"));
+    Depfiles.Depfile second = Depfiles.parseDepfile(new StringReader("b.o: b.c common.h\n"));
+
+    assertSame(first.getPrereqs().get(1), second.getPrereqs().get(1));
+  }
+
+  @Test
+  public void corruptDependencyListsAreRejected() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("foo.o.dep");
+    Depfiles.writeDependencyList(filesystem, path, DEPENDENCIES);
+    byte[] bytes;
+    try (InputStream input = filesystem.newFileInputStream(path)) {
+      bytes = ByteStreams.toByteArray(input);
+    }
+    bytes[bytes.length - 1] ^= 1;
+    filesystem.writeBytesToPath(bytes, path);
+    Depfiles.invalidateDependencyListCache();
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("does not match its hash");
+    Depfiles.readDependencyList(filesystem, path);
+  }
+
+  @Test
+  public void textDependencyListsAreRejected() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path path = Paths.get("foo.o.dep");
+    filesystem.writeContentsToPath("foo/a.h\nfoo/b.h\n", path);
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("is not a dependency list");
+    Depfiles.readDependencyList(filesystem, path);
+  }
+
+}
@@ -139,7 +139,7 @@ public final class FakeCxxLibrary extends AbstractCxxLibrary {
   }
 
   @Override
-  public NativeLinkableInput getNativeLinkableInput(
+  protected NativeLinkableInput computeNativeLinkableInput(
       TargetGraph targetGraph,
       CxxPlatform cxxPlatform,
       Linker.LinkableDepType type) {
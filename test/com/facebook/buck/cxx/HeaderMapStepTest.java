@@ -17,7 +17,9 @@
 package com.facebook.buck.cxx;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -33,8 +35,10 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.util.Map;
 
 public class HeaderMapStepTest {
@@ -72,4 +76,29 @@ public class HeaderMapStepTest {
     }
   }
 
+  @Test
+  public void testUnchangedHeaderMapIsNotRewritten() throws IOException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path output = Paths.get("headers.hmap");
+    ImmutableMap<Path, Path> entries =
+        ImmutableMap.of(Paths.get("file1.h"), Paths.get("/some/absolute/path.h"));
+
+    new HeaderMapStep(projectFilesystem, output, entries).execute(context);
+    FileTime oldTime = FileTime.fromMillis(0);
+    Files.setLastModifiedTime(projectFilesystem.resolve(output), oldTime);
+
+    new HeaderMapStep(projectFilesystem, output, entries).execute(context);
+    assertEquals(oldTime, Files.getLastModifiedTime(projectFilesystem.resolve(output)));
+
+    ImmutableMap<Path, Path> newEntries =
+        ImmutableMap.of(Paths.get("file2.h"), Paths.get("/some/absolute/path.h"));
+    new HeaderMapStep(projectFilesystem, output, newEntries).execute(context);
+    HeaderMap headerMap =
+        HeaderMap.deserialize(Files.readAllBytes(projectFilesystem.resolve(output)));
+    assertNotNull(headerMap);
+    assertNull(headerMap.lookup("file1.h"));
+    assertEquals("/some/absolute/path.h", headerMap.lookup("file2.h"));
+  }
+
 }
@@ -39,7 +39,6 @@ import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.testutil.FakeFileHashCache;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
@@ -133,11 +132,11 @@ public class HeaderSymlinkTreeWithHeaderMapTest {
 
     ImmutableList<Step> expectedBuildSteps =
         ImmutableList.of(
-            new MakeCleanDirectoryStep(filesystem, symlinkTreeRoot),
             new SymlinkTreeStep(
                 filesystem,
                 symlinkTreeRoot,
-                new SourcePathResolver(new BuildRuleResolver()).getMappedPaths(links)),
+                new SourcePathResolver(new BuildRuleResolver()).getMappedPaths(links),
+                /* incremental */ true),
             new HeaderMapStep(
                 filesystem,
                 headerMapPath,
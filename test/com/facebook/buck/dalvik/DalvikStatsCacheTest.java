@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.dalvik;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.jvm.java.classes.AbstractFileLike;
+import com.facebook.buck.jvm.java.classes.FileLike;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+public class DalvikStatsCacheTest {
+
+  @Rule
+  public TemporaryPaths tmpDir = new TemporaryPaths();
+
+  @Test
+  public void testStatsSurviveRoundTripThroughCacheFile() throws IOException {
+    FileLike entry = classEntry("a.jar", DalvikStatsCacheTest.class);
+    DalvikStatsTool.Stats expected = new DalvikStatsCache().getStats(entry);
+
+    DalvikStatsCache cache = new DalvikStatsCache();
+    cache.getStats(entry);
+    Path cacheFile = tmpDir.getRoot().resolve("stats.bin");
+    cache.writeCacheFile(cacheFile);
+
+    ImmutableMap<HashCode, DalvikStatsTool.Stats> previousStats =
+        DalvikStatsCache.readCacheFile(cacheFile);
+    assertEquals(1, previousStats.size());
+    assertStatsEqual(expected, previousStats.values().iterator().next());
+  }
+
+  @Test
+  public void testPreviousStatsAreUsedInsteadOfAnalyzingTheClass() throws IOException {
+    // These bytes are not a class file, so analyzing them would fail.
+    byte[] contents = "not a class".getBytes(StandardCharsets.UTF_8);
+    DalvikStatsTool.Stats previous = new DalvikStatsTool.Stats(
+        42,
+        ImmutableSet.of(new DalvikStatsTool.MethodReference("a/B", "c", "()V")),
+        ImmutableSet.of(new DalvikStatsTool.FieldReference("a/B", "d", "I")));
+
+    DalvikStatsCache cache = new DalvikStatsCache(
+        MoreExecutors.newDirectExecutorService(),
+        1,
+        ImmutableMap.of(Hashing.sha1().hashBytes(contents), previous));
+
+    assertStatsEqual(previous, cache.getStats(entry("a.jar", "a/B.class", contents)));
+  }
+
+  @Test
+  public void testStatsOfUnchangedClassesAreKeptWhenCacheFileIsRewritten() throws IOException {
+    FileLike entry = classEntry("a.jar", DalvikStatsCacheTest.class);
+    Path cacheFile = tmpDir.getRoot().resolve("stats.bin");
+    DalvikStatsCache first = new DalvikStatsCache();
+    first.getStats(entry);
+    first.getStats(classEntry("a.jar", DalvikStatsCache.class));
+    first.writeCacheFile(cacheFile);
+
+    DalvikStatsCache second = new DalvikStatsCache(
+        MoreExecutors.newDirectExecutorService(),
+        1,
+        DalvikStatsCache.readCacheFile(cacheFile));
+    second.getStats(entry);
+    second.writeCacheFile(cacheFile);
+
+    // Only the class seen by the second build is kept.
+    assertEquals(
+        ImmutableSet.of(hashOf(DalvikStatsCacheTest.class)),
+        DalvikStatsCache.readCacheFile(cacheFile).keySet());
+  }
+
+  @Test
+  public void testUnreadableCacheFileIsIgnored() throws IOException {
+    Path cacheFile = tmpDir.getRoot().resolve("stats.bin");
+    Files.write(cacheFile, new byte[] {0, 0, 0, 1, 0, 0});
+
+    assertEquals(
+        ImmutableMap.<HashCode, DalvikStatsTool.Stats>of(),
+        DalvikStatsCache.readCacheFile(cacheFile));
+    assertEquals(
+        ImmutableMap.<HashCode, DalvikStatsTool.Stats>of(),
+        DalvikStatsCache.readCacheFile(tmpDir.getRoot().resolve("missing.bin")));
+  }
+
+  @Test
+  public void testPrefetchedStatsMatchStatsComputedInline() throws IOException {
+    List<Class<?>> classes = ImmutableList.of(
+        DalvikStatsCacheTest.class,
+        DalvikStatsCache.class,
+        DalvikStatsTool.class,
+        DalvikAwareZipSplitter.class,
+        DalvikAwareOutputStreamHelper.class);
+
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      DalvikStatsCache cache = new DalvikStatsCache(
+          executorService,
+          4,
+          ImmutableMap.<HashCode, DalvikStatsTool.Stats>of());
+      for (Class<?> clazz : classes) {
+        cache.prefetch(classEntry("a.jar", clazz));
+      }
+      for (Class<?> clazz : classes) {
+        FileLike entry = classEntry("a.jar", clazz);
+        assertStatsEqual(new DalvikStatsCache().getStats(entry), cache.getStats(entry));
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  private static void assertStatsEqual(
+      DalvikStatsTool.Stats expected,
+      DalvikStatsTool.Stats actual) {
+    assertEquals(expected.estimatedLinearAllocSize, actual.estimatedLinearAllocSize);
+    assertEquals(expected.methodReferences, actual.methodReferences);
+    assertEquals(expected.fieldReferences, actual.fieldReferences);
+  }
+
+  private HashCode hashOf(Class<?> clazz) throws IOException {
+    return Hashing.sha1().hashBytes(readClass(clazz));
+  }
+
+  private FileLike classEntry(String container, Class<?> clazz) throws IOException {
+    return entry(container, clazz.getName().replace('.', '/') + ".class", readClass(clazz));
+  }
+
+  private static byte[] readClass(Class<?> clazz) throws IOException {
+    String resource = "/" + clazz.getName().replace('.', '/') + ".class";
+    try (InputStream stream = clazz.getResourceAsStream(resource)) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
+
+  private FileLike entry(
+      final String container,
+      final String relativePath,
+      final byte[] contents) {
+    return new AbstractFileLike() {
+      @Override
+      public Path getContainer() {
+        return tmpDir.getRoot().resolve(container);
+      }
+
+      @Override
+      public String getRelativePath() {
+        return relativePath;
+      }
+
+      @Override
+      public long getSize() {
+        return contents.length;
+      }
+
+      @Override
+      public InputStream getInput() {
+        return new ByteArrayInputStream(contents);
+      }
+    };
+  }
+}
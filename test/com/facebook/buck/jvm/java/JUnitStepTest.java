@@ -92,7 +92,8 @@ public class JUnitStepTest {
         /* testRuleTimeoutMs*/ Optional.<Long>absent(),
         /* stdOutLogLevel */ Optional.<Level>absent(),
         /* stdErrLogLevel */ Optional.<Level>absent(),
-        /* pathToJavAgent */ Optional.<String>absent());
+        /* pathToJavAgent */ Optional.<String>absent(),
+        /* testRunnerWorkerMaxRuns */ Optional.<Integer>absent());
 
     ExecutionContext executionContext = EasyMock.createMock(ExecutionContext.class);
     EasyMock.expect(executionContext.getVerbosity()).andReturn(Verbosity.ALL);
@@ -171,7 +172,8 @@ public class JUnitStepTest {
         /* testRuleTimeoutMs*/ Optional.<Long>absent(),
         /* stdOutLogLevel */ Optional.<Level>absent(),
         /* stdErrLogLevel */ Optional.<Level>absent(),
-        /* pathToJavaAgent */ Optional.<String> absent());
+        /* pathToJavaAgent */ Optional.<String> absent(),
+        /* testRunnerWorkerMaxRuns */ Optional.<Integer>absent());
 
     TestConsole console = new TestConsole(Verbosity.ALL);
     ExecutionContext executionContext = TestExecutionContext.newBuilder()
@@ -70,4 +70,9 @@ public class JavaTestBuilder extends AbstractNodeBuilder<JavaTestDescription.Arg
     arg.vmArgs = Optional.fromNullable(vmArgs);
     return this;
   }
+
+  public JavaTestBuilder setShards(int shards) {
+    arg.shards = Optional.of(shards);
+    return this;
+  }
 }
@@ -17,6 +17,7 @@
 package com.facebook.buck.jvm.java;
 
 import static org.hamcrest.junit.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -25,6 +26,7 @@ import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.rules.FakeExportDependenciesRule;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.util.HumanReadableException;
 
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -69,4 +71,18 @@ public class JavaTestDescriptionTest {
     assertThat(javaTest.getDeps(), Matchers.<BuildRule>hasItem(exportedRule));
   }
 
+  @Test
+  public void nonPositiveShardsAreReportedAgainstTheTarget() {
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    try {
+      JavaTestBuilder.createBuilder(target)
+          .setShards(0)
+          .build(new BuildRuleResolver());
+      fail("Expected a HumanReadableException.");
+    } catch (HumanReadableException e) {
+      assertThat(e.getHumanReadableErrorMessage(), Matchers.containsString("//:rule"));
+      assertThat(e.getHumanReadableErrorMessage(), Matchers.containsString("shards"));
+    }
+  }
+
 }
@@ -163,6 +163,27 @@ public class Jsr199JavacIntegrationTest {
     assertEquals("Example.java", Files.toString(srcsListFile, Charsets.UTF_8).trim());
   }
 
+  @Test
+  public void shouldCompileAgainWithAReusedFileManager() throws IOException, InterruptedException {
+    Jsr199Javac javac = createJavac(/* withSyntaxError */ false);
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    String pathToOutputDir = new File(tmp.getRoot(), "out").getAbsolutePath();
+
+    for (int i = 0; i < 2; i++) {
+      int exitCode = javac.buildWithClasspath(
+          executionContext,
+          createProjectFilesystem(),
+          PATH_RESOLVER,
+          BuildTargetFactory.newInstance("//some:example"),
+          ImmutableList.of("-d", pathToOutputDir),
+          SOURCE_PATHS,
+          Optional.of(pathToSrcsList),
+          Optional.<Path>absent());
+      assertEquals("javac should exit with code 0.", 0, exitCode);
+    }
+    assertTrue(new File(pathToOutputDir, "com/example/Example.class").isFile());
+  }
+
   public static final class MockJavac implements JavaCompiler {
 
     public MockJavac() {
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+public class ShardedJUnitStepTest {
+
+  @Test
+  public void shardsAreBalancedByPreviousDurations() {
+    ImmutableList<String> classes = ImmutableList.of("A", "B", "C", "D", "E");
+    ImmutableMap<String, Long> durations =
+        ImmutableMap.of("A", 110L, "B", 10L, "C", 60L, "D", 30L, "E", 10L);
+
+    // A goes on its own, and the rest fill up the other shard, keeping their original order.
+    assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("A"),
+            ImmutableList.of("B", "C", "D", "E")),
+        ShardedJUnitStep.shardClasses(classes, durations, 2));
+  }
+
+  @Test
+  public void classesWithoutDurationsAreAssumedToTakeTheAverage() {
+    ImmutableList<String> classes = ImmutableList.of("A", "B", "C", "D");
+    ImmutableMap<String, Long> durations = ImmutableMap.of("A", 30L, "B", 10L);
+
+    assertEquals(
+        ImmutableList.of(
+            ImmutableList.of("A", "B"),
+            ImmutableList.of("C", "D")),
+        ShardedJUnitStep.shardClasses(classes, durations, 2));
+  }
+
+  @Test
+  public void thereAreNeverMoreShardsThanClasses() {
+    assertEquals(
+        ImmutableList.of(ImmutableList.of("A"), ImmutableList.of("B")),
+        ShardedJUnitStep.shardClasses(
+            ImmutableList.of("A", "B"),
+            ImmutableMap.<String, Long>of(),
+            8));
+    assertEquals(
+        ImmutableList.<ImmutableList<String>>of(),
+        ShardedJUnitStep.shardClasses(
+            ImmutableList.<String>of(),
+            ImmutableMap.<String, Long>of(),
+            8));
+  }
+
+}
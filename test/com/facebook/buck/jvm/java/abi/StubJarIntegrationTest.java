@@ -16,11 +16,22 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -28,8 +39,12 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipFile;
 
 public class StubJarIntegrationTest {
 
@@ -90,4 +105,67 @@ public class StubJarIntegrationTest {
     assertTrue(filesystem.getFileSize(out) > 0);
     assertTrue(filesystem.getFileSize(out) < filesystem.getFileSize(source));
   }
+
+  @Test
+  public void shouldWriteTheSameJarWhenStubbingInParallel() throws IOException {
+    Path source = testDataDir.resolve("junit.jar");
+    Path serial = Paths.get("junit-serial-abi.jar");
+    new StubJar(
+        source,
+        MoreExecutors.newDirectExecutorService(),
+        CacheBuilder.newBuilder().<HashCode, byte[]>build())
+        .writeTo(filesystem, serial);
+
+    Path parallel = Paths.get("junit-parallel-abi.jar");
+    ListeningExecutorService executorService =
+        MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    try {
+      new StubJar(source, executorService, CacheBuilder.newBuilder().<HashCode, byte[]>build())
+          .writeTo(filesystem, parallel);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(serial)),
+        Files.readAllBytes(filesystem.resolve(parallel)));
+  }
+
+  @Test
+  public void shouldReuseCachedStubsOfUnchangedClasses() throws IOException {
+    Path source = testDataDir.resolve("junit.jar");
+    String className = "junit/framework/Assert.class";
+    Cache<HashCode, byte[]> stubCache = CacheBuilder.newBuilder().build();
+    byte[] cachedStub = "cached stub".getBytes(Charsets.UTF_8);
+    stubCache.put(Hashing.sha1().hashBytes(readEntry(source, className)), cachedStub);
+
+    Path out = Paths.get("junit-abi.jar");
+    new StubJar(source, MoreExecutors.newDirectExecutorService(), stubCache)
+        .writeTo(filesystem, out);
+
+    assertArrayEquals(cachedStub, readEntry(filesystem.resolve(out), className));
+    assertTrue(stubCache.size() > 1);
+  }
+
+  @Test
+  public void shouldNotLeaveAPartialJarWhenAClassCannotBeStubbed() throws IOException {
+    Path source = temp.newFolder("classes").toPath();
+    Files.write(source.resolve("A.class"), "not a class".getBytes(Charsets.UTF_8));
+
+    Path out = Paths.get("broken-abi.jar");
+    try {
+      new StubJar(source).writeTo(filesystem, out);
+      fail("Stubbing a malformed class should fail.");
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      // Expected: thrown by ASM.
+    }
+    assertFalse(filesystem.exists(out));
+  }
+
+  private static byte[] readEntry(Path jar, String name) throws IOException {
+    try (ZipFile zip = new ZipFile(jar.toFile());
+         InputStream stream = zip.getInputStream(zip.getEntry(name))) {
+      return ByteStreams.toByteArray(stream);
+    }
+  }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.model;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.testutil.WatchEventsForTests;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+
+public class IndexedBuildFileTreeTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void testCanConstructBuildFileTreeFromFilesystem() throws IOException {
+    touch("src/com/example/BUCK");
+    touch("src/com/example/build/BUCK");
+    touch("src/com/example/build/command/BUCK");
+    touch("src/com/example/build/notbuck/BUCK");
+    touch("src/com/example/some/directory/BUCK");
+    touch("src/com/example/some/other/File.java");
+
+    IndexedBuildFileTree buildFiles =
+        new IndexedBuildFileTree(new ProjectFilesystem(tmp.getRoot()), "BUCK");
+    assertEquals(
+        ImmutableSet.of(Paths.get("build"), Paths.get("some/directory")),
+        buildFiles.getChildPaths(BuildTargetFactory.newInstance("//src/com/example:example")));
+    assertEquals(
+        ImmutableSet.of(Paths.get("command"), Paths.get("notbuck")),
+        buildFiles.getChildPaths(BuildTargetFactory.newInstance("//src/com/example/build:build")));
+
+    assertEquals(
+        Optional.of(Paths.get("src/com/example")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("src/com/example/some/bar")));
+    assertEquals(
+        Optional.of(Paths.get("src/com/example/some/directory")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("src/com/example/some/directory/baz")));
+    assertEquals(
+        Optional.of(tmp.getRoot().resolve("src/com/example/build")),
+        buildFiles.getBasePathOfAncestorTarget(tmp.getRoot().resolve("src/com/example/build/x")));
+    assertEquals(
+        Optional.<Path>absent(),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("src/com/other")));
+
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(
+                Paths.get("src/com/example/build/BUCK"),
+                Paths.get("src/com/example/build/command/BUCK"),
+                Paths.get("src/com/example/build/notbuck/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("src/com/example/build"), ImmutableSet.<Path>of()));
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(
+                Paths.get("src/com/example/BUCK"),
+                Paths.get("src/com/example/build/BUCK"),
+                Paths.get("src/com/example/build/notbuck/BUCK"),
+                Paths.get("src/com/example/some/directory/BUCK"))),
+        buildFiles.getBuildFilesUnder(
+            Paths.get(""),
+            ImmutableSet.of(Paths.get("src/com/example/build/command"))));
+  }
+
+  @Test
+  public void respectsIgnorePaths() throws IOException {
+    touch("foo/BUCK");
+    touch("foo/bar/BUCK");
+    touch("foo/baz/BUCK");
+
+    ProjectFilesystem filesystem =
+        new ProjectFilesystem(tmp.getRoot(), ImmutableSet.of(Paths.get("foo/bar")));
+    IndexedBuildFileTree buildFiles = new IndexedBuildFileTree(filesystem, "BUCK");
+
+    assertEquals(
+        ImmutableSet.of(Paths.get("baz")),
+        buildFiles.getChildPaths(BuildTargetFactory.newInstance("//foo:foo")));
+    assertEquals(
+        Optional.of(Paths.get("foo")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("foo/bar/xyzzy")));
+
+    // Build files created under ignored directories stay out of the index.
+    buildFiles.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("foo/bar/qux/BUCK"),
+            StandardWatchEventKinds.ENTRY_CREATE));
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(Paths.get("foo/BUCK"), Paths.get("foo/baz/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("foo"), ImmutableSet.<Path>of()));
+  }
+
+  @Test
+  public void rootBasePath() throws IOException {
+    touch("BUCK");
+    touch("foo/BUCK");
+
+    IndexedBuildFileTree buildFiles =
+        new IndexedBuildFileTree(new ProjectFilesystem(tmp.getRoot()), "BUCK");
+
+    assertEquals(
+        Optional.of(Paths.get("")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("bar/baz")));
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(Paths.get("BUCK"), Paths.get("foo/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get(""), ImmutableSet.<Path>of()));
+  }
+
+  @Test
+  public void indexIsUpdatedFromFileChangeEvents() throws IOException {
+    touch("foo/BUCK");
+    touch("foo/bar/BUCK");
+
+    IndexedBuildFileTree buildFiles =
+        new IndexedBuildFileTree(new ProjectFilesystem(tmp.getRoot()), "BUCK");
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(Paths.get("foo/BUCK"), Paths.get("foo/bar/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("foo"), ImmutableSet.<Path>of()));
+
+    // The index no longer looks at the filesystem, only at the events.
+    touch("foo/baz/BUCK");
+    buildFiles.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("foo/qux/deep/BUCK"),
+            StandardWatchEventKinds.ENTRY_CREATE));
+    buildFiles.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("foo/bar/BUCK"),
+            StandardWatchEventKinds.ENTRY_DELETE));
+    buildFiles.onFileSystemChange(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("foo/Source.java"),
+            StandardWatchEventKinds.ENTRY_CREATE));
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(Paths.get("foo/BUCK"), Paths.get("foo/qux/deep/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("foo"), ImmutableSet.<Path>of()));
+    assertEquals(
+        ImmutableSet.of(Paths.get("qux/deep")),
+        buildFiles.getChildPaths(BuildTargetFactory.newInstance("//foo:foo")));
+    assertEquals(
+        Optional.of(Paths.get("foo")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("foo/bar/Source.java")));
+
+    // An overflow means events were lost, so the index is rebuilt from the filesystem.
+    buildFiles.onFileSystemChange(WatchEventsForTests.createOverflowEvent());
+    assertEquals(
+        Optional.of(
+            ImmutableSet.of(
+                Paths.get("foo/BUCK"),
+                Paths.get("foo/bar/BUCK"),
+                Paths.get("foo/baz/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("foo"), ImmutableSet.<Path>of()));
+  }
+
+  @Test
+  public void symlinkLoopsDoNotBreakLookups() throws IOException {
+    touch("foo/BUCK");
+    touch("foo/bar/BUCK");
+    Files.createSymbolicLink(tmp.getRoot().resolve("foo/loop"), Paths.get(".."));
+
+    IndexedBuildFileTree buildFiles =
+        new IndexedBuildFileTree(new ProjectFilesystem(tmp.getRoot()), "BUCK");
+    assertEquals(
+        Optional.of(Paths.get("foo")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("foo/baz")));
+
+    // Building the index does not follow the loop, and the symbolic link leaves the lookups which
+    // it leads out of to the filesystem.
+    assertEquals(
+        Optional.of(ImmutableSet.of(Paths.get("foo/bar/BUCK"))),
+        buildFiles.getBuildFilesUnder(Paths.get("foo/bar"), ImmutableSet.<Path>of()));
+    assertEquals(
+        Optional.<ImmutableSet<Path>>absent(),
+        buildFiles.getBuildFilesUnder(Paths.get("foo"), ImmutableSet.<Path>of()));
+    assertEquals(
+        Optional.of(Paths.get("foo")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("foo/baz")));
+    assertEquals(
+        Optional.of(Paths.get("foo")),
+        buildFiles.getBasePathOfAncestorTarget(Paths.get("foo/loop/qux")));
+  }
+
+  private void touch(String path) throws IOException {
+    Path file = tmp.getRoot().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, "".getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.query;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.Set;
+
+public class BinaryOperatorExpressionTest {
+
+  private static final QueryTarget A = QueryFileTarget.of(Paths.get("a"));
+  private static final QueryTarget B = QueryFileTarget.of(Paths.get("b"));
+  private static final QueryTarget C = QueryFileTarget.of(Paths.get("c"));
+  private static final QueryTarget D = QueryFileTarget.of(Paths.get("d"));
+
+  /**
+   * Resolves patterns to sorted sets, as the real environment does.
+   */
+  private static final QueryEnvironment<QueryTarget> ENV = new FakeQueryEnvironment() {
+    private final ImmutableMap<String, ImmutableSortedSet<QueryTarget>> patterns =
+        ImmutableMap.of(
+            "abc", ImmutableSortedSet.of(A, B, C),
+            "bcd", ImmutableSortedSet.of(B, C, D),
+            "b", ImmutableSortedSet.of(B));
+
+    @Override
+    public Set<QueryTarget> getTargetsMatchingPattern(String pattern) {
+      return patterns.get(pattern);
+    }
+  };
+
+  @Test
+  public void operatorsKeepTheOrderOfTheirLeftHandSide() throws Exception {
+    assertEquals(
+        ImmutableList.of(B, C),
+        ImmutableList.copyOf(QueryParser.parse("abc intersect bcd", ENV).eval(ENV)));
+    assertEquals(
+        ImmutableList.of(A),
+        ImmutableList.copyOf(QueryParser.parse("abc except bcd", ENV).eval(ENV)));
+    assertEquals(
+        ImmutableList.of(A, C),
+        ImmutableList.copyOf(QueryParser.parse("abc - b", ENV).eval(ENV)));
+    assertEquals(
+        ImmutableList.of(B, C, D, A),
+        ImmutableList.copyOf(QueryParser.parse("bcd + abc", ENV).eval(ENV)));
+  }
+
+  @Test
+  public void operatorsChain() throws Exception {
+    assertEquals(
+        C,
+        Iterables.getOnlyElement(QueryParser.parse("abc ^ bcd - set(b)", ENV).eval(ENV)));
+  }
+}
@@ -30,7 +30,6 @@ import com.facebook.buck.rules.keys.InputBasedRuleKeyBuilderFactory;
 import com.facebook.buck.shell.Genrule;
 import com.facebook.buck.shell.GenruleBuilder;
 import com.facebook.buck.step.Step;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.step.fs.SymlinkTreeStep;
 import com.facebook.buck.testutil.FakeFileHashCache;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
@@ -133,12 +132,12 @@ public class SymlinkTreeTest {
 
     // Verify the build steps are as expected.
     ImmutableList<Step> expectedBuildSteps =
-        ImmutableList.of(
-            new MakeCleanDirectoryStep(filesystem, outputPath),
+        ImmutableList.<Step>of(
             new SymlinkTreeStep(
                 filesystem,
                 outputPath,
-                new SourcePathResolver(new BuildRuleResolver()).getMappedPaths(links)));
+                new SourcePathResolver(new BuildRuleResolver()).getMappedPaths(links),
+                /* incremental */ true));
     ImmutableList<Step> actualBuildSteps =
         symlinkTreeBuildRule.getPostBuildSteps(
             buildContext,
@@ -17,11 +17,13 @@
 package com.facebook.buck.step.fs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.util.concurrent.ConcurrencyLimit;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 
@@ -30,8 +32,11 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 
 public class SymlinkTreeStepTest {
 
@@ -39,7 +44,7 @@ public class SymlinkTreeStepTest {
   public final TemporaryFolder tmpDir = new TemporaryFolder();
 
   @Test
-  public void testSymlinkFiles() throws IOException {
+  public void testSymlinkFiles() throws IOException, InterruptedException {
 
     ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
 
@@ -76,4 +81,85 @@ public class SymlinkTreeStepTest {
 
   }
 
+  @Test
+  public void testIncrementalModeOnlyReplacesStaleEntries()
+      throws IOException, InterruptedException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newInstance();
+    Path root = Paths.get("symlink-tree-root");
+    Path source1 = Paths.get("source1");
+    projectFilesystem.writeContentsToPath("foo", source1);
+    Path source2 = Paths.get("source2");
+    projectFilesystem.writeContentsToPath("bar", source2);
+
+    Path unchanged = Paths.get("a", "unchanged");
+    Path retargeted = Paths.get("a", "retargeted");
+    Path removed = Paths.get("b", "removed");
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(unchanged, source1, retargeted, source1, removed, source1),
+            /* incremental */ true)
+            .execute(context));
+    Object unchangedKey = getFileKey(projectFilesystem, root.resolve(unchanged));
+
+    // Leave a directory where a link should go, and a file nobody asked for.
+    Path directoryInTheWay = Paths.get("c");
+    projectFilesystem.mkdirs(root.resolve(directoryInTheWay).resolve("d"));
+    projectFilesystem.writeContentsToPath("stale", root.resolve("a").resolve("stray"));
+
+    assertEquals(
+        0,
+        new SymlinkTreeStep(
+            projectFilesystem,
+            root,
+            ImmutableMap.of(unchanged, source1, retargeted, source2, directoryInTheWay, source2),
+            /* incremental */ true)
+            .execute(context));
+
+    assertEquals(unchangedKey, getFileKey(projectFilesystem, root.resolve(unchanged)));
+    assertEquals(Optional.of("bar"), projectFilesystem.readFirstLine(root.resolve(retargeted)));
+    assertEquals(
+        Optional.of("bar"),
+        projectFilesystem.readFirstLine(root.resolve(directoryInTheWay)));
+    assertFalse(projectFilesystem.exists(root.resolve(removed)));
+    assertFalse(projectFilesystem.exists(root.resolve("b")));
+    assertFalse(projectFilesystem.exists(root.resolve("a").resolve("stray")));
+  }
+
+  @Test
+  public void testLargeTreesAreCreatedInParallel() throws IOException, InterruptedException {
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmpDir.getRoot().toPath());
+    ExecutionContext context = TestExecutionContext.newBuilder()
+        .setConcurrencyLimit(new ConcurrencyLimit(4, 1.0))
+        .build();
+    Path root = Paths.get("symlink-tree-root");
+    Path source = Paths.get("source");
+    projectFilesystem.writeContentsToPath("foo", source);
+
+    ImmutableMap.Builder<Path, Path> links = ImmutableMap.builder();
+    for (int i = 0; i < 2000; i++) {
+      links.put(Paths.get("dir" + i % 7, "link" + i), source);
+    }
+
+    assertEquals(
+        0,
+        new SymlinkTreeStep(projectFilesystem, root, links.build(), /* incremental */ true)
+            .execute(context));
+
+    for (Path link : links.build().keySet()) {
+      assertTrue(projectFilesystem.isSymLink(root.resolve(link)));
+    }
+  }
+
+  private static Object getFileKey(ProjectFilesystem filesystem, Path path) throws IOException {
+    return Files.readAttributes(
+        filesystem.resolve(path),
+        BasicFileAttributes.class,
+        LinkOption.NOFOLLOW_LINKS)
+        .fileKey();
+  }
+
 }
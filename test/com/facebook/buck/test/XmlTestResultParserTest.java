@@ -17,11 +17,16 @@
 package com.facebook.buck.test;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.facebook.buck.test.result.type.ResultType;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Strings;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,6 +34,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
 
 public class XmlTestResultParserTest {
 
@@ -59,4 +65,67 @@ public class XmlTestResultParserTest {
           e.getMessage());
     }
   }
+
+  @Test
+  public void testParseResults() throws IOException {
+    String xml =
+        "<?xml version='1.1' encoding='UTF-8' standalone='no'?>\n" +
+        "<testcase name='com.example.ExampleTest'>\n" +
+        "  <test name='passes' success='true' time='12' type='SUCCESS'>\n" +
+        "    <stdout>hello <![CDATA[<world>]]></stdout>\n" +
+        "  </test>\n" +
+        "  <test name='fails' success='false' time='3' type='FAILURE' message='boom'\n" +
+        "      stacktrace='at here'>\n" +
+        "    <stderr>oops</stderr>\n" +
+        "  </test>\n" +
+        "</testcase>\n";
+    Path xmlFile = tmp.newFile("result.xml");
+    Files.write(xmlFile, xml.getBytes(UTF_8));
+
+    TestCaseSummary summary = XmlTestResultParser.parse(xmlFile);
+
+    assertEquals("com.example.ExampleTest", summary.getTestCaseName());
+    assertEquals(15, summary.getTotalTime());
+    List<TestResultSummary> results = summary.getTestResults();
+    assertEquals(2, results.size());
+
+    TestResultSummary passes = results.get(0);
+    assertEquals("passes", passes.getTestName());
+    assertEquals(ResultType.SUCCESS, passes.getType());
+    assertEquals(12, passes.getTime());
+    assertNull(passes.getMessage());
+    assertEquals("hello <world>", passes.getStdOut());
+    assertNull(passes.getStdErr());
+
+    TestResultSummary fails = results.get(1);
+    assertEquals("fails", fails.getTestName());
+    assertEquals(ResultType.FAILURE, fails.getType());
+    assertEquals("boom", fails.getMessage());
+    assertEquals("at here", fails.getStacktrace());
+    assertNull(fails.getStdOut());
+    assertEquals("oops", fails.getStdErr());
+  }
+
+  @Test
+  public void testParseTruncatesLongOutput() throws IOException {
+    int extra = 10;
+    String output = Strings.repeat("x", XmlTestResultParser.MAX_CAPTURED_OUTPUT_CHARS + extra);
+    String xml =
+        "<?xml version='1.1' encoding='UTF-8' standalone='no'?>\n" +
+        "<testcase name='com.example.ExampleTest'>\n" +
+        "  <test name='chatty' success='true' time='1' type='SUCCESS'>\n" +
+        "    <stdout>" + output + "</stdout>\n" +
+        "  </test>\n" +
+        "</testcase>\n";
+    Path xmlFile = tmp.newFile("result.xml");
+    Files.write(xmlFile, xml.getBytes(UTF_8));
+
+    String stdOut = XmlTestResultParser.parse(xmlFile).getTestResults().get(0).getStdOut();
+
+    assertTrue(
+        stdOut.startsWith(output.substring(0, XmlTestResultParser.MAX_CAPTURED_OUTPUT_CHARS)));
+    assertThat(
+        stdOut.substring(XmlTestResultParser.MAX_CAPTURED_OUTPUT_CHARS),
+        containsString(extra + " more characters of output are in " + xmlFile.toAbsolutePath()));
+  }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.testrunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.util.TestRunnerWorkerPool;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+public class TestRunnerWorkerTest {
+
+  private static final String PROPERTY = "com.facebook.buck.testrunner.workerTestProperty";
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private TestRunnerWorkerPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new TestRunnerWorkerPool();
+  }
+
+  @After
+  public void tearDown() {
+    pool.close();
+  }
+
+  @Test
+  public void runsShareAWorkerButNotClassesOrPropertiesUntilTheWorkerIsRetired()
+      throws IOException {
+    List<String> first = record(ImmutableMap.of(PROPERTY, "value"), /* maxRuns */ 2);
+    List<String> second = record(ImmutableMap.<String, String>of(), /* maxRuns */ 2);
+    List<String> third = record(ImmutableMap.<String, String>of(), /* maxRuns */ 2);
+
+    assertEquals(ImmutableList.of("value", "1"), first.subList(0, 2));
+    assertEquals(ImmutableList.of("null", "1"), second.subList(0, 2));
+    assertEquals(ImmutableList.of("null", "1"), third.subList(0, 2));
+
+    // The second run reuses the first run's JVM, which is then retired.
+    assertEquals(first.get(2), second.get(2));
+    assertNotEquals(second.get(2), third.get(2));
+  }
+
+  @Test
+  public void runsWhichTakeTooLongAreKilled() throws IOException {
+    assertEquals(
+        Optional.<Integer>absent(),
+        run(
+            SleepingRunner.class,
+            ImmutableMap.<String, String>of(),
+            ImmutableList.<String>of(),
+            /* maxRuns */ 10,
+            Optional.of(500L)));
+
+    // The killed worker is replaced.
+    assertEquals("null", record(ImmutableMap.<String, String>of(), /* maxRuns */ 10).get(0));
+  }
+
+  private List<String> record(ImmutableMap<String, String> properties, int maxRuns)
+      throws IOException {
+    Path output = tmp.newFile();
+    assertEquals(
+        Optional.of(0),
+        run(
+            RecordingRunner.class,
+            properties,
+            ImmutableList.of(output.toString()),
+            maxRuns,
+            Optional.<Long>absent()));
+    return Splitter.on('|').splitToList(new String(Files.readAllBytes(output), Charsets.UTF_8));
+  }
+
+  private Optional<Integer> run(
+      Class<?> mainClass,
+      ImmutableMap<String, String> properties,
+      ImmutableList<String> args,
+      int maxRuns,
+      Optional<Long> timeoutMs) throws IOException {
+    String classpath = System.getProperty("java.class.path");
+    return pool.run(
+        ImmutableList.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-classpath",
+            classpath,
+            TestRunnerWorker.class.getName()),
+        Paths.get("").toAbsolutePath(),
+        ImmutableList.copyOf(Splitter.on(File.pathSeparatorChar).split(classpath)),
+        properties,
+        Optional.of(tmp.getRoot().resolve("worker.log")),
+        mainClass.getName(),
+        args,
+        maxRuns,
+        timeoutMs);
+  }
+
+  /**
+   * Records the test property, the number of times the class has been run and the name of its JVM.
+   */
+  public static class RecordingRunner {
+    private static int runs = 0;
+
+    public static void run(String[] args) throws IOException {
+      runs++;
+      String record = System.getProperty(PROPERTY) + "|" + runs + "|" +
+          ManagementFactory.getRuntimeMXBean().getName();
+      Files.write(Paths.get(args[0]), record.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  public static class SleepingRunner {
+    public static void run(@SuppressWarnings("unused") String[] args)
+        throws InterruptedException {
+      Thread.sleep(60000);
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+public class JavaFileManagerPoolTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private static final ImmutableList<String> NO_OPTIONS = ImmutableList.of();
+
+  private final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+
+  @Test
+  public void releasedFileManagerIsReused() throws IOException {
+    try (JavaFileManagerPool pool = new JavaFileManagerPool()) {
+      StandardJavaFileManager fileManager = pool.acquire(compiler, NO_OPTIONS);
+      pool.release(compiler, NO_OPTIONS, fileManager, 1);
+
+      assertSame(fileManager, pool.acquire(compiler, NO_OPTIONS));
+    }
+  }
+
+  @Test
+  public void locationsAreResetBeforeReuse() throws IOException {
+    File classpathEntry = tmp.newFolder("classes");
+    ImmutableList<String> options = ImmutableList.of(
+        "-classpath",
+        classpathEntry.getPath());
+    try (JavaFileManagerPool pool = new JavaFileManagerPool()) {
+      StandardJavaFileManager fileManager = pool.acquire(compiler, options);
+      compiler.getTask(null, fileManager, null, options, null, ImmutableList.<JavaFileObject>of());
+      pool.release(compiler, options, fileManager, 1);
+
+      StandardJavaFileManager reused = pool.acquire(compiler, NO_OPTIONS);
+      assertSame(fileManager, reused);
+      Iterable<? extends File> classpath = reused.getLocation(StandardLocation.CLASS_PATH);
+      assertFalse(classpath != null && Iterables.contains(classpath, classpathEntry));
+    }
+  }
+
+  @Test
+  public void fileManagersAreOnlyReusedWithTheSameStickyOptions() throws IOException {
+    File bootclasspathEntry = tmp.newFolder("boot");
+    ImmutableList<String> options = ImmutableList.of(
+        "-source",
+        "8",
+        "-target",
+        "8",
+        "-bootclasspath",
+        bootclasspathEntry.getPath());
+    try (JavaFileManagerPool pool = new JavaFileManagerPool()) {
+      StandardJavaFileManager fileManager = pool.acquire(compiler, options);
+      compiler.getTask(null, fileManager, null, options, null, ImmutableList.<JavaFileObject>of());
+      pool.release(compiler, options, fileManager, 1);
+
+      StandardJavaFileManager other = pool.acquire(compiler, NO_OPTIONS);
+      assertNotSame(fileManager, other);
+      Iterable<? extends File> bootclasspath =
+          other.getLocation(StandardLocation.PLATFORM_CLASS_PATH);
+      assertFalse(bootclasspath != null && Iterables.contains(bootclasspath, bootclasspathEntry));
+
+      assertSame(fileManager, pool.acquire(compiler, options));
+    }
+  }
+
+  @Test
+  public void stickyOptionsAreKeptWithTheirArguments() {
+    assertEquals(
+        ImmutableList.of("-bootclasspath", "rt.jar", "-Xbootclasspath/p:extra.jar"),
+        JavaFileManagerPool.getStickyOptions(
+            ImmutableList.of(
+                "-classpath",
+                "lib.jar",
+                "-bootclasspath",
+                "rt.jar",
+                "-g",
+                "-Xbootclasspath/p:extra.jar",
+                "-d",
+                "classes")));
+  }
+
+  @Test
+  public void atMostMaxIdleFileManagersAreKept() throws IOException {
+    try (JavaFileManagerPool pool = new JavaFileManagerPool()) {
+      StandardJavaFileManager first = pool.acquire(compiler, NO_OPTIONS);
+      StandardJavaFileManager second = pool.acquire(compiler, NO_OPTIONS);
+      assertNotSame(first, second);
+      pool.release(compiler, NO_OPTIONS, first, 1);
+      pool.release(compiler, NO_OPTIONS, second, 1);
+
+      assertSame(first, pool.acquire(compiler, NO_OPTIONS));
+      assertNotSame(second, pool.acquire(compiler, NO_OPTIONS));
+    }
+  }
+
+  @Test
+  public void fileManagersReleasedAfterCloseAreNotKept() throws IOException {
+    JavaFileManagerPool pool = new JavaFileManagerPool();
+    StandardJavaFileManager fileManager = pool.acquire(compiler, NO_OPTIONS);
+    pool.close();
+    pool.release(compiler, NO_OPTIONS, fileManager, 1);
+
+    assertNotSame(fileManager, pool.acquire(compiler, NO_OPTIONS));
+  }
+}
@@ -18,20 +18,32 @@ package com.facebook.buck.util;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.EnumSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ProcessExecutorTest {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
   @Test
   public void testDontExpectStdout() throws IOException, InterruptedException {
     CapturingPrintStream stdOut = new CapturingPrintStream();
@@ -138,4 +150,132 @@ public class ProcessExecutorTest {
         "process was reported as timed out",
         result.isTimedOut());
   }
+
+  @Test
+  public void testLaunchAndExecuteWritesStdinAndCapturesOutputLineByLine()
+      throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    CapturingPrintStream stdOut = new CapturingPrintStream();
+    Ansi ansi = Ansi.forceTty();
+    Console console = new Console(Verbosity.ALL, stdOut, new CapturingPrintStream(), ansi);
+    ProcessExecutor executor = new ProcessExecutor(console);
+    ProcessExecutorParams params = ProcessExecutorParams.builder()
+        .addCommand("sh", "-c", "cat; printf 'b\\r\\nc' >&2; exit 3")
+        .setRedirectInput(ProcessBuilder.Redirect.PIPE)
+        .build();
+
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        params,
+        EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT, ProcessExecutor.Option.IS_SILENT),
+        /* stdin */ Optional.of("a\n"),
+        /* timeOutMs */ Optional.<Long>absent(),
+        /* timeOutHandler */ Optional.<Function<Process, Void>>absent());
+
+    assertEquals(3, result.getExitCode());
+    assertFalse(result.isTimedOut());
+    assertEquals(String.format("a%n"), result.getStdout().get());
+    assertEquals(
+        ansi.asHighlightedFailureText(String.format("b%n")) +
+            ansi.asHighlightedFailureText(String.format("c%n")),
+        result.getStderr().get());
+    assertEquals("", stdOut.getContentsAsString(Charsets.UTF_8));
+  }
+
+  @Test
+  public void testLaunchAndExecuteKillsProcessesWhichTimeOut()
+      throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("sleep", "50"),
+        /* options */ ImmutableSet.<ProcessExecutor.Option>of(),
+        /* stdin */ Optional.<String>absent(),
+        /* timeOutMs */ Optional.of((long) 100),
+        /* timeOutHandler */ Optional.<Function<Process, Void>>absent());
+
+    assertTrue("process was reported as timed out", result.isTimedOut());
+    assertNotEquals(0, result.getExitCode());
+  }
+
+  @Test
+  public void testLaunchAndExecuteFailsForMissingExecutables()
+      throws IOException, InterruptedException {
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+
+    try {
+      executor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("this-better-not-be-a-process-on-your-system-for-real"));
+      fail("Launching a missing executable should throw.");
+    } catch (IOException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testLaunchAndExecuteKeepsOutputOfFailingProcesses()
+      throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+
+    for (int i = 0; i < 20; i++) {
+      ProcessExecutor.Result result = executor.launchAndExecute(
+          ProcessExecutorParams.ofCommand("sh", "-c", "echo out; echo err >&2; exit 3"),
+          EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT, ProcessExecutor.Option.IS_SILENT),
+          /* stdin */ Optional.<String>absent(),
+          /* timeOutMs */ Optional.<Long>absent(),
+          /* timeOutHandler */ Optional.<Function<Process, Void>>absent());
+
+      assertEquals(3, result.getExitCode());
+      assertEquals(String.format("out%n"), result.getStdout().get());
+      assertEquals(String.format("err%n"), result.getStderr().get());
+    }
+  }
+
+  @Test
+  public void testLaunchAndExecuteRunsScriptsWithoutInterpreterLine()
+      throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    File script = tmp.newFile("script");
+    Files.write(String.format("echo ran%nexit 4%n"), script, Charsets.UTF_8);
+    assertTrue(script.setExecutable(true));
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand(script.getAbsolutePath()),
+        EnumSet.of(ProcessExecutor.Option.EXPECTING_STD_OUT, ProcessExecutor.Option.IS_SILENT),
+        /* stdin */ Optional.<String>absent(),
+        /* timeOutMs */ Optional.<Long>absent(),
+        /* timeOutHandler */ Optional.<Function<Process, Void>>absent());
+
+    assertEquals(4, result.getExitCode());
+    assertEquals(String.format("ran%n"), result.getStdout().get());
+  }
+
+  @Test
+  public void testLaunchAndExecuteReportsKilledProcessesLikeTheShell()
+      throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() != Platform.WINDOWS);
+    Console console = new Console(
+        Verbosity.ALL, new CapturingPrintStream(), new CapturingPrintStream(), Ansi.withoutTty());
+    ProcessExecutor executor = new ProcessExecutor(console);
+
+    ProcessExecutor.Result result = executor.launchAndExecute(
+        ProcessExecutorParams.ofCommand("sh", "-c", "kill -9 $$"),
+        EnumSet.of(ProcessExecutor.Option.IS_SILENT),
+        /* stdin */ Optional.<String>absent(),
+        /* timeOutMs */ Optional.<Long>absent(),
+        /* timeOutHandler */ Optional.<Function<Process, Void>>absent());
+
+    // 128 plus the number of the signal, SIGKILL.
+    assertEquals(137, result.getExitCode());
+  }
 }